@@ -0,0 +1,52 @@
+package com.faforever.loadtest.server.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Typical messages of the protocol, used as benchmark payloads.
+ */
+final class BenchmarkMessages {
+
+  static final String GAME_INFO = "{\"command\": \"game_info\", \"visibility\": \"public\", \"password_protected\": false, "
+      + "\"uid\": 12345, \"title\": \"Test Game 17\", \"state\": \"open\", \"game_type\": \"custom\", "
+      + "\"featured_mod\": \"faf\", \"sim_mods\": {}, \"mapname\": \"12 The Pass\", "
+      + "\"map_file_path\": \"maps/12 The Pass.zip\", \"host\": \"User #17\", \"num_players\": 4, \"max_players\": 12, "
+      + "\"launched_at\": null, \"rating_type\": \"global\", \"teams\": {\"1\": [\"User #17\", \"User #18\"], "
+      + "\"2\": [\"User #19\", \"User #20\"]}}";
+
+  private BenchmarkMessages() {
+    // Not instantiatable
+  }
+
+  /**
+   * Returns the message of the specified name, one of {@code ping}, {@code game_option}, {@code game_info} and
+   * {@code json_stats}.
+   */
+  static String get(String name, ObjectMapper objectMapper) throws IOException {
+    switch (name) {
+      case "ping":
+        return "PING";
+      case "game_option":
+        return objectMapper.writeValueAsString(ImmutableMap.of(
+            "command", "GameOption",
+            "args", new Object[]{"ScenarioFile", "/maps/12 The Pass/12 The Pass_scenario.lua"},
+            "target", "game"
+        ));
+      case "game_info":
+        return GAME_INFO;
+      case "json_stats":
+        return objectMapper.writeValueAsString(ImmutableMap.of(
+            "command", "JsonStats",
+            "args", new Object[]{Resources.toString(BenchmarkMessages.class.getResource("/game_stats_full.json"), StandardCharsets.UTF_8)},
+            "target", "game"
+        ));
+      default:
+        throw new IllegalArgumentException("Unknown message: " + name);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package com.faforever.loadtest.server.client;
+
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.scenario.ScenarioLoader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.CharBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of received messages by {@link ClientSimulator#onServerMessage(CharBuffer)}, including responses written to
+ * a connection that discards them. Only messages that don't schedule follow-up actions are covered, since those
+ * would pile up on the timer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+  @Param({"session", "social", "player_info", "game_info", "mod_info", "notice", "PING", "PONG"})
+  private String command;
+
+  private HashedWheelTimer timer;
+  private ClientSimulator simulator;
+  private CharBuffer message;
+
+  @Setup
+  public void setUp(Blackhole blackhole) throws IOException {
+    LoadTestProperties properties = new LoadTestProperties();
+    ObjectMapper objectMapper = new ObjectMapper();
+    timer = new HashedWheelTimer(properties);
+    ConnectionService connectionService = new ConnectionService(new FafLegacyTcpClient(), properties, new TrafficCounter()) {
+      @Override
+      public ServerConnection connect(InetSocketAddress serverAddress, int clientId, ServerConnection.Listener listener) {
+        return new DiscardingConnection(blackhole);
+      }
+    };
+
+    simulator = new ClientSimulator(connectionService, new ConnectThrottle(properties),
+        new HeartbeatScheduler(properties, timer), timer, objectMapper, new ClientMessages(objectMapper),
+        ScenarioLoader.load(properties.getScenario(), objectMapper), new LatencyRecorder(), properties)
+        .setUser(new User(1, "User #1", "1"))
+        .setServerAddress(InetSocketAddress.createUnresolved("localhost", 8001))
+        .setThinkBehavior(ThinkBehavior.FIXED)
+        .setRandom(new SplittableRandom(1))
+        .setClientEventListener(new NoOpClientEventListener());
+    simulator.connect();
+    while (simulator.getState() == ClientSimulator.State.CONNECTING) {
+      Thread.onSpinWait();
+    }
+
+    String text;
+    switch (command) {
+      case "PING":
+      case "PONG":
+        text = command;
+        break;
+      case "game_info":
+        text = BenchmarkMessages.GAME_INFO;
+        break;
+      default:
+        text = "{\"command\": \"" + command + "\", \"session\": 1234}";
+    }
+    message = CharBuffer.wrap(text.toCharArray());
+  }
+
+  @TearDown
+  public void tearDown() {
+    timer.shutdown();
+  }
+
+  @Benchmark
+  public void onServerMessage() {
+    simulator.onServerMessage(message);
+  }
+
+  private static final class DiscardingConnection implements ServerConnection {
+
+    private final Blackhole blackhole;
+
+    private DiscardingConnection(Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void write(CharSequence message) {
+      blackhole.consume(message);
+    }
+
+    @Override
+    public void write(EncodedFrame frame) {
+      blackhole.consume(frame);
+    }
+
+    @Override
+    public void write(FrameTemplate template, int[] values) {
+      blackhole.consume(values);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static final class NoOpClientEventListener implements ClientSimulator.ClientEventListener {
+
+    @Override
+    public void onMessageReceived(String type) {
+    }
+
+    @Override
+    public void onMessageSent() {
+    }
+
+    @Override
+    public void onGameCreated() {
+    }
+
+    @Override
+    public void onClienStopped(ClientSimulator client) {
+    }
+
+    @Override
+    public void onStateChanged(ClientSimulator.State oldState, ClientSimulator.State state) {
+    }
+
+    @Override
+    public void onIdle(ClientSimulator client) {
+    }
+
+    @Override
+    public void onGameHostReturned(long arrivalNanos) {
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.faforever.loadtest.server.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Encoding and decoding of frames of different sizes, up to the full game stats. Run with the GC profiler to see
+ * allocations per operation, which are expected to be zero.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameCodecBenchmark {
+
+  @Param({"ping", "game_option", "game_info", "json_stats"})
+  private String payload;
+
+  private String message;
+  private EncodedFrame encodedFrame;
+  private FrameEncoder encoder;
+  private FrameDecoder decoder;
+  private ByteBuffer encoded;
+  private Consumer<CharBuffer> consumer;
+
+  @Setup
+  public void setUp(Blackhole blackhole) throws IOException {
+    FafLegacyTcpClient tcpClient = new FafLegacyTcpClient();
+    message = BenchmarkMessages.get(payload, new ObjectMapper());
+    encodedFrame = EncodedFrame.of(message);
+    encoder = tcpClient.newEncoder(8192, buffer -> {
+      blackhole.consume(buffer);
+      buffer.position(buffer.limit());
+    });
+    decoder = tcpClient.newDecoder(new CharBufferPool());
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    FrameEncoder streamEncoder = tcpClient.newEncoder(8192, outputStream);
+    streamEncoder.encode(message);
+    streamEncoder.flush();
+    encoded = ByteBuffer.wrap(outputStream.toByteArray());
+    consumer = blackhole::consume;
+  }
+
+  @Benchmark
+  public void encode() throws IOException {
+    encoder.encode(message);
+    encoder.flush();
+  }
+
+  @Benchmark
+  public void encodePreEncoded() throws IOException {
+    encoder.encode(encodedFrame);
+    encoder.flush();
+  }
+
+  @Benchmark
+  public void decode() {
+    encoded.rewind();
+    decoder.decode(encoded, consumer);
+  }
+}
@@ -0,0 +1,81 @@
+package com.faforever.loadtest.server.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing a message from an {@link ImmutableMap}, as {@code ClientSimulator.write(Map)} does, compared to writing
+ * the same message from a {@link FrameTemplate}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+
+  private ObjectMapper objectMapper;
+  private FrameTemplate gameResult;
+  private FrameEncoder encoder;
+  private final int[] values = new int[1];
+  private int playerId;
+
+  @Setup
+  public void setUp(Blackhole blackhole) throws IOException {
+    objectMapper = new ObjectMapper();
+    gameResult = FrameTemplate.compile("{\"command\":\"GameResult\",\"args\":[${playerId},\"score 1\"],\"target\":\"game\"}");
+    encoder = new FafLegacyTcpClient().newEncoder(8192, buffer -> {
+      blackhole.consume(buffer);
+      buffer.position(buffer.limit());
+    });
+  }
+
+  @Benchmark
+  public String gameResultFromMap() throws JsonProcessingException {
+    return objectMapper.writeValueAsString(ImmutableMap.of(
+        "command", "GameResult",
+        "args", new Object[]{nextPlayerId(), "score 1"},
+        "target", "game"
+    ));
+  }
+
+  @Benchmark
+  public void gameResultFromMapEncoded() throws IOException {
+    encoder.encode(gameResultFromMap());
+    encoder.flush();
+  }
+
+  @Benchmark
+  public void gameResultFromTemplate() throws IOException {
+    values[0] = nextPlayerId();
+    gameResult.encode(encoder, values);
+    encoder.flush();
+  }
+
+  @Benchmark
+  public String helloFromMap() throws JsonProcessingException {
+    return objectMapper.writeValueAsString(ImmutableMap.<String, Object>builder()
+        .put("command", "hello")
+        .put("login", "User #1")
+        .put("password", "5994471abb01112afcc18159f6cc74b4f511b99806da59b3caf5a9c173cacfc5")
+        .put("user_agent", "loadtest")
+        .put("version", "1.0.0")
+        .put("local_ip", "127.0.0.1")
+        .build());
+  }
+
+  private int nextPlayerId() {
+    playerId = (playerId + 1) % 12;
+    return playerId;
+  }
+}
@@ -0,0 +1,62 @@
+package com.faforever.loadtest.server.runner;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State changes of many clients at once, as counted by {@link LoadTestRunner}. The locked map is how they used to be
+ * counted and serves as baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class ClientStateCounterBenchmark {
+
+  private ClientStateCounter counter;
+  private ConcurrentMap<ClientSimulator.State, Integer> lockedMap;
+
+  @Setup
+  public void setUp() {
+    counter = new ClientStateCounter();
+    lockedMap = new ConcurrentHashMap<>();
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      lockedMap.put(state, 0);
+    }
+  }
+
+  @Benchmark
+  public void counter() {
+    counter.onStateChanged(ClientSimulator.State.IDLE, ClientSimulator.State.CREATING_GAME);
+    counter.onStateChanged(ClientSimulator.State.CREATING_GAME, ClientSimulator.State.IDLE);
+  }
+
+  @Benchmark
+  public Map<ClientSimulator.State, Integer> counterSnapshot() {
+    return counter.snapshot();
+  }
+
+  @Benchmark
+  public void lockedMap() {
+    synchronized (lockedMap) {
+      lockedMap.compute(ClientSimulator.State.IDLE, (state, count) -> count - 1);
+      lockedMap.compute(ClientSimulator.State.CREATING_GAME, (state, count) -> count + 1);
+    }
+    synchronized (lockedMap) {
+      lockedMap.compute(ClientSimulator.State.CREATING_GAME, (state, count) -> count - 1);
+      lockedMap.compute(ClientSimulator.State.IDLE, (state, count) -> count + 1);
+    }
+  }
+}
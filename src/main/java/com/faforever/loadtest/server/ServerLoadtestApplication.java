@@ -1,49 +1,55 @@
 package com.faforever.loadtest.server;
 
 import com.faforever.loadtest.server.config.LoadTestProperties;
-import com.faforever.loadtest.server.ui.MainController;
-import com.faforever.loadtest.server.ui.UiService;
-import javafx.application.Application;
-import javafx.scene.Scene;
-import javafx.stage.Stage;
+import com.faforever.loadtest.server.distributed.LoadAgent;
+import com.faforever.loadtest.server.distributed.Role;
+import com.faforever.loadtest.server.runner.HeadlessLoadTest;
+import com.faforever.loadtest.server.trace.TraceRecordingProxy;
+import com.faforever.loadtest.server.ui.FxApplication;
+import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import java.io.IOException;
+
+/**
+ * Starts the load test either with the graphical user interface or, if {@code loadtest.headless} is set, as a command
+ * line application that never touches JavaFX. Agents ({@code loadtest.role=agent}) never show a user interface either,
+ * they run until their coordinator disconnects, and neither does a trace proxy ({@code loadtest.role=trace_proxy}).
+ */
 @SpringBootApplication
 @EnableConfigurationProperties(LoadTestProperties.class)
 @EnableTransactionManagement
-public class ServerLoadtestApplication extends Application {
-
-  private static String[] args;
-  private ApplicationContext applicationContext;
-
-  public static void main(String[] args) throws InterruptedException {
-    ServerLoadtestApplication.args = args;
-    launch(args);
-  }
+public class ServerLoadtestApplication {
 
-  @Override
-  public void init() throws Exception {
-    applicationContext = new SpringApplicationBuilder(ServerLoadtestApplication.class)
+  public static void main(String[] args) throws IOException {
+    ConfigurableApplicationContext applicationContext = new SpringApplicationBuilder(ServerLoadtestApplication.class)
         .run(args);
-  }
 
-  @Override
-  public void start(Stage primaryStage) throws Exception {
-    UiService uiService = applicationContext.getBean(UiService.class);
+    LoadTestProperties properties = applicationContext.getBean(LoadTestProperties.class);
+    if (properties.getRole() == Role.AGENT) {
+      runAgent(applicationContext);
+      System.exit(SpringApplication.exit(applicationContext));
+    }
+    if (properties.getRole() == Role.TRACE_PROXY) {
+      applicationContext.getBean(TraceRecordingProxy.class).run();
+      System.exit(SpringApplication.exit(applicationContext));
+    }
+    if (properties.isHeadless()) {
+      applicationContext.getBean(HeadlessLoadTest.class).run();
+      System.exit(SpringApplication.exit(applicationContext));
+    }
+    FxApplication.launch(applicationContext, args);
+  }
 
-    MainController mainController = uiService.loadFxml("/main.fxml");
-    Scene scene = new Scene(mainController.getRoot());
-    scene.getStylesheets().setAll(getClass().getResource("/style.css").toExternalForm());
-    primaryStage.setScene(scene);
-    primaryStage.showingProperty().addListener((observable, oldValue, newValue) -> {
-      if (!newValue) {
-        mainController.onStopButtonClicked();
-      }
-    });
-    primaryStage.show();
+  private static void runAgent(ConfigurableApplicationContext applicationContext) {
+    try {
+      applicationContext.getBean(LoadAgent.class).run();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
 }
@@ -0,0 +1,11 @@
+package com.faforever.loadtest.server.client;
+
+/**
+ * Distribution of the intervals between arrivals if {@link LoadModel#OPEN} is used.
+ */
+public enum ArrivalDistribution {
+  /** Arrivals are evenly spaced. */
+  CONSTANT,
+  /** Intervals are exponentially distributed, like independent users arriving at random. */
+  POISSON
+}
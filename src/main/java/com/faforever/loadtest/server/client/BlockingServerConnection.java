@@ -0,0 +1,129 @@
+package com.faforever.loadtest.server.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A connection using a blocking socket and a dedicated reader thread.
+ */
+@Slf4j
+class BlockingServerConnection implements ServerConnection {
+
+  private final Socket socket;
+  private final FrameEncoder encoder;
+  private final boolean flushEachMessage;
+  /** A lock rather than a monitor so that virtual threads blocked in a write don't pin their carrier. */
+  private final Lock writeLock;
+  private final Thread serverReader;
+  private volatile boolean closed;
+
+  BlockingServerConnection(FafLegacyTcpClient tcpClient, InetSocketAddress serverAddress, int clientId, int bufferSize, FlushMode flushMode, ThreadingMode threadingMode, TrafficCounter trafficCounter, Listener listener) throws IOException {
+    this.writeLock = new ReentrantLock();
+    this.socket = new Socket(serverAddress.getAddress(), serverAddress.getPort());
+    FrameEncoder.Sink socketSink = FrameEncoder.Sink.of(socket.getOutputStream());
+    this.encoder = tcpClient.newEncoder(bufferSize, buffer -> {
+      trafficCounter.recordSocketWrite();
+      socketSink.write(buffer);
+    }, trafficCounter);
+    this.flushEachMessage = flushMode == FlushMode.PER_MESSAGE;
+    InputStream inputStream = socket.getInputStream();
+    FrameDecoder decoder = tcpClient.newDecoder(new CharBufferPool(), trafficCounter);
+
+    serverReader = threadingMode.newThread("client-reader-" + clientId, () -> {
+      ByteBuffer readBuffer = ByteBuffer.allocate(bufferSize);
+      Consumer<CharBuffer> messageConsumer = listener::onMessage;
+      try {
+        log.debug("Server reader started");
+        while (!closed) {
+          int count = inputStream.read(readBuffer.array());
+          if (count < 0) {
+            throw new EOFException();
+          }
+          readBuffer.limit(count).position(0);
+          decoder.decode(readBuffer, messageConsumer);
+          flush();
+        }
+        listener.onConnectionLost(new SocketException("Socket closed"));
+      } catch (IOException e) {
+        listener.onConnectionLost(e);
+      }
+      log.debug("Server reader stopped");
+    });
+  }
+
+  @Override
+  public void start() {
+    serverReader.start();
+  }
+
+  @Override
+  public void write(CharSequence message) throws IOException {
+    writeLock.lock();
+    try {
+      encoder.encode(message);
+      if (flushEachMessage) {
+        encoder.flush();
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void write(EncodedFrame frame) throws IOException {
+    writeLock.lock();
+    try {
+      encoder.encode(frame);
+      if (flushEachMessage) {
+        encoder.flush();
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void write(FrameTemplate template, int[] values) throws IOException {
+    writeLock.lock();
+    try {
+      template.encode(encoder, values);
+      if (flushEachMessage) {
+        encoder.flush();
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writeLock.lock();
+    try {
+      encoder.flush();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    serverReader.interrupt();
+    try {
+      socket.close();
+    } catch (IOException e) {
+      log.warn("Socket could not be closed", e);
+    }
+  }
+}
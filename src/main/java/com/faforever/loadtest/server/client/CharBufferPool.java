@@ -0,0 +1,57 @@
+package com.faforever.loadtest.server.client;
+
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Recycles the char buffers that incoming messages are decoded into, bucketed by power-of-two capacities. A pool is
+ * not thread-safe; it belongs to the thread that decodes messages, i.e. an event loop or a reader thread.
+ */
+public class CharBufferPool {
+
+  private static final int MIN_SHIFT = 6;
+  private static final int MAX_SHIFT = 20;
+  private static final int MAX_BUFFERS_PER_BUCKET = 4;
+
+  private final ArrayDeque<CharBuffer>[] buckets;
+
+  @SuppressWarnings("unchecked")
+  public CharBufferPool() {
+    buckets = new ArrayDeque[MAX_SHIFT - MIN_SHIFT + 1];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new ArrayDeque<>(MAX_BUFFERS_PER_BUCKET);
+    }
+  }
+
+  /**
+   * Returns a cleared buffer whose limit is set to the requested capacity. Buffers larger than the biggest bucket are
+   * allocated and not pooled. Empty buffers come from the smallest bucket.
+   */
+  public CharBuffer acquire(int capacity) {
+    int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1));
+    if (shift > MAX_SHIFT) {
+      return CharBuffer.allocate(capacity);
+    }
+    CharBuffer buffer = buckets[shift - MIN_SHIFT].pollLast();
+    if (buffer == null) {
+      buffer = CharBuffer.allocate(1 << shift);
+    }
+    buffer.clear().limit(capacity);
+    return buffer;
+  }
+
+  public void release(CharBuffer buffer) {
+    int capacity = buffer.capacity();
+    if (Integer.bitCount(capacity) != 1) {
+      return;
+    }
+    int shift = Integer.numberOfTrailingZeros(capacity);
+    if (shift < MIN_SHIFT || shift > MAX_SHIFT) {
+      return;
+    }
+    ArrayDeque<CharBuffer> bucket = buckets[shift - MIN_SHIFT];
+    if (bucket.size() < MAX_BUFFERS_PER_BUCKET) {
+      bucket.addLast(buffer);
+    }
+  }
+}
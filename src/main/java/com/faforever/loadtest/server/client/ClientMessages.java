@@ -0,0 +1,51 @@
+package com.faforever.loadtest.server.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Messages of the protocol itself sent by the clients, serialized and encoded once at startup. The messages of the
+ * game flow are defined by the {@link com.faforever.loadtest.server.scenario.Scenario}.
+ */
+@Component
+@Getter
+public class ClientMessages {
+
+  private final EncodedFrame ping;
+  private final EncodedFrame pong;
+  private final EncodedFrame askSession;
+
+  @Getter(AccessLevel.NONE)
+  private final ObjectMapper objectMapper;
+
+  public ClientMessages(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+
+    ping = frame(ImmutableMap.of("command", "ping"));
+    pong = EncodedFrame.of("PONG");
+    askSession = frame(ImmutableMap.of(
+        "version", "1.0.0",
+        "user_agent", "loadtest",
+        "command", "ask_session"
+    ));
+  }
+
+  private EncodedFrame frame(Map<String, Object> message) {
+    return EncodedFrame.of(serialize(message));
+  }
+
+  private String serialize(Map<String, Object> message) {
+    try {
+      return objectMapper.writeValueAsString(message);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -4,6 +4,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 
 import java.net.InetSocketAddress;
+import java.util.SplittableRandom;
 
 @Service
 public class ClientService {
@@ -14,12 +15,13 @@ public class ClientService {
     this.applicationContext = applicationContext;
   }
 
-  public ClientSimulator createClientSimulator(int userId, InetSocketAddress serverAddress, ThinkBehavior thinkBehavior, ClientSimulator.ClientEventListener clientEventListener) {
+  public ClientSimulator createClientSimulator(int userId, InetSocketAddress serverAddress, ThinkBehavior thinkBehavior, SplittableRandom random, ClientSimulator.ClientEventListener clientEventListener) {
     User user = new User(userId, "User #" + userId, String.valueOf(userId));
 
     return applicationContext.getBean(ClientSimulator.class)
         .setServerAddress(serverAddress)
         .setThinkBehavior(thinkBehavior)
+        .setRandom(random)
         .setClientEventListener(clientEventListener)
         .setUser(user);
   }
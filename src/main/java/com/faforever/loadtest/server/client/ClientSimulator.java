@@ -1,31 +1,30 @@
 package com.faforever.loadtest.server.client;
 
 import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.scenario.Scenario;
+import com.faforever.loadtest.server.scenario.ScenarioDefinition;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.io.Resources;
 import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Scope;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.nio.CharBuffer;
 import java.util.Map;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
 
 @Component
 @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
@@ -43,6 +42,18 @@ public class ClientSimulator implements Runnable {
     void onClienStopped(ClientSimulator client);
 
     void onStateChanged(State oldState, State state);
+
+    /**
+     * Called if {@link LoadModel#OPEN} is used and the client is ready to host a game, see {@link
+     * #offerGameHost(long)}.
+     */
+    void onIdle(ClientSimulator client);
+
+    /**
+     * Called if an arrival that has been {@link #offerGameHost(long) offered} can't be taken anymore because the client
+     * has left its state or been stopped in the meantime, so that another client takes it.
+     */
+    void onGameHostReturned(long arrivalNanos);
   }
 
   public enum State {
@@ -50,59 +61,85 @@ public class ClientSimulator implements Runnable {
     DISCONNECTED, CONNECTING, CONNECTED, INITIATING_SESSION, LOGGING_IN, IDLE, CREATING_GAME, GAME_LOBBY, PLAYING, SCORE_SCREEN
   }
 
-  private static final String JSON_STATS;
-  protected static final int PLAYERS_PER_GAME = 12;
+  private static final String PING = "PING";
+  private static final String PONG = "PONG";
 
-  static {
-    try {
-      JSON_STATS = Resources.toString(ClientSimulator.class.getResource("/game_stats_full.json"), StandardCharsets.UTF_8);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
-  private final FafLegacyTcpClient tcpClient;
+  private final ConnectionService connectionService;
+  private final ConnectThrottle connectThrottle;
+  private final HeartbeatScheduler heartbeatScheduler;
+  private final HashedWheelTimer timer;
   private final ObjectMapper objectMapper;
+  private final ClientMessages messages;
+  private final LatencyRecorder latencyRecorder;
   private final LoadTestProperties properties;
-  private final Object writeMonitor;
-  private final Map<String, Consumer<Map<String, Object>>> clientMessageHandlers;
-  private final Map<String, Consumer<Map<String, Object>>> gameMessageHandlers;
+  private final Scenario scenario;
+  /** Reused for every received message since messages are only ever handled one after another. */
+  private final ServerMessage serverMessage;
+  private final Set<ScheduledTask> scheduledTasks;
+  /** The {@link System#nanoTime()} at which each exchange has been started, or 0 if none is pending. */
+  private final AtomicLongArray exchangeStartTimes;
+  /**
+   * Held while the client handles a message, a timer task or a connect, which run on the connection's reader or event
+   * loop, on timer workers and on connect threads, so that its state is only changed by one thread at a time.
+   * {@link #offerGameHost(long)} and {@link #stop()} don't take it, since the runner calls them while holding locks
+   * that the client's listener needs.
+   */
+  private final Lock lock;
+  /** The values that variables in the conditions of transitions stand for. */
+  private final ToIntFunction<Scenario.Variable> conditionValues;
 
   @Setter
   private ThinkBehavior thinkBehavior;
+  /**
+   * This client's own random numbers, so that its decisions are reproducible and don't contend with other clients'.
+   * Think times, chances and reconnect delays each have a stream of their own, so that e.g. the number of received
+   * {@code game_info} messages doesn't shift the think times. Only used while holding the {@link #lock}.
+   */
+  private SplittableRandom thinkTimeRandom;
+  private SplittableRandom chanceRandom;
+  private SplittableRandom backoffRandom;
   @Setter
   private User user;
   @Setter
   private InetSocketAddress serverAddress;
   @Setter
   private ClientEventListener clientEventListener;
-  private ScheduledThreadPoolExecutor executor;
-  private OutputStream outputStream;
-  private State state;
-  private Socket socket;
+  /** The {@link System#nanoTime()} at which this client's session was supposed to start, or 0 to start it now. */
+  @Setter
+  private long sessionArrivalNanos;
+  private volatile State state;
+  /** The state of the scenario, or {@code null} until logged in. Read without {@link #lock} by offers of arrivals. */
+  private volatile Scenario.State scenarioState;
+  /** Incremented whenever a scenario state is entered, so that timed transitions of states that have been left are dropped. */
+  private volatile int scenarioStateEntries;
+  /** The game hosted or joined, see {@link Scenario.Variable#GAME}. */
+  private int game;
+  /** The values of the template being written, reused for all templates since they're encoded right away. */
+  private int[] templateValues;
+  /** Connects that have failed or been lost since the client last logged in. */
+  private int failedConnects;
+  /** Pings in a row that haven't been answered by the time the next one was due. */
+  private int missedPongs;
+  private volatile ServerConnection connection;
   private volatile boolean stop;
-  private Thread serverReader;
 
-  public ClientSimulator(FafLegacyTcpClient tcpClient, ObjectMapper objectMapper, LoadTestProperties properties) {
-    this.tcpClient = tcpClient;
+  public ClientSimulator(ConnectionService connectionService, ConnectThrottle connectThrottle, HeartbeatScheduler heartbeatScheduler, HashedWheelTimer timer, ObjectMapper objectMapper, ClientMessages messages, Scenario scenario, LatencyRecorder latencyRecorder, LoadTestProperties properties) {
+    this.connectionService = connectionService;
+    this.connectThrottle = connectThrottle;
+    this.heartbeatScheduler = heartbeatScheduler;
+    this.timer = timer;
     this.objectMapper = objectMapper;
+    this.messages = messages;
+    this.scenario = scenario;
+    this.latencyRecorder = latencyRecorder;
     this.properties = properties;
-    this.clientMessageHandlers = new HashMap<>();
-    this.gameMessageHandlers = new HashMap<>();
-    this.writeMonitor = new Object();
+    this.serverMessage = new ServerMessage(objectMapper);
+    this.scheduledTasks = ConcurrentHashMap.newKeySet();
+    this.exchangeStartTimes = new AtomicLongArray(Exchange.values().length);
+    this.lock = new ReentrantLock();
+    this.conditionValues = variable -> valueOf(variable, 0, 0);
+    this.templateValues = new int[0];
     this.state = State.DISCONNECTED;
-
-    clientMessageHandlers.put("session", this::onSession);
-    clientMessageHandlers.put("social", this::noOp);
-    clientMessageHandlers.put("welcome", this::onAuthenticationSuccess);
-    clientMessageHandlers.put("authentication_failed", this::noOp);
-    clientMessageHandlers.put("mod_info", this::noOp);
-    clientMessageHandlers.put("notice", this::noOp);
-    clientMessageHandlers.put("game_launch", this::onOpenGame);
-    clientMessageHandlers.put("player_info", this::noOp);
-    clientMessageHandlers.put("game_info", this::noOp);
-
-    gameMessageHandlers.put("HostGame", this::onHostGame);
   }
 
   @Override
@@ -110,18 +147,22 @@ public class ClientSimulator implements Runnable {
     Assert.state(user != null, "User must be set");
     Assert.state(serverAddress != null, "Server address must be set");
     Assert.state(thinkBehavior != null, "Think behavior must be set");
+    Assert.state(thinkTimeRandom != null, "Random must be set");
     Assert.state(clientEventListener != null, "Client event listener must be set");
 
-    this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
-      Thread thread = new Thread(runnable);
-      thread.setName("client-worker-" + user.getId());
-      thread.setDaemon(true);
-      return thread;
-    });
-
     changeState(null, State.DISCONNECTED);
 
-    executor.submit(this::connect);
+    timer.execute(this::connect);
+  }
+
+  /**
+   * Schedules a task on the shared timer. Tasks that are still pending when this client is stopped will be
+   * cancelled.
+   */
+  private void schedule(Runnable task, long delay, TimeUnit unit) {
+    ScheduledTask scheduledTask = new ScheduledTask(task);
+    scheduledTasks.add(scheduledTask);
+    scheduledTask.timeout = timer.schedule(scheduledTask, delay, unit);
   }
 
   private void changeState(State oldState, State newState) {
@@ -132,28 +173,58 @@ public class ClientSimulator implements Runnable {
     clientEventListener.onStateChanged(oldState, newState);
   }
 
-  private void onOpenGame(Map<String, Object> stringObjectMap) {
-    clientEventListener.onGameCreated();
-    openGame();
+  /**
+   * Makes this client take the timed transition of its scenario state, usually hosting a game, as if requested at the
+   * specified {@link System#nanoTime()}, which is where the latency of the request is measured from.
+   *
+   * @return {@code false} if the client isn't waiting for an arrival anymore. If it stops waiting before the arrival
+   * is taken, the arrival is handed back via {@link ClientEventListener#onGameHostReturned(long)}.
+   */
+  public boolean offerGameHost(long arrivalNanos) {
+    Scenario.State current = scenarioState;
+    if (stop || current == null || !current.isOpenModelArrival()) {
+      return false;
+    }
+    int entry = scenarioStateEntries;
+    timer.execute(() -> hostGame(entry, current.getAfter(), arrivalNanos));
+    return true;
   }
 
-  private void onHostGame(Map<String, Object> stringObjectMap) {
-    hostGame();
+  private void hostGame(int entry, Scenario.Transition transition, long arrivalNanos) {
+    lock.lock();
+    try {
+      if (stop || scenarioStateEntries != entry) {
+        clientEventListener.onGameHostReturned(arrivalNanos);
+        return;
+      }
+      take(transition, arrivalNanos);
+      flush();
+    } finally {
+      lock.unlock();
+    }
   }
 
-  private void noOp(Map<String, Object> map) {
-
+  /** Runs a task of this client while holding its {@link #lock}, unless it has been stopped. */
+  private void runLocked(Runnable task) {
+    lock.lock();
+    try {
+      if (!stop) {
+        task.run();
+        flush();
+      }
+    } finally {
+      lock.unlock();
+    }
   }
 
-  private void onAuthenticationSuccess(Map<String, Object> map) {
-    changeState(State.LOGGING_IN, State.IDLE);
-    executor.schedule(this::requestHostGame, thinkTime(properties.getIdleMinTime(), properties.getIdleMaxTime()), TimeUnit.MILLISECONDS);
+  private long thinkTime(ScenarioDefinition.ThinkTime thinkTime) {
+    return thinkTime(thinkTime.getMin(), thinkTime.getMax());
   }
 
   private long thinkTime(long minMillis, long maxMillis) {
     switch (thinkBehavior) {
       case HUMAN:
-        return (long) (Math.random() * (maxMillis - minMillis)) + minMillis;
+        return (long) (thinkTimeRandom.nextDouble() * (maxMillis - minMillis)) + minMillis;
       case FIXED:
         return minMillis;
       case BRUTE_FORCE:
@@ -163,12 +234,9 @@ public class ClientSimulator implements Runnable {
     }
   }
 
-  private void onSession(Map<String, Object> map) {
-    logIn();
-  }
-
   private void logIn() {
     changeState(State.INITIATING_SESSION, State.LOGGING_IN);
+    startExchange(Exchange.HELLO);
     write(ImmutableMap.<String, Object>builder()
         .put("command", "hello")
         .put("login", user.getUsername())
@@ -188,292 +256,394 @@ public class ClientSimulator implements Runnable {
   @SneakyThrows
   private void write(String message) {
     log.trace("Sending: {}", message);
-    synchronized (writeMonitor) {
-      tcpClient.write(outputStream, message);
-    }
+    connection.write(message);
     clientEventListener.onMessageSent();
   }
 
   @SneakyThrows
-  public void connect() {
-    if (state != State.DISCONNECTED) {
+  private void write(EncodedFrame frame) {
+    log.trace("Sending: {}", frame);
+    connection.write(frame);
+    clientEventListener.onMessageSent();
+  }
+
+  @SneakyThrows
+  private void write(FrameTemplate template, int[] values) {
+    log.trace("Sending: {} with {}", template, values);
+    connection.write(template, values);
+    clientEventListener.onMessageSent();
+  }
+
+  /**
+   * Writes the messages of the current task to the socket if they are {@link FlushMode#BATCHED batched}. Called at the
+   * end of every task; messages written while handling received ones are flushed by the connection.
+   */
+  private void flush() {
+    ServerConnection current = connection;
+    if (current == null) {
       return;
     }
-
-    log.debug("Connecting");
-    changeState(State.DISCONNECTED, State.CONNECTING);
     try {
-      socket = new Socket(serverAddress.getAddress(), serverAddress.getPort());
+      current.flush();
     } catch (IOException e) {
-      log.debug("Connection failed ({})", e.getMessage());
-      changeState(State.CONNECTING, State.DISCONNECTED);
-      if (!stop) {
-        executor.schedule(ClientSimulator.this::connect, 3_000, TimeUnit.MILLISECONDS);
+      // The connection is lost, which is handled by its listener
+      log.debug("Flush failed ({})", e.getMessage());
+    }
+  }
+
+  private void startExchange(Exchange exchange) {
+    startExchange(exchange, System.nanoTime());
+  }
+
+  /**
+   * Starts the exchange, dropping pending exchanges with the same response: a request that has been rejected, like a
+   * {@code game_join} of a full game, must not be completed by the response to a later one.
+   */
+  private void startExchange(Exchange exchange, long startNanos) {
+    for (Exchange sameResponse : Exchange.forResponse(exchange.getResponse())) {
+      exchangeStartTimes.set(sameResponse.ordinal(), 0);
+    }
+    exchangeStartTimes.set(exchange.ordinal(), startNanos);
+  }
+
+  private void completeExchange(Exchange exchange) {
+    long startTime = exchangeStartTimes.getAndSet(exchange.ordinal(), 0);
+    if (startTime != 0) {
+      latencyRecorder.record(exchange, startTime);
+    }
+  }
+
+  public void connect() {
+    lock.lock();
+    try {
+      if (state != State.DISCONNECTED) {
+        return;
       }
-      return;
+      changeState(State.DISCONNECTED, State.CONNECTING);
+    } finally {
+      lock.unlock();
     }
-    outputStream = new BufferedOutputStream(socket.getOutputStream());
-    InputStream inputStream = new BufferedInputStream(socket.getInputStream());
-    changeState(State.CONNECTING, State.CONNECTED);
-    log.debug("Connected");
-
-    serverReader = new Thread("client-reader-" + user.getId()) {
-      @Override
-      public void run() {
-        try {
-          log.debug("Server reader started");
-          while (!stop) {
-            String message = tcpClient.read(inputStream);
+    connectThrottle.connect(this::openConnection);
+  }
+
+  /** Connects on a thread of the {@link ConnectThrottle}. The {@link #lock} isn't held while the connect blocks. */
+  private void openConnection() {
+    ServerConnection newConnection = null;
+    long startNanos = System.nanoTime();
+    if (!stop) {
+      log.debug("Connecting");
+      try {
+        newConnection = connectionService.connect(serverAddress, user.getId(), new ServerConnection.Listener() {
+          @Override
+          public void onMessage(CharBuffer message) {
             onServerMessage(message);
           }
-        } catch (IOException e) {
-          log.debug("Connection lost ({}: {})", e.getClass().getName(), e.getMessage());
-          changeState(state, ClientSimulator.State.DISCONNECTED);
-          if (stop) {
-            log.info("Client {} terminated", user.getId());
-            clientEventListener.onClienStopped(ClientSimulator.this);
-          } else {
-            executor.schedule(ClientSimulator.this::connect, 3_000, TimeUnit.MILLISECONDS);
+
+          @Override
+          public void onConnectionLost(IOException e) {
+            ClientSimulator.this.onConnectionLost(e);
           }
+        });
+      } catch (IOException e) {
+        connectThrottle.recordConnectFailure();
+        log.debug("Connection failed ({})", e.getMessage());
+      }
+    }
+
+    lock.lock();
+    try {
+      if (newConnection == null) {
+        changeState(State.CONNECTING, State.DISCONNECTED);
+        if (!stop) {
+          scheduleReconnect();
         }
-        log.debug("Server reader stopped");
+        return;
       }
-    };
-    serverReader.setDaemon(true);
-    serverReader.start();
-    askSession();
+      connection = newConnection;
+      newConnection.start();
+      if (stop) {
+        // Stopped while connecting, which the connection's listener is going to report
+        newConnection.close();
+        return;
+      }
+      latencyRecorder.record(Exchange.CONNECT, startNanos);
+      changeState(State.CONNECTING, State.CONNECTED);
+      log.debug("Connected");
+
+      askSession();
+      flush();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void onConnectionLost(IOException e) {
+    lock.lock();
+    try {
+      log.debug("Connection lost ({}: {})", e.getClass().getName(), e.getMessage());
+      heartbeatScheduler.unregister(this);
+      scenarioState = null;
+      scenarioStateEntries++;
+      changeState(state, State.DISCONNECTED);
+      for (int i = 0; i < exchangeStartTimes.length(); i++) {
+        exchangeStartTimes.set(i, 0);
+      }
+      if (stop) {
+        log.info("Client {} terminated", user.getId());
+        clientEventListener.onClienStopped(this);
+      } else {
+        scheduleReconnect();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Connects again after a jittered, exponentially growing delay, so that clients that lost their connection at the
+   * same time don't all reconnect at the same time. Stops the client if it has failed too often.
+   */
+  private void scheduleReconnect() {
+    failedConnects++;
+    long delayMillis = connectThrottle.reconnectDelayMillis(failedConnects, backoffRandom.nextDouble());
+    if (delayMillis < 0) {
+      log.info("Client {} gave up after {} failed connects", user.getId(), failedConnects);
+      stop = true;
+      clientEventListener.onClienStopped(this);
+      return;
+    }
+    connectThrottle.recordReconnectAttempt();
+    schedule(this::connect, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  void onServerMessage(CharBuffer message) {
+    lock.lock();
+    try {
+      handleServerMessage(message);
+    } finally {
+      lock.unlock();
+    }
   }
 
   @SneakyThrows
-  @SuppressWarnings("unchecked")
-  private void onServerMessage(String message) {
+  private void handleServerMessage(CharBuffer message) {
     log.trace("Received: {}", message);
-    if ("PING".equals(message)) {
-      write("PONG");
+    if (message == null) {
+      return;
+    }
+    if (PING.contentEquals(message)) {
+      write(messages.getPong());
       return;
     }
-    if ("PONG".equals(message)) {
+    if (PONG.contentEquals(message)) {
+      missedPongs = 0;
+      completeExchange(Exchange.PING);
+      return;
+    }
+    serverMessage.read(message);
+    String command = serverMessage.getCommand();
+    for (Exchange exchange : Exchange.forResponse(command)) {
+      completeExchange(exchange);
+    }
+    clientEventListener.onMessageReceived(command);
+    if (command == null) {
       return;
     }
-    Map<String, Object> map = objectMapper.readValue(message, Map.class);
-    clientEventListener.onMessageReceived((String) map.get("command"));
 
-    String target = (String) map.getOrDefault("target", "client");
-    switch (target) {
-      case "client":
-        handleClientMessage(map);
-        break;
+    if (scenarioState == null) {
+      onLoginMessage(command);
+      return;
+    }
+    for (Scenario.Transition transition = scenarioState.getTransition(scenario.indexOf(command));
+         transition != null; transition = transition.getAlternative()) {
+      if (accepts(transition)) {
+        take(transition, System.nanoTime());
+        return;
+      }
+    }
+  }
 
-      case "game":
-        handleGameMessage(map);
+  /**
+   * Returns whether the received message meets the transition's chance and conditions, capturing its game if so. The
+   * chance is drawn first so that messages most clients ignore, like {@code game_info}, are rarely parsed.
+   */
+  private boolean accepts(Scenario.Transition transition) throws IOException {
+    if (transition.getChance() < 1 && chanceRandom.nextDouble() >= transition.getChance()) {
+      return false;
+    }
+    if (!transition.isReadingMessage()) {
+      return true;
+    }
+    if (!serverMessage.matches(transition, conditionValues)) {
+      return false;
+    }
+    if (transition.getGameField() != null) {
+      game = serverMessage.getGame();
+    }
+    return true;
+  }
+
+  private void onLoginMessage(String command) {
+    switch (command) {
+      case "session":
+        logIn();
         break;
+      case "welcome":
+        failedConnects = 0;
+        missedPongs = 0;
+        heartbeatScheduler.register(this);
+        enter(scenario.getInitialState());
+        break;
+      default:
+        // Social, notices and the like, which aren't part of the scenario
     }
   }
 
   private void askSession() {
     changeState(State.CONNECTED, State.INITIATING_SESSION);
-    write(ImmutableMap.of(
-        "version", "1.0.0",
-        "user_agent", "loadtest",
-        "command", "ask_session"
-    ));
-  }
-
-  private void handleClientMessage(Map<String, Object> map) {
-    String command = (String) map.get("command");
-    Consumer<Map<String, Object>> handler = clientMessageHandlers.get(command);
-    if (handler == null) {
-      log.warn("No handler for client message: " + map);
-      return;
-    }
-    handler.accept(map);
+    startExchange(Exchange.ASK_SESSION, sessionArrivalNanos != 0 ? sessionArrivalNanos : System.nanoTime());
+    sessionArrivalNanos = 0;
+    write(messages.getAskSession());
   }
 
-  private void handleGameMessage(Map<String, Object> map) {
-    String command = (String) map.get("command");
-    Consumer<Map<String, Object>> handler = gameMessageHandlers.get(command);
-    if (handler == null) {
-      log.warn("No handler for game message: " + map);
+  private void enter(Scenario.State next) {
+    scenarioState = next;
+    int entry = ++scenarioStateEntries;
+    if (state != next.getClientState()) {
+      changeState(state, next.getClientState());
+    }
+
+    long durationMillis = next.getDuration() != null ? thinkTime(next.getDuration()) : 0;
+    long lastDelayMillis = run(next.getOnEnter(), durationMillis, 0, 0, 0, entry);
+
+    Scenario.Transition after = next.getAfter();
+    if (after == null) {
+      return;
+    }
+    if (next.isOpenModelArrival() && properties.getLoadModel() == LoadModel.OPEN) {
+      clientEventListener.onIdle(this);
       return;
     }
-    handler.accept(map);
+    schedule(() -> takeIfStillIn(entry, after, System.nanoTime()),
+        lastDelayMillis + thinkTime(after.getMinMillis(), after.getMaxMillis()), TimeUnit.MILLISECONDS);
   }
 
-  private void closeGame() {
-    changeState(State.SCORE_SCREEN, State.IDLE);
-    sendGameState("Ended");
-    executor.schedule(this::requestHostGame, thinkTime(properties.getIdleMinTime(), properties.getIdleMaxTime()), TimeUnit.MILLISECONDS);
-  }
-
-  private void sendGameState(String state) {
-    write(ImmutableMap.of(
-        "command", "GameState",
-        "args", new Object[]{state},
-        "target", "game"
-    ));
-  }
-
-  private void playGame() {
-    changeState(State.GAME_LOBBY, State.PLAYING);
-    sendGameState("Launching");
-
-    long timeTillGameEnd = 0;
-    long totalGameTime = thinkTime(properties.getGameMinTime(), properties.getGameMaxTime());
-
-    for (int playerId = 1; playerId <= PLAYERS_PER_GAME; playerId++) {
-      long timeTillDeath = thinkTime(0, totalGameTime);
-      timeTillGameEnd = Math.max(timeTillDeath, timeTillGameEnd);
-
-      int finalPlayerId = playerId;
-      executor.schedule(() -> letPlayerDie(finalPlayerId), timeTillDeath, TimeUnit.MILLISECONDS);
-    }
-    executor.schedule(this::endGame, timeTillGameEnd + 3_000, TimeUnit.MILLISECONDS);
-  }
-
-  private void endGame() {
-    changeState(State.PLAYING, State.SCORE_SCREEN);
-    executor.schedule(this::closeGame, thinkTime(properties.getScoreScreenMinTime(), properties.getScoreScreenMaxTime()), TimeUnit.MILLISECONDS);
-  }
-
-  private void letPlayerDie(int playerId) {
-    sendGameResult(playerId, "score 1");
-    sendGameResult(playerId, "victory 10");
-    sendJsonStats(playerId);
-  }
-
-  private void sendJsonStats(int playerId) {
-    write(ImmutableMap.of(
-        "command", "JsonStats",
-        "args", new Object[]{JSON_STATS},
-        "target", "game"
-    ));
-  }
-
-  private void sendGameResult(int playerId, String resultString) {
-    write(ImmutableMap.of(
-        "command", "GameResult",
-        "args", new Object[]{playerId, resultString},
-        "target", "game"
-    ));
-  }
-
-  private void openGame() {
-    changeState(State.CREATING_GAME, State.GAME_LOBBY);
-    sendGameState("Idle");
-
-    executor.schedule(
-        () -> sendGameState("Lobby"),
-        thinkTime(properties.getGameStartupMinTime(), properties.getGameStartupMaxTime()),
-        TimeUnit.MILLISECONDS
-    );
-  }
-
-  private void hostGame() {
-    Assert.state(state == State.GAME_LOBBY, "Must be in GAME_LOBBY before hosting game");
-
-    executor.schedule(
-        () -> {
-          sendGameOption("UnitCap", "1000");
-          sendGameOption("ShareUnitCap", "none");
-          sendGameOption("FogOfWar", "explored");
-          sendGameOption("Victory", "demoralization");
-          sendGameOption("Timeouts", "3");
-          sendGameOption("GameSpeed", "normal");
-          sendGameOption("AllowObservers", 0);
-          sendGameOption("CheatsEnabled", "false");
-          sendGameOption("CivilianAlliance", "enemy");
-          sendGameOption("RevealCivilians", "Yes");
-          sendGameOption("PrebuiltUnits", "Off");
-          sendGameOption("NoRushOption", "Off");
-          sendGameOption("RandomMap", "Off");
-          sendGameOption("Score", "no");
-          sendGameOption("Share", "ShareUntilDeath");
-          sendGameOption("TeamLock", "locked");
-          sendGameOption("BuildMult", "2.0");
-          sendGameOption("CheatMult", "2.0");
-          sendGameOption("TMLRandom", "0");
-          sendGameOption("LandExpansionsAllowed", "5");
-          sendGameOption("NavalExpansionsAllowed", "4");
-          sendGameOption("OmniCheat", "on");
-          sendGameOption("ScenarioFile", "/maps/12 The Pass/12 The Pass_scenario.lua");
-          sendGameOption("Slots", PLAYERS_PER_GAME);
-
-          executor.schedule(() -> {
-            havePlayersJoin();
-            playGame();
-          }, thinkTime(properties.getLobbyMinTime() / PLAYERS_PER_GAME, properties.getLobbyMinTime()), TimeUnit.MILLISECONDS);
-        },
-        thinkTime(properties.getGameStartupMinTime(), properties.getGameStartupMaxTime()),
-        TimeUnit.MILLISECONDS
-    );
-  }
-
-  private void havePlayersJoin() {
-    for (int playerId = 1; playerId <= PLAYERS_PER_GAME; playerId++) {
-      sendPlayerOption(playerId, "Faction", 1);
-      sendPlayerOption(playerId, "Color", playerId);
-      sendPlayerOption(playerId, "Team", playerId);
-      sendPlayerOption(playerId, "StartSpot", playerId);
-
-      for (int slotId = playerId; slotId <= PLAYERS_PER_GAME; slotId++) {
-        clearSlot(slotId);
-      }
+  private void takeIfStillIn(int entry, Scenario.Transition transition, long requestNanos) {
+    if (scenarioStateEntries == entry) {
+      take(transition, requestNanos);
     }
   }
 
-  private void clearSlot(int armyId) {
-    write(ImmutableMap.of(
-        "command", "ClearSlot",
-        "args", new Object[]{armyId},
-        "target", "game"
-    ));
+  /**
+   * @param requestNanos the {@link System#nanoTime()} exchanges started by the transition are measured from
+   */
+  private void take(Scenario.Transition transition, long requestNanos) {
+    if (transition.isCountsGame()) {
+      clientEventListener.onGameCreated();
+    }
+    // Delayed actions of the transition belong to the state it enters
+    run(transition.getActions(), 0, 0, 0, requestNanos, scenarioStateEntries + 1);
+    enter(transition.getTarget());
+  }
+
+  /**
+   * Runs the actions, or schedules them if they are delayed. Delayed actions are dropped if the client has left the
+   * scenario state by the time they are due.
+   *
+   * @param requestNanos the {@link System#nanoTime()} exchanges are measured from, or 0 for when they are started
+   * @param entry the {@link #scenarioStateEntries entry} of the scenario state the actions belong to
+   * @return the longest delay
+   */
+  private long run(Scenario.Action[] actions, long durationMillis, int player, int slot, long requestNanos, int entry) {
+    long longestDelayMillis = 0;
+    for (Scenario.Action action : actions) {
+      switch (action.getEach()) {
+        case NONE:
+          longestDelayMillis = Math.max(longestDelayMillis, run(action, durationMillis, player, slot, requestNanos, entry));
+          break;
+        case PLAYER:
+          for (int playerId = 1; playerId <= scenario.getPlayersPerGame(); playerId++) {
+            longestDelayMillis = Math.max(longestDelayMillis, run(action, durationMillis, playerId, slot, requestNanos, entry));
+          }
+          break;
+        case SLOT:
+          for (int slotId = Math.max(player, 1); slotId <= scenario.getPlayersPerGame(); slotId++) {
+            longestDelayMillis = Math.max(longestDelayMillis, run(action, durationMillis, player, slotId, requestNanos, entry));
+          }
+          break;
+        default:
+          throw new IllegalStateException("Uncovered repetition: " + action.getEach());
+      }
+    }
+    return longestDelayMillis;
+  }
+
+  private long run(Scenario.Action action, long durationMillis, int player, int slot, long requestNanos, int entry) {
+    long delayMillis;
+    if (action.isDelayWithinDuration()) {
+      delayMillis = thinkTime(0, durationMillis);
+    } else if (action.getDelay() != null) {
+      delayMillis = thinkTime(action.getDelay());
+    } else {
+      perform(action, durationMillis, player, slot, requestNanos, entry);
+      return 0;
+    }
+    schedule(() -> performIfStillIn(entry, action, durationMillis, player, slot), delayMillis, TimeUnit.MILLISECONDS);
+    return delayMillis;
   }
 
-  private void sendPlayerOption(int playerId, String option, Object value) {
-    write(ImmutableMap.of(
-        "command", "PlayerOption",
-        "args", new Object[]{String.valueOf(playerId), option, value},
-        "target", "game"
-    ));
+  private void performIfStillIn(int entry, Scenario.Action action, long durationMillis, int player, int slot) {
+    if (scenarioStateEntries == entry) {
+      perform(action, durationMillis, player, slot, 0, entry);
+    }
   }
 
-  private void sendGameOption(String option, Object value) {
-    write(ImmutableMap.of(
-        "command", "GameOption",
-        "args", new Object[]{option, value},
-        "target", "game"
-    ));
+  private void perform(Scenario.Action action, long durationMillis, int player, int slot, long requestNanos, int entry) {
+    if (action.getExchange() != null) {
+      startExchange(action.getExchange(), requestNanos != 0 ? requestNanos : System.nanoTime());
+    }
+    if (action.getFrame() != null) {
+      write(action.getFrame());
+    } else if (action.getTemplate() != null) {
+      Scenario.Variable[] variables = action.getVariables();
+      if (templateValues.length < variables.length) {
+        templateValues = new int[variables.length];
+      }
+      for (int i = 0; i < variables.length; i++) {
+        templateValues[i] = valueOf(variables[i], player, slot);
+      }
+      write(action.getTemplate(), templateValues);
+    }
+    run(action.getActions(), durationMillis, player, slot, requestNanos, entry);
   }
 
-  private void requestHostGame() {
-    changeState(State.IDLE, State.CREATING_GAME);
-    write(ImmutableMap.<String, Object>builder()
-        .put("mapname", "12 The Pass")
-        .put("title", "Test Game " + user.getId())
-        .put("mod", "faf")
-        .put("options", new boolean[0])
-        .put("access", "public")
-        .put("visibility", "public")
-        .put("command", "game_host")
-        .build()
-    );
+  private int valueOf(Scenario.Variable variable, int player, int slot) {
+    return switch (variable) {
+      case USER_ID -> user.getId();
+      case PLAYER -> player;
+      case SLOT -> slot;
+      case GAME -> game;
+    };
   }
 
   public void stop() {
     stop = true;
-    executor.shutdownNow();
-    if (serverReader != null) {
-      serverReader.interrupt();
-    }
-    if (socket != null) {
-      try {
-        socket.close();
-      } catch (IOException e) {
-        log.warn("Socket could not be closed", e);
-      }
+    heartbeatScheduler.unregister(this);
+    scheduledTasks.forEach(ScheduledTask::cancel);
+    scheduledTasks.clear();
+    if (connection != null) {
+      connection.close();
     }
   }
 
+  /** Sets the random numbers of this client, which are split into one stream per kind of decision. */
+  public ClientSimulator setRandom(SplittableRandom random) {
+    this.thinkTimeRandom = random.split();
+    this.chanceRandom = random.split();
+    this.backoffRandom = random.split();
+    return this;
+  }
+
   public int getId() {
     return user.getId();
   }
@@ -482,12 +652,55 @@ public class ClientSimulator implements Runnable {
     return state;
   }
 
-  @Scheduled(fixedDelay = 45_000)
-  public void sendPing() {
-    if (state.ordinal() < State.IDLE.ordinal()) {
-      return;
+  /**
+   * Sends a ping, whose round trip is recorded as {@link Exchange#PING}, on behalf of the {@link HeartbeatScheduler}.
+   * If the previous ping hasn't been answered, it counts as missed, and once too many have been missed in a row, the
+   * connection is considered dead and dropped.
+   */
+  void sendPing() {
+    lock.lock();
+    try {
+      if (stop || state.ordinal() < State.IDLE.ordinal()) {
+        return;
+      }
+      if (exchangeStartTimes.get(Exchange.PING.ordinal()) != 0) {
+        missedPongs++;
+        heartbeatScheduler.recordMissedPong();
+        int maxMissedPongs = properties.getHeartbeatMaxMissedPongs();
+        if (maxMissedPongs > 0 && missedPongs >= maxMissedPongs) {
+          log.debug("Dropping connection after {} missed pongs", missedPongs);
+          connection.close();
+          return;
+        }
+      }
+
+      startExchange(Exchange.PING);
+      write(messages.getPing());
+      flush();
+    } finally {
+      lock.unlock();
     }
+  }
 
-    write(ImmutableMap.of("command", "ping"));
+  private final class ScheduledTask implements Runnable {
+
+    private final Runnable task;
+    private volatile HashedWheelTimer.Timeout timeout;
+
+    private ScheduledTask(Runnable task) {
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      scheduledTasks.remove(this);
+      runLocked(task);
+    }
+
+    private void cancel() {
+      if (timeout != null) {
+        timeout.cancel();
+      }
+    }
   }
 }
@@ -0,0 +1,120 @@
+package com.faforever.loadtest.server.client;
+
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps clients from connecting all at once, e.g. after a server restart: at most {@link
+ * LoadTestProperties#getMaxConcurrentConnects()} connects are in flight across all clients, and reconnects are delayed
+ * by an exponential backoff with full jitter. Also counts reconnects and failed connects.
+ * <p>
+ * Connects block until the server accepts them or they fail, so they run on threads of their own rather than on the
+ * timer's workers, which would otherwise cap them and delay the actions of connected clients. Clients waiting for a
+ * permit are queued, so there are no more connect threads than permits.
+ */
+@Component
+public class ConnectThrottle {
+
+  private final LoadTestProperties properties;
+  private final ExecutorService executor;
+  /** {@code null} if connects aren't limited. */
+  private final Semaphore permits;
+  private final Queue<Runnable> waiting;
+  private final LongAdder reconnectAttempts;
+  private final LongAdder connectFailures;
+
+  public ConnectThrottle(LoadTestProperties properties) {
+    this.properties = properties;
+    this.executor = properties.getThreadingMode().newCachedExecutor("client-connect-");
+    int maxConcurrentConnects = properties.getMaxConcurrentConnects();
+    this.permits = maxConcurrentConnects > 0 ? new Semaphore(maxConcurrentConnects) : null;
+    this.waiting = new ConcurrentLinkedQueue<>();
+    this.reconnectAttempts = new LongAdder();
+    this.connectFailures = new LongAdder();
+  }
+
+  /**
+   * Runs {@code connect} on a connect thread once a permit is available. The permit is released when it returns.
+   */
+  public void connect(Runnable connect) {
+    if (permits == null) {
+      executor.execute(connect);
+      return;
+    }
+    waiting.add(connect);
+    dispatch();
+  }
+
+  /** Hands free permits to waiting clients. Called after every change of either, so no client is left waiting. */
+  private void dispatch() {
+    while (!waiting.isEmpty() && permits.tryAcquire()) {
+      Runnable connect = waiting.poll();
+      if (connect == null) {
+        permits.release();
+      } else {
+        executor.execute(() -> {
+          try {
+            connect.run();
+          } finally {
+            permits.release();
+            dispatch();
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Returns the delay before the next connect of a client whose last {@code failedAttempts} connects have failed or
+   * been lost, or {@code -1} if it should give up.
+   *
+   * @param random a random number between 0 (inclusive) and 1 (exclusive)
+   */
+  public long reconnectDelayMillis(int failedAttempts, double random) {
+    int maxAttempts = properties.getReconnectMaxAttempts();
+    if (maxAttempts > 0 && failedAttempts >= maxAttempts) {
+      return -1;
+    }
+    long maxDelayMillis = properties.getReconnectMaxDelayMillis();
+    long ceilingMillis = properties.getReconnectInitialDelayMillis() << Math.min(Math.max(failedAttempts - 1, 0), 30);
+    if (ceilingMillis <= 0 || ceilingMillis > maxDelayMillis) {
+      ceilingMillis = maxDelayMillis;
+    }
+    return (long) (random * ceilingMillis);
+  }
+
+  public void recordReconnectAttempt() {
+    reconnectAttempts.increment();
+  }
+
+  public void recordConnectFailure() {
+    connectFailures.increment();
+  }
+
+  /** Returns the number of reconnects scheduled since the last reset. */
+  public long getReconnectAttempts() {
+    return reconnectAttempts.sum();
+  }
+
+  /** Returns the number of failed connects since the last reset. */
+  public long getConnectFailures() {
+    return connectFailures.sum();
+  }
+
+  public void reset() {
+    reconnectAttempts.reset();
+    connectFailures.reset();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
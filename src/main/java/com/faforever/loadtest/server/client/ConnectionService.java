@@ -0,0 +1,79 @@
+package com.faforever.loadtest.server.client;
+
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens server connections using the I/O engine configured in {@link LoadTestProperties#getIoEngine()}.
+ */
+@Service
+@Slf4j
+public class ConnectionService {
+
+  private final FafLegacyTcpClient tcpClient;
+  private final LoadTestProperties properties;
+  private final TrafficCounter trafficCounter;
+  private final AtomicInteger nextEventLoop;
+  private volatile NioEventLoop[] eventLoops;
+
+  public ConnectionService(FafLegacyTcpClient tcpClient, LoadTestProperties properties, TrafficCounter trafficCounter) {
+    this.tcpClient = tcpClient;
+    this.properties = properties;
+    this.trafficCounter = trafficCounter;
+    this.nextEventLoop = new AtomicInteger();
+  }
+
+  public ServerConnection connect(InetSocketAddress serverAddress, int clientId, ServerConnection.Listener listener) throws IOException {
+    switch (properties.getIoEngine()) {
+      case BLOCKING:
+        return new BlockingServerConnection(tcpClient, serverAddress, clientId, properties.getConnectionBufferSize(), properties.getFlushMode(), properties.getThreadingMode(), trafficCounter, listener);
+      case NIO:
+        SocketChannel channel = SocketChannel.open(serverAddress);
+        try {
+          return new NioServerConnection(tcpClient, channel, nextEventLoop(), properties.getConnectionBufferSize(), properties.getFlushMode(), trafficCounter, listener);
+        } catch (IOException e) {
+          channel.close();
+          throw e;
+        }
+      default:
+        throw new IllegalStateException("Uncovered I/O engine: " + properties.getIoEngine());
+    }
+  }
+
+  private NioEventLoop nextEventLoop() throws IOException {
+    NioEventLoop[] loops = getEventLoops();
+    return loops[Math.floorMod(nextEventLoop.getAndIncrement(), loops.length)];
+  }
+
+  private NioEventLoop[] getEventLoops() throws IOException {
+    if (eventLoops == null) {
+      synchronized (this) {
+        if (eventLoops == null) {
+          int selectorThreads = properties.getSelectorThreads();
+          log.info("Starting {} event loops", selectorThreads);
+          NioEventLoop[] loops = new NioEventLoop[selectorThreads];
+          for (int i = 0; i < selectorThreads; i++) {
+            loops[i] = new NioEventLoop("nio-event-loop-" + i);
+          }
+          eventLoops = loops;
+        }
+      }
+    }
+    return eventLoops;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (eventLoops != null) {
+      Arrays.stream(eventLoops).forEach(NioEventLoop::stop);
+    }
+  }
+}
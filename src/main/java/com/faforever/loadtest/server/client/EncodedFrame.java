@@ -0,0 +1,50 @@
+package com.faforever.loadtest.server.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A message that has been serialized and framed in advance, for messages that never change. Writing it is a plain
+ * copy of its bytes.
+ */
+public final class EncodedFrame {
+
+  private final String message;
+  private final String command;
+  private final byte[] bytes;
+
+  private EncodedFrame(String message, byte[] bytes) {
+    this.message = message;
+    this.command = TrafficCounter.commandOf(message);
+    this.bytes = bytes;
+  }
+
+  public static EncodedFrame of(String message) {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    FrameEncoder encoder = new FrameEncoder(message.length() * 2 + 8, FrameEncoder.Sink.of(outputStream));
+    try {
+      encoder.encode(message);
+      encoder.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new EncodedFrame(message, outputStream.toByteArray());
+  }
+
+  /**
+   * Returns the complete frame, including the size prefixes. Must not be modified.
+   */
+  byte[] getBytes() {
+    return bytes;
+  }
+
+  String getCommand() {
+    return command;
+  }
+
+  @Override
+  public String toString() {
+    return message;
+  }
+}
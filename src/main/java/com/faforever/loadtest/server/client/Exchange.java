@@ -0,0 +1,56 @@
+package com.faforever.loadtest.server.client;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * A request sent by a client that is answered by a specific server message, so that its latency can be measured.
+ */
+public enum Exchange {
+  /** Establishing the connection, which isn't answered by a message but recorded once the socket is connected. */
+  CONNECT("connect", "connected"),
+  ASK_SESSION("ask_session", "session"),
+  HELLO("hello", "welcome"),
+  GAME_HOST("game_host", "game_launch"),
+  GAME_JOIN("game_join", "game_launch"),
+  PING("ping", "PONG");
+
+  private static final Exchange[] NONE = new Exchange[0];
+  /** The exchanges grouped by response, since several requests may be answered alike. */
+  private static final Exchange[][] BY_RESPONSE = Arrays.stream(values())
+      .collect(Collectors.groupingBy(exchange -> exchange.response, LinkedHashMap::new, Collectors.toList()))
+      .values().stream()
+      .map(exchanges -> exchanges.toArray(new Exchange[0]))
+      .toArray(Exchange[][]::new);
+
+  private final String request;
+  private final String response;
+
+  Exchange(String request, String response) {
+    this.request = request;
+    this.response = response;
+  }
+
+  /**
+   * Returns the exchanges that may be completed by the specified server command, which is usually one or none. The
+   * returned array is shared and must not be modified.
+   */
+  static Exchange[] forResponse(String command) {
+    for (Exchange[] exchanges : BY_RESPONSE) {
+      if (exchanges[0].response.equals(command)) {
+        return exchanges;
+      }
+    }
+    return NONE;
+  }
+
+  String getResponse() {
+    return response;
+  }
+
+  @Override
+  public String toString() {
+    return request + " → " + response;
+  }
+}
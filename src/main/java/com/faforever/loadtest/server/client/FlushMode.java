@@ -0,0 +1,11 @@
+package com.faforever.loadtest.server.client;
+
+public enum FlushMode {
+  /** Every message is written to the socket on its own, like the real client does. */
+  PER_MESSAGE,
+  /**
+   * Messages are buffered and written once per burst, i.e. when the client's task or the handling of a read is done,
+   * which takes fewer system calls and TCP segments.
+   */
+  BATCHED
+}
@@ -0,0 +1,115 @@
+package com.faforever.loadtest.server.client;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Incrementally decodes frames of the legacy protocol from byte buffers as they arrive. A frame consists of the total
+ * size, the string size and the UTF-16BE string bytes. The string is decoded straight into a pooled char buffer, so
+ * apart from the first few frames of a size class no garbage is produced. Incomplete frames are kept until the
+ * remaining bytes arrive.
+ *
+ * @see FafLegacyTcpClient
+ */
+public class FrameDecoder {
+
+  private static final int HEADER_SIZE = 8;
+
+  private final CharBufferPool pool;
+  /** Counts the decoded frames, or {@code null}. */
+  private final TrafficCounter trafficCounter;
+  private final ByteBuffer header;
+  private CharBuffer message;
+  private int remainingBytes;
+  /** The first byte of a char that has been split between two reads, or {@code -1}. */
+  private int pendingHighByte;
+
+  FrameDecoder(CharBufferPool pool) {
+    this(pool, null);
+  }
+
+  FrameDecoder(CharBufferPool pool, TrafficCounter trafficCounter) {
+    this.pool = pool;
+    this.trafficCounter = trafficCounter;
+    this.header = ByteBuffer.allocate(HEADER_SIZE);
+    this.pendingHighByte = -1;
+  }
+
+  /**
+   * Consumes all bytes remaining in {@code in} and passes every completed message to {@code consumer}. The passed
+   * buffer is only valid for the duration of the call; a {@code null} frame is passed as {@code null}.
+   */
+  public void decode(ByteBuffer in, Consumer<CharBuffer> consumer) {
+    while (in.hasRemaining()) {
+      if (message == null) {
+        if (!readHeader(in)) {
+          return;
+        }
+        if (message == null) {
+          consumer.accept(null);
+          continue;
+        }
+      }
+
+      readChars(in);
+
+      if (remainingBytes == 0) {
+        CharBuffer completed = message;
+        message = null;
+        completed.flip();
+        if (trafficCounter != null) {
+          trafficCounter.record(MessageTraffic.Direction.INBOUND, completed);
+        }
+        try {
+          consumer.accept(completed);
+        } finally {
+          pool.release(completed);
+        }
+      }
+    }
+  }
+
+  private void readChars(ByteBuffer in) {
+    if (pendingHighByte >= 0 && in.hasRemaining()) {
+      message.put((char) (pendingHighByte << 8 | in.get() & 0xFF));
+      pendingHighByte = -1;
+      remainingBytes -= 2;
+    }
+    while (remainingBytes >= 2 && in.remaining() >= 2) {
+      message.put(in.getChar());
+      remainingBytes -= 2;
+    }
+    if (remainingBytes >= 2 && in.hasRemaining()) {
+      pendingHighByte = in.get() & 0xFF;
+    } else if (remainingBytes == 1 && in.hasRemaining()) {
+      // Odd string sizes can't be valid UTF-16, the dangling byte is dropped
+      in.get();
+      remainingBytes = 0;
+    }
+  }
+
+  /**
+   * Reads as much of the frame header as available and acquires the message buffer once it is complete.
+   *
+   * @return {@code true} if the header is complete
+   */
+  private boolean readHeader(ByteBuffer in) {
+    while (header.hasRemaining() && in.hasRemaining()) {
+      header.put(in.get());
+    }
+    if (header.hasRemaining()) {
+      return false;
+    }
+    header.flip();
+    header.getInt();
+    int stringSize = header.getInt();
+    header.clear();
+
+    if (stringSize >= 0) {
+      message = pool.acquire(stringSize / 2);
+      remainingBytes = stringSize;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,170 @@
+package com.faforever.loadtest.server.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes messages into frames of the legacy protocol. Chars are written as UTF-16BE straight into a reusable buffer
+ * that is handed to a {@link Sink} whenever it's full and on {@link #flush()}, so messages of any size are encoded
+ * without allocating. An encoder belongs to a single connection and must not be used concurrently.
+ *
+ * @see FafLegacyTcpClient
+ */
+public class FrameEncoder {
+
+  private static final int HEADER_SIZE = 8;
+  /** Enough to hold a header or the longest decimal number. */
+  private static final int MIN_BUFFER_SIZE = 32;
+
+  private final ByteBuffer buffer;
+  private final Sink sink;
+  /** Counts the encoded frames, or {@code null}. */
+  private final TrafficCounter trafficCounter;
+
+  FrameEncoder(int bufferSize, Sink sink) {
+    this(bufferSize, sink, null);
+  }
+
+  FrameEncoder(int bufferSize, Sink sink, TrafficCounter trafficCounter) {
+    this.buffer = ByteBuffer.allocate(Math.max(bufferSize, MIN_BUFFER_SIZE));
+    this.sink = sink;
+    this.trafficCounter = trafficCounter;
+  }
+
+  /**
+   * Appends the frame of the given message to the buffer. The frame isn't guaranteed to be passed to the sink before
+   * {@link #flush()} is called.
+   */
+  public void encode(CharSequence message) throws IOException {
+    if (message == null) {
+      ensureRemaining(4);
+      buffer.putInt(-1);
+      return;
+    }
+
+    if (trafficCounter != null) {
+      trafficCounter.record(MessageTraffic.Direction.OUTBOUND, message);
+    }
+    beginFrame(message.length());
+    putChars(message);
+  }
+
+  /**
+   * Appends a frame that has been encoded in advance.
+   */
+  public void encode(EncodedFrame frame) throws IOException {
+    count(frame.getCommand(), (frame.getBytes().length - HEADER_SIZE) / 2);
+    putBytes(frame.getBytes());
+  }
+
+  /**
+   * Counts a frame of {@code length} chars, if the encoder has a traffic counter.
+   */
+  void count(String command, int length) {
+    if (trafficCounter != null) {
+      trafficCounter.record(MessageTraffic.Direction.OUTBOUND, command, length * 2);
+    }
+  }
+
+  /**
+   * Writes the header of a frame containing {@code length} chars, which must be followed by exactly that many chars
+   * written by the other {@code put} methods.
+   */
+  void beginFrame(int length) throws IOException {
+    int stringSize = length * 2;
+    ensureRemaining(HEADER_SIZE);
+    buffer.putInt(stringSize + 4).putInt(stringSize);
+  }
+
+  void putChars(CharSequence chars) throws IOException {
+    int length = chars.length();
+    for (int i = 0; i < length; i++) {
+      if (buffer.remaining() < 2) {
+        drain();
+      }
+      buffer.putChar(chars.charAt(i));
+    }
+  }
+
+  /**
+   * Writes the decimal representation of a non-negative number.
+   */
+  void putDecimal(int value) throws IOException {
+    int digits = decimalLength(value);
+    ensureRemaining(digits * 2);
+    int divisor = 1;
+    for (int i = 1; i < digits; i++) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      buffer.putChar((char) ('0' + value / divisor % 10));
+    }
+  }
+
+  /**
+   * Writes already encoded bytes.
+   */
+  void putBytes(byte[] bytes) throws IOException {
+    int offset = 0;
+    while (offset < bytes.length) {
+      if (!buffer.hasRemaining()) {
+        drain();
+      }
+      int count = Math.min(buffer.remaining(), bytes.length - offset);
+      buffer.put(bytes, offset, count);
+      offset += count;
+    }
+  }
+
+  static int decimalLength(int value) {
+    int digits = 1;
+    while (value >= 10) {
+      value /= 10;
+      digits++;
+    }
+    return digits;
+  }
+
+  /**
+   * Passes all buffered bytes to the sink.
+   */
+  public void flush() throws IOException {
+    if (buffer.position() > 0) {
+      drain();
+    }
+  }
+
+  private void ensureRemaining(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      drain();
+    }
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    sink.write(buffer);
+    buffer.clear();
+  }
+
+  /**
+   * Receives encoded bytes. Implementations must consume all remaining bytes of the buffer, or copy what they can't
+   * write right away, since the buffer is reused afterwards.
+   */
+  @FunctionalInterface
+  public interface Sink {
+
+    void write(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Creates a sink that writes to a blocking stream and flushes it.
+     */
+    static Sink of(OutputStream outputStream) {
+      return buffer -> {
+        outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        buffer.position(buffer.limit());
+        outputStream.flush();
+      };
+    }
+  }
+}
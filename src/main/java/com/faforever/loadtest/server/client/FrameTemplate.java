@@ -0,0 +1,100 @@
+package com.faforever.loadtest.server.client;
+
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A message that has been serialized in advance except for a few variable fields. The constant parts are kept
+ * encoded, so writing a message only encodes the values of the placeholders.
+ * <p>
+ * Templates are compiled from serialized messages containing placeholders like {@code ${playerId}}, which are
+ * replaced by non-negative integers. Use {@link #raw(String)} to create a placeholder that isn't quoted.
+ */
+public final class FrameTemplate {
+
+  private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\$\\{([a-zA-Z]+)}");
+
+  private final String message;
+  private final String command;
+  private final byte[][] segments;
+  private final int segmentsLength;
+
+  private FrameTemplate(String message, byte[][] segments, int segmentsLength) {
+    this.message = message;
+    this.command = TrafficCounter.commandOf(message);
+    this.segments = segments;
+    this.segmentsLength = segmentsLength;
+  }
+
+  public static FrameTemplate compile(String message) {
+    List<byte[]> segments = new ArrayList<>();
+    int segmentsLength = 0;
+    Matcher matcher = PLACEHOLDER_PATTERN.matcher(message);
+    int start = 0;
+    while (matcher.find()) {
+      String segment = message.substring(start, matcher.start());
+      segments.add(segment.getBytes(StandardCharsets.UTF_16BE));
+      segmentsLength += segment.length();
+      start = matcher.end();
+    }
+    String segment = message.substring(start);
+    segments.add(segment.getBytes(StandardCharsets.UTF_16BE));
+    segmentsLength += segment.length();
+
+    return new FrameTemplate(message, segments.toArray(new byte[0][]), segmentsLength);
+  }
+
+  /**
+   * Creates a placeholder value that is serialized without quotes.
+   */
+  public static RawValue raw(String name) {
+    return new RawValue(placeholder(name));
+  }
+
+  public static String placeholder(String name) {
+    return "${" + name + "}";
+  }
+
+  /**
+   * Appends a frame with the placeholders replaced by the given non-negative integers, in order of appearance, without
+   * allocating. Values beyond the template's placeholders are ignored, so callers can reuse one array for all
+   * templates.
+   */
+  public void encode(FrameEncoder encoder, int[] values) throws IOException {
+    int placeholders = segments.length - 1;
+    if (values.length < placeholders) {
+      throw new IllegalArgumentException("Expected " + placeholders + " values but got " + values.length);
+    }
+
+    int length = segmentsLength;
+    for (int i = 0; i < placeholders; i++) {
+      length += decimalLength(values[i]);
+    }
+
+    encoder.count(command, length);
+    encoder.beginFrame(length);
+    encoder.putBytes(segments[0]);
+    for (int i = 0; i < placeholders; i++) {
+      encoder.putDecimal(values[i]);
+      encoder.putBytes(segments[i + 1]);
+    }
+  }
+
+  private static int decimalLength(int value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Unsupported value: " + value);
+    }
+    return FrameEncoder.decimalLength(value);
+  }
+
+  @Override
+  public String toString() {
+    return message;
+  }
+}
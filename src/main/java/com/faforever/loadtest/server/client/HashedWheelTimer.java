@@ -0,0 +1,292 @@
+package com.faforever.loadtest.server.client;
+
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide timer through which all client simulators schedule their actions. Timeouts are hashed into a wheel of
+ * buckets by their deadline; a single ticker thread advances the wheel every {@link
+ * LoadTestProperties#getTimerTickMillis()} and hands expired timeouts to a small worker pool, or to virtual threads
+ * in {@link ThreadingMode#VIRTUAL}. Scheduling and cancelling are O(1) and never contend with the ticker, which picks
+ * up new and cancelled timeouts from queues.
+ */
+@Component
+@Slf4j
+public class HashedWheelTimer {
+
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final long startTime;
+  private final ExecutorService workers;
+  private final Queue<Timeout> newTimeouts;
+  private final Queue<Timeout> cancelledTimeouts;
+  private final AtomicBoolean started;
+  private final AtomicInteger pendingTimeouts;
+  private final LongAdder expiredTimeouts;
+  private final LongAdder lagNanos;
+  private volatile long ticks;
+  private volatile boolean stopped;
+  private Thread ticker;
+
+  public HashedWheelTimer(LoadTestProperties properties) {
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(properties.getTimerTickMillis());
+    this.wheel = createWheel(properties.getTimerWheelSize());
+    this.mask = wheel.length - 1;
+    this.startTime = System.nanoTime();
+    this.workers = properties.getThreadingMode().newExecutor("timer-worker-", properties.getTimerWorkerThreads());
+    this.newTimeouts = new ConcurrentLinkedQueue<>();
+    this.cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    this.started = new AtomicBoolean();
+    this.pendingTimeouts = new AtomicInteger();
+    this.expiredTimeouts = new LongAdder();
+    this.lagNanos = new LongAdder();
+  }
+
+  private static Bucket[] createWheel(int wheelSize) {
+    int normalizedSize = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+    Bucket[] wheel = new Bucket[normalizedSize];
+    for (int i = 0; i < wheel.length; i++) {
+      wheel[i] = new Bucket();
+    }
+    return wheel;
+  }
+
+  /**
+   * Runs the given task on a worker thread as soon as possible.
+   */
+  public void execute(Runnable task) {
+    workers.execute(task);
+  }
+
+  /**
+   * Runs the given task on a worker thread once the delay has elapsed, at a precision of one tick.
+   */
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    start();
+    long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+    Timeout timeout = new Timeout(this, task, deadline);
+    pendingTimeouts.incrementAndGet();
+    newTimeouts.add(timeout);
+    return timeout;
+  }
+
+  public Metrics getMetrics() {
+    return new Metrics(ticks, expiredTimeouts.sum(), lagNanos.sum(), pendingTimeouts.get());
+  }
+
+  /**
+   * Starts the ticker thread on first use, so that no thread is spinning as long as no test is running.
+   */
+  private void start() {
+    if (started.get() || !started.compareAndSet(false, true)) {
+      return;
+    }
+    ticker = new Thread(this::tick, "timer-ticker");
+    ticker.setDaemon(true);
+    ticker.start();
+  }
+
+  private void tick() {
+    log.debug("Timer started");
+    long tick = (System.nanoTime() - startTime) / tickNanos;
+    while (!stopped) {
+      if (!waitForTick(tick)) {
+        break;
+      }
+      removeCancelledTimeouts();
+      transferNewTimeouts(tick);
+      wheel[(int) (tick & mask)].expireTimeouts(this);
+      ticks = ++tick;
+    }
+    log.debug("Timer stopped");
+  }
+
+  /**
+   * Sleeps until the end of the given tick.
+   *
+   * @return {@code false} if interrupted
+   */
+  private boolean waitForTick(long tick) {
+    long deadline = tickNanos * (tick + 1);
+    long sleepNanos;
+    while ((sleepNanos = deadline - (System.nanoTime() - startTime)) > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(sleepNanos);
+      } catch (InterruptedException e) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void removeCancelledTimeouts() {
+    Timeout timeout;
+    while ((timeout = cancelledTimeouts.poll()) != null) {
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+      }
+    }
+  }
+
+  private void transferNewTimeouts(long tick) {
+    Timeout timeout;
+    while ((timeout = newTimeouts.poll()) != null) {
+      if (timeout.state != Timeout.STATE_INIT) {
+        continue;
+      }
+      long deadlineTick = timeout.deadline / tickNanos;
+      timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+
+      // Timeouts that should already have expired are put into the current bucket
+      long effectiveTick = Math.max(deadlineTick, tick);
+      wheel[(int) (effectiveTick & mask)].add(timeout);
+    }
+  }
+
+  private void expire(Timeout timeout) {
+    pendingTimeouts.decrementAndGet();
+    expiredTimeouts.increment();
+    workers.execute(timeout);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    stopped = true;
+    if (ticker != null) {
+      ticker.interrupt();
+    }
+    workers.shutdownNow();
+  }
+
+  /**
+   * Cumulative timer metrics. Averages over an interval can be calculated from the difference of two snapshots.
+   */
+  @Data
+  public static class Metrics {
+
+    private final long ticks;
+    private final long expiredTimeouts;
+    /** Sum of the delays between the deadline of each timeout and the moment its task started running. */
+    private final long lagNanos;
+    private final int pendingTimeouts;
+  }
+
+  public static final class Timeout implements Runnable {
+
+    private static final int STATE_INIT = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED = 2;
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private final HashedWheelTimer timer;
+    private final Runnable task;
+    private final long deadline;
+    private volatile int state;
+    private long remainingRounds;
+
+    // Only accessed by the ticker thread
+    private Timeout next;
+    private Timeout prev;
+    private Bucket bucket;
+
+    private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+      this.timer = timer;
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Cancels this timeout, unless it already expired.
+     *
+     * @return {@code true} if the timeout has been cancelled by this call
+     */
+    public boolean cancel() {
+      if (!STATE_UPDATER.compareAndSet(this, STATE_INIT, STATE_CANCELLED)) {
+        return false;
+      }
+      timer.pendingTimeouts.decrementAndGet();
+      timer.cancelledTimeouts.add(this);
+      return true;
+    }
+
+    @Override
+    public void run() {
+      timer.lagNanos.add(System.nanoTime() - timer.startTime - deadline);
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        log.warn("Scheduled task failed", e);
+      }
+    }
+  }
+
+  /**
+   * A doubly-linked list of timeouts, only ever accessed by the ticker thread.
+   */
+  private static final class Bucket {
+
+    private Timeout head;
+    private Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    void expireTimeouts(HashedWheelTimer timer) {
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.remainingRounds <= 0) {
+          remove(timeout);
+          if (Timeout.STATE_UPDATER.compareAndSet(timeout, Timeout.STATE_INIT, Timeout.STATE_EXPIRED)) {
+            timer.expire(timeout);
+          }
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+
+    void remove(Timeout timeout) {
+      if (timeout.bucket != this) {
+        return;
+      }
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      }
+      if (timeout == head) {
+        head = timeout.next;
+      }
+      if (timeout == tail) {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.faforever.loadtest.server.client;
+
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pings the server on behalf of all logged in clients every {@link LoadTestProperties#getHeartbeatIntervalMillis()}.
+ * The interval is divided into slots of at least {@link #MIN_SLOT_MILLIS}, or a single slot if it's shorter, and
+ * clients are assigned to them by user ID, so consecutive users ping one slot apart and pings are a steady background
+ * load instead of a burst per interval.
+ * <p>
+ * A single task on the {@link HashedWheelTimer} visits one slot after another and hands the pings of its clients to
+ * the timer's workers. Its deadlines are computed from the start, so slots don't drift apart from the interval.
+ */
+@Component
+public class HeartbeatScheduler {
+
+  static final long MIN_SLOT_MILLIS = 100;
+
+  private final HashedWheelTimer timer;
+  private final List<Set<ClientSimulator>> slots;
+  /** The interval divided by the number of slots, so that the slots add up to exactly the interval. */
+  private final long slotNanos;
+  private final AtomicBoolean started;
+  private final LongAdder missedPongs;
+  private long startNanos;
+  /** Number of slots visited so far. Only accessed by the ticking task. */
+  private long ticks;
+  private volatile boolean stopped;
+
+  public HeartbeatScheduler(LoadTestProperties properties, HashedWheelTimer timer) {
+    this.timer = timer;
+    long intervalMillis = properties.getHeartbeatIntervalMillis();
+    Assert.isTrue(intervalMillis >= 0, "Heartbeat interval must not be negative");
+    int numberOfSlots = intervalMillis == 0 ? 0 : (int) Math.max(intervalMillis / MIN_SLOT_MILLIS, 1);
+    slotNanos = numberOfSlots == 0 ? 0 : TimeUnit.MILLISECONDS.toNanos(intervalMillis) / numberOfSlots;
+    slots = new ArrayList<>(numberOfSlots);
+    for (int i = 0; i < numberOfSlots; i++) {
+      slots.add(ConcurrentHashMap.newKeySet());
+    }
+    started = new AtomicBoolean();
+    missedPongs = new LongAdder();
+  }
+
+  /** Makes the client ping in its slot from now on, unless heartbeats are disabled. */
+  public void register(ClientSimulator client) {
+    if (slots.isEmpty()) {
+      return;
+    }
+    slots.get(slotOf(client)).add(client);
+    if (started.compareAndSet(false, true)) {
+      startNanos = System.nanoTime();
+      timer.schedule(this::tick, slotNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  public void unregister(ClientSimulator client) {
+    if (!slots.isEmpty()) {
+      slots.get(slotOf(client)).remove(client);
+    }
+  }
+
+  private int slotOf(ClientSimulator client) {
+    return Math.floorMod(client.getId(), slots.size());
+  }
+
+  private void tick() {
+    if (stopped) {
+      return;
+    }
+    for (ClientSimulator client : slots.get((int) (ticks % slots.size()))) {
+      timer.execute(client::sendPing);
+    }
+    ticks++;
+    long delayNanos = startNanos + (ticks + 1) * slotNanos - System.nanoTime();
+    timer.schedule(this::tick, Math.max(delayNanos, 0), TimeUnit.NANOSECONDS);
+  }
+
+  /** Counts a ping that hasn't been answered by the time the next one is due. */
+  void recordMissedPong() {
+    missedPongs.increment();
+  }
+
+  /** Returns the number of missed pongs since the last reset. */
+  public long getMissedPongs() {
+    return missedPongs.sum();
+  }
+
+  public void reset() {
+    missedPongs.reset();
+  }
+
+  @PreDestroy
+  public void stop() {
+    stopped = true;
+  }
+}
@@ -0,0 +1,8 @@
+package com.faforever.loadtest.server.client;
+
+public enum IoEngine {
+  /** One blocking socket and one reader thread per client. */
+  BLOCKING,
+  /** All client channels are multiplexed by a small, fixed pool of selector threads. */
+  NIO
+}
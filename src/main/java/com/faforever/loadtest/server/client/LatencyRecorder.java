@@ -0,0 +1,56 @@
+package com.faforever.loadtest.server.client;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latencies of all {@link Exchange}s of all clients in microseconds. Recording is wait-free and doesn't
+ * allocate since the histograms have a fixed range; latencies beyond that range are recorded as the maximum.
+ */
+@Component
+public class LatencyRecorder {
+
+  private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final Map<Exchange, Recorder> recorders;
+  private final Map<Exchange, Histogram> recycledHistograms;
+
+  public LatencyRecorder() {
+    recorders = new EnumMap<>(Exchange.class);
+    recycledHistograms = new EnumMap<>(Exchange.class);
+    for (Exchange exchange : Exchange.values()) {
+      recorders.put(exchange, new Recorder(1, HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+    }
+  }
+
+  /**
+   * Records the latency of an exchange that has been started at the specified {@link System#nanoTime()}.
+   */
+  public void record(Exchange exchange, long startNanos) {
+    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    recorders.get(exchange).recordValue(Math.max(1, Math.min(micros, HIGHEST_TRACKABLE_MICROS)));
+  }
+
+  /**
+   * Returns the latencies recorded since the previous call. The returned histograms are reused by the next call, so
+   * they must not be retained. Not thread-safe.
+   */
+  public Map<Exchange, Histogram> getIntervalHistograms() {
+    for (Map.Entry<Exchange, Recorder> entry : recorders.entrySet()) {
+      Histogram recycled = recycledHistograms.get(entry.getKey());
+      recycledHistograms.put(entry.getKey(), entry.getValue().getIntervalHistogram(recycled));
+    }
+    return recycledHistograms;
+  }
+
+  /** Discards all latencies recorded so far. */
+  public void reset() {
+    recorders.values().forEach(Recorder::reset);
+  }
+}
@@ -0,0 +1,14 @@
+package com.faforever.loadtest.server.client;
+
+public enum LoadModel {
+  /**
+   * A fixed population of clients that each wait for the server's response before their next action, so the load
+   * drops when the server slows down.
+   */
+  CLOSED,
+  /**
+   * Sessions and game host requests arrive at a configured rate, regardless of how fast the server responds.
+   * Latencies are measured from the time a request was supposed to be sent.
+   */
+  OPEN
+}
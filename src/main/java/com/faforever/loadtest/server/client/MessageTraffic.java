@@ -0,0 +1,69 @@
+package com.faforever.loadtest.server.client;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Messages and bytes of one command in one direction: totals, and rates per second if taken from statistics.
+ */
+@Data
+public class MessageTraffic {
+
+  /** Bytes of a frame besides the string: the frame size and the string size. */
+  public static final int FRAME_HEADER_SIZE = 8;
+
+  private Direction direction;
+  private String command;
+  private long messages;
+  /** Bytes of the UTF-16 strings. */
+  private long payloadBytes;
+  private float messagesRate;
+  private float payloadBytesRate;
+
+  /** Returns the bytes on the wire, i.e. including the frame headers. */
+  @JsonIgnore
+  public long getWireBytes() {
+    return payloadBytes + messages * FRAME_HEADER_SIZE;
+  }
+
+  @JsonIgnore
+  public float getWireBytesRate() {
+    return payloadBytesRate + messagesRate * FRAME_HEADER_SIZE;
+  }
+
+  /** Returns a copy of the totals, without rates. */
+  public MessageTraffic copyTotals() {
+    return new MessageTraffic()
+        .setDirection(direction)
+        .setCommand(command)
+        .setMessages(messages)
+        .setPayloadBytes(payloadBytes);
+  }
+
+  /**
+   * Sets the rates of {@code totals} from their differences to {@code previousTotals}, taken {@code millis} before.
+   * Commands missing from the previous totals are counted from zero.
+   */
+  public static void computeRates(List<MessageTraffic> totals, List<MessageTraffic> previousTotals, long millis) {
+    Map<String, MessageTraffic> previousByKey = new HashMap<>();
+    for (MessageTraffic previous : previousTotals) {
+      previousByKey.put(previous.getDirection() + " " + previous.getCommand(), previous);
+    }
+    float seconds = Math.max(millis, 1) / 1000f;
+    for (MessageTraffic traffic : totals) {
+      MessageTraffic previous = previousByKey.get(traffic.getDirection() + " " + traffic.getCommand());
+      long previousMessages = previous != null ? previous.getMessages() : 0;
+      long previousPayloadBytes = previous != null ? previous.getPayloadBytes() : 0;
+      traffic.setMessagesRate(Math.max(0, traffic.getMessages() - previousMessages) / seconds);
+      traffic.setPayloadBytesRate(Math.max(0, traffic.getPayloadBytes() - previousPayloadBytes) / seconds);
+    }
+  }
+
+  public enum Direction {
+    INBOUND, OUTBOUND
+  }
+}
@@ -0,0 +1,110 @@
+package com.faforever.loadtest.server.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Writes to a non-blocking {@link SocketChannel} that is served by a {@link NioEventLoop}, as the sink of a
+ * {@link FrameEncoder}. Bytes are written directly from the calling thread as long as the socket accepts them;
+ * whatever can't be written immediately is copied into a queue and written by the event loop once the channel becomes
+ * writable again, with one gathering write for as many queued buffers as possible.
+ */
+public class NioChannelWriter {
+
+  /** Upper bound of the buffers written by one gathering write, like the {@code IOV_MAX} of common systems. */
+  private static final int MAX_GATHERED_WRITES = 64;
+
+  private final SocketChannel channel;
+  private final NioEventLoop eventLoop;
+  private final TrafficCounter trafficCounter;
+  private final Queue<ByteBuffer> pendingWrites;
+  /** The queued buffers of a gathering write. Guarded by {@link #pendingWrites}. */
+  private final ByteBuffer[] gatheredWrites;
+  /** Only accessed on the event loop. */
+  private SelectionKey key;
+
+  /**
+   * @param trafficCounter counts the socket writes, or {@code null} to not count them
+   */
+  public NioChannelWriter(SocketChannel channel, NioEventLoop eventLoop, TrafficCounter trafficCounter) {
+    this.channel = channel;
+    this.eventLoop = eventLoop;
+    this.trafficCounter = trafficCounter;
+    this.pendingWrites = new ArrayDeque<>();
+    this.gatheredWrites = new ByteBuffer[MAX_GATHERED_WRITES];
+  }
+
+  /** Called by the event loop once the channel has been registered. */
+  public void setKey(SelectionKey key) {
+    this.key = key;
+  }
+
+  /**
+   * Only if the channel doesn't take all bytes, the remainder is copied since the encoder's buffer is going to be
+   * reused.
+   */
+  public void write(ByteBuffer buffer) throws IOException {
+    synchronized (pendingWrites) {
+      if (pendingWrites.isEmpty()) {
+        recordSocketWrite();
+        channel.write(buffer);
+        if (!buffer.hasRemaining()) {
+          return;
+        }
+        if (eventLoop.inEventLoop()) {
+          setInterestedInWrite(true);
+        } else {
+          eventLoop.execute(() -> setInterestedInWrite(true));
+        }
+      }
+      ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+      copy.put(buffer).flip();
+      pendingWrites.add(copy);
+    }
+  }
+
+  /** Called by the event loop. */
+  public void onWritable() throws IOException {
+    synchronized (pendingWrites) {
+      while (!pendingWrites.isEmpty()) {
+        int count = 0;
+        for (ByteBuffer buffer : pendingWrites) {
+          gatheredWrites[count++] = buffer;
+          if (count == gatheredWrites.length) {
+            break;
+          }
+        }
+        recordSocketWrite();
+        channel.write(gatheredWrites, 0, count);
+        boolean complete = !gatheredWrites[count - 1].hasRemaining();
+        Arrays.fill(gatheredWrites, 0, count, null);
+        while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining()) {
+          pendingWrites.remove();
+        }
+        if (!complete) {
+          // The socket's send buffer is full
+          return;
+        }
+      }
+      setInterestedInWrite(false);
+    }
+  }
+
+  private void recordSocketWrite() {
+    if (trafficCounter != null) {
+      trafficCounter.recordSocketWrite();
+    }
+  }
+
+  private void setInterestedInWrite(boolean interested) {
+    if (key == null || !key.isValid()) {
+      return;
+    }
+    key.interestOps(interested ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+  }
+}
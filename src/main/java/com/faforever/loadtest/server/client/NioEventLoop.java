@@ -0,0 +1,128 @@
+package com.faforever.loadtest.server.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A selector thread serving any number of channels, like those of {@link NioServerConnection}s or of the mock server.
+ * All selector and key operations are executed on this thread; other threads submit them as tasks. Every key is
+ * attached a {@link Handler} that is called when its channel is ready.
+ */
+@Slf4j
+public class NioEventLoop implements Runnable {
+
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private final Selector selector;
+  private final Queue<Runnable> tasks;
+  /** Shared by all connections of this loop since reads only ever happen on the loop thread. */
+  private final ByteBuffer readBuffer;
+  private final CharBufferPool charBufferPool;
+  private final Thread thread;
+  private volatile boolean stopped;
+
+  public NioEventLoop(String name) throws IOException {
+    this.selector = Selector.open();
+    this.tasks = new ConcurrentLinkedQueue<>();
+    this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    this.charBufferPool = new CharBufferPool();
+    this.thread = new Thread(this, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void execute(Runnable task) {
+    tasks.add(task);
+    selector.wakeup();
+  }
+
+  /** Returns whether the calling thread is this loop's, which may operate on the selector and keys directly. */
+  public boolean inEventLoop() {
+    return Thread.currentThread() == thread;
+  }
+
+  public Selector getSelector() {
+    return selector;
+  }
+
+  public ByteBuffer getReadBuffer() {
+    return readBuffer;
+  }
+
+  public CharBufferPool getCharBufferPool() {
+    return charBufferPool;
+  }
+
+  @Override
+  public void run() {
+    log.debug("Event loop started");
+    try {
+      while (!stopped) {
+        selector.select();
+        runTasks();
+        processSelectedKeys();
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      if (!stopped) {
+        log.warn("Event loop failed", e);
+      }
+    }
+    log.debug("Event loop stopped");
+  }
+
+  private void runTasks() {
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        log.warn("Event loop task failed", e);
+      }
+    }
+  }
+
+  private void processSelectedKeys() {
+    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+    while (iterator.hasNext()) {
+      SelectionKey key = iterator.next();
+      iterator.remove();
+
+      Handler handler = (Handler) key.attachment();
+      try {
+        handler.onReady(key);
+      } catch (IOException e) {
+        handler.onFailure(e);
+      } catch (RuntimeException e) {
+        log.warn("Unhandled exception while processing channel", e);
+        handler.onFailure(new IOException(e));
+      }
+    }
+  }
+
+  public void stop() {
+    stopped = true;
+    try {
+      selector.close();
+    } catch (IOException e) {
+      log.warn("Selector could not be closed", e);
+    }
+  }
+
+  /** The attachment of a key of the loop's selector. Only called on the loop thread. */
+  public interface Handler {
+
+    /** Called when the key's channel is ready for any of the key's interest operations. */
+    void onReady(SelectionKey key) throws IOException;
+
+    /** Called when the channel failed, including exceptions thrown by {@link #onReady(SelectionKey)}. */
+    void onFailure(IOException e);
+  }
+}
@@ -0,0 +1,152 @@
+package com.faforever.loadtest.server.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A connection using a non-blocking {@link SocketChannel} that is served by a shared {@link NioEventLoop}.
+ * Messages are written by a {@link NioChannelWriter}, i.e. directly from the calling thread as long as the socket
+ * accepts them.
+ */
+@Slf4j
+class NioServerConnection implements ServerConnection, NioEventLoop.Handler {
+
+  private final SocketChannel channel;
+  private final NioEventLoop eventLoop;
+  private final Listener listener;
+  private final FrameEncoder encoder;
+  private final FrameDecoder decoder;
+  private final Consumer<CharBuffer> messageConsumer;
+  private final NioChannelWriter writer;
+  private final boolean flushEachMessage;
+  private final AtomicBoolean closed;
+
+  NioServerConnection(FafLegacyTcpClient tcpClient, SocketChannel channel, NioEventLoop eventLoop, int bufferSize, FlushMode flushMode, TrafficCounter trafficCounter, Listener listener) throws IOException {
+    this.channel = channel;
+    this.eventLoop = eventLoop;
+    this.listener = listener;
+    this.writer = new NioChannelWriter(channel, eventLoop, trafficCounter);
+    this.encoder = tcpClient.newEncoder(bufferSize, writer::write, trafficCounter);
+    this.decoder = tcpClient.newDecoder(eventLoop.getCharBufferPool(), trafficCounter);
+    this.messageConsumer = listener::onMessage;
+    this.flushEachMessage = flushMode == FlushMode.PER_MESSAGE;
+    this.closed = new AtomicBoolean();
+
+    channel.configureBlocking(false);
+  }
+
+  @Override
+  public void start() {
+    eventLoop.execute(this::register);
+  }
+
+  private void register() {
+    try {
+      writer.setKey(channel.register(eventLoop.getSelector(), SelectionKey.OP_READ, this));
+    } catch (ClosedChannelException e) {
+      onFailure(e);
+    }
+  }
+
+  @Override
+  public void write(CharSequence message) throws IOException {
+    checkOpen();
+    synchronized (encoder) {
+      encoder.encode(message);
+      if (flushEachMessage) {
+        encoder.flush();
+      }
+    }
+  }
+
+  @Override
+  public void write(EncodedFrame frame) throws IOException {
+    checkOpen();
+    synchronized (encoder) {
+      encoder.encode(frame);
+      if (flushEachMessage) {
+        encoder.flush();
+      }
+    }
+  }
+
+  @Override
+  public void write(FrameTemplate template, int[] values) throws IOException {
+    checkOpen();
+    synchronized (encoder) {
+      template.encode(encoder, values);
+      if (flushEachMessage) {
+        encoder.flush();
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    checkOpen();
+    synchronized (encoder) {
+      encoder.flush();
+    }
+  }
+
+  private void checkOpen() throws ClosedChannelException {
+    if (closed.get()) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  @Override
+  public void onReady(SelectionKey key) throws IOException {
+    if (key.isValid() && key.isReadable()) {
+      onReadable();
+    }
+    if (key.isValid() && key.isWritable()) {
+      writer.onWritable();
+    }
+  }
+
+  private void onReadable() throws IOException {
+    ByteBuffer readBuffer = eventLoop.getReadBuffer();
+    readBuffer.clear();
+    int count = channel.read(readBuffer);
+    if (count < 0) {
+      throw new EOFException();
+    }
+    readBuffer.flip();
+    decoder.decode(readBuffer, messageConsumer);
+    synchronized (encoder) {
+      encoder.flush();
+    }
+  }
+
+  @Override
+  public void onFailure(IOException e) {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    closeChannel();
+    listener.onConnectionLost(e);
+  }
+
+  @Override
+  public void close() {
+    eventLoop.execute(() -> onFailure(new ClosedChannelException()));
+  }
+
+  private void closeChannel() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.warn("Channel could not be closed", e);
+    }
+  }
+}
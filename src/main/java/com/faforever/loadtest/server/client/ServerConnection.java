@@ -0,0 +1,53 @@
+package com.faforever.loadtest.server.client;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+/**
+ * A connection of a simulated client to the server, independent of the underlying I/O engine. With
+ * {@link FlushMode#BATCHED}, written messages are buffered until {@link #flush()} or until the connection's buffer is
+ * full; messages written while handling received ones are flushed once all messages of a read have been handled.
+ */
+public interface ServerConnection {
+
+  /**
+   * Starts reading messages. Called once the caller holds the connection, so the listener can't be notified of a
+   * message before that.
+   */
+  void start();
+
+  /**
+   * Writes the message, which is encoded before this method returns, so it may be a buffer that is reused afterwards.
+   */
+  void write(CharSequence message) throws IOException;
+
+  void write(EncodedFrame frame) throws IOException;
+
+  /**
+   * Writes the template with its placeholders replaced by the given values. The values are encoded before this method
+   * returns, so the array may be reused.
+   *
+   * @see FrameTemplate#encode(FrameEncoder, int[])
+   */
+  void write(FrameTemplate template, int[] values) throws IOException;
+
+  /**
+   * Writes the buffered messages to the socket. Does nothing if all messages have been written already.
+   */
+  void flush() throws IOException;
+
+  /**
+   * Closes the connection. The listener will be notified via {@link Listener#onConnectionLost(IOException)}.
+   */
+  void close();
+
+  interface Listener {
+
+    /**
+     * Called for every received message. The buffer is recycled as soon as this method returns.
+     */
+    void onMessage(CharBuffer message);
+
+    void onConnectionLost(IOException e);
+  }
+}
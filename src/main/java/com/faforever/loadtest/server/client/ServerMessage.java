@@ -0,0 +1,159 @@
+package com.faforever.loadtest.server.client;
+
+import com.faforever.loadtest.server.scenario.Scenario;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.function.ToIntFunction;
+
+/**
+ * A JSON message received from the server. When read, only {@code command} and {@code target} are extracted by a
+ * streaming parser that skips everything else; the fields a transition depends on are only read if it's considered.
+ * <p>
+ * Instances are reused for subsequent messages of a connection and the body is backed by the decoder's buffer, so a
+ * message is only valid while it's being handled. The mock server reads the messages of clients the same way.
+ */
+public final class ServerMessage {
+
+  private static final String DEFAULT_TARGET = "client";
+
+  private final ObjectMapper objectMapper;
+  private CharBuffer buffer;
+  private String command;
+  private String target;
+  private int game;
+
+  public ServerMessage(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  void read(CharBuffer buffer) throws IOException {
+    read(buffer, null);
+  }
+
+  /**
+   * Reads the message like {@link #read(CharBuffer)}, but goes through all top level fields and hands those other
+   * than {@code command} and {@code target} to the given handler.
+   */
+  public void read(CharBuffer buffer, FieldHandler fieldHandler) throws IOException {
+    this.buffer = buffer;
+    this.command = null;
+    this.target = DEFAULT_TARGET;
+
+    try (JsonParser parser = createParser()) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Expected a JSON object but got: " + buffer);
+      }
+      boolean targetFound = false;
+      while (parser.nextToken() == JsonToken.FIELD_NAME && (fieldHandler != null || command == null || !targetFound)) {
+        String fieldName = parser.currentName();
+        JsonToken value = parser.nextToken();
+        if ("command".equals(fieldName) && value == JsonToken.VALUE_STRING) {
+          command = parser.getText();
+        } else if ("target".equals(fieldName) && value == JsonToken.VALUE_STRING) {
+          target = parser.getText();
+          targetFound = true;
+        } else if (fieldHandler != null) {
+          fieldHandler.onField(fieldName, value, parser);
+        }
+        parser.skipChildren();
+      }
+    }
+  }
+
+  public String getCommand() {
+    return command;
+  }
+
+  /** Returns the target of the message, {@code client} if none is specified. */
+  String getTarget() {
+    return target;
+  }
+
+  /**
+   * Returns whether the top level fields of the message meet the transition's conditions and it has a game, if the
+   * transition captures one. Only these fields are looked at and constants are compared to the parser's characters,
+   * so no values are bound or turned into strings.
+   *
+   * @param variableValues the values of variables that conditions require
+   */
+  boolean matches(Scenario.Transition transition, ToIntFunction<Scenario.Variable> variableValues) throws IOException {
+    Scenario.Condition[] conditions = transition.getConditions();
+    String gameField = transition.getGameField();
+    int unmetConditions = conditions.length;
+    boolean gameFound = gameField == null;
+
+    try (JsonParser parser = createParser()) {
+      parser.nextToken();
+      while ((unmetConditions > 0 || !gameFound) && parser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = parser.currentName();
+        JsonToken value = parser.nextToken();
+        for (Scenario.Condition condition : conditions) {
+          if (condition.getField().equals(fieldName)) {
+            if (!meets(parser, value, condition, variableValues)) {
+              return false;
+            }
+            unmetConditions--;
+          }
+        }
+        if (fieldName.equals(gameField)) {
+          if (!value.isNumeric()) {
+            return false;
+          }
+          game = parser.getIntValue();
+          gameFound = true;
+        }
+        parser.skipChildren();
+      }
+    }
+    return unmetConditions == 0 && gameFound;
+  }
+
+  /** Returns the game captured by the last transition that {@link #matches matched}. */
+  int getGame() {
+    return game;
+  }
+
+  private static boolean meets(JsonParser parser, JsonToken value, Scenario.Condition condition, ToIntFunction<Scenario.Variable> variableValues) throws IOException {
+    if (condition.getVariable() != null) {
+      return value.isNumeric() && parser.getLongValue() == variableValues.applyAsInt(condition.getVariable());
+    }
+    return value.isScalarValue() && value != JsonToken.VALUE_NULL && textEquals(parser, condition.getValue());
+  }
+
+  private static boolean textEquals(JsonParser parser, String expected) throws IOException {
+    int length = parser.getTextLength();
+    if (length != expected.length()) {
+      return false;
+    }
+    char[] text = parser.getTextCharacters();
+    int offset = parser.getTextOffset();
+    for (int i = 0; i < length; i++) {
+      if (text[offset + i] != expected.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private JsonParser createParser() throws IOException {
+    return objectMapper.getFactory().createParser(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+  }
+
+  @Override
+  public String toString() {
+    return String.valueOf(buffer);
+  }
+
+  public interface FieldHandler {
+
+    /**
+     * Called with the parser at the field's value. The handler may read the value, but has to leave the parser at its
+     * first or its last token; arrays and objects left at their first token are skipped.
+     */
+    void onField(String name, JsonToken value, JsonParser parser) throws IOException;
+  }
+}
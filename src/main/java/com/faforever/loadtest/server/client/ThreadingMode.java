@@ -0,0 +1,64 @@
+package com.faforever.loadtest.server.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kind of threads that run the reader loops and scheduled actions of simulated clients.
+ */
+public enum ThreadingMode {
+  /** Daemon platform threads; scheduled actions share a fixed pool. */
+  PLATFORM {
+    @Override
+    public Thread newThread(String name, Runnable runnable) {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    }
+
+    @Override
+    public ExecutorService newExecutor(String namePrefix, int platformThreads) {
+      AtomicInteger threadNumber = new AtomicInteger();
+      return Executors.newFixedThreadPool(platformThreads, runnable -> newThread(namePrefix + threadNumber.getAndIncrement(), runnable));
+    }
+
+    @Override
+    public ExecutorService newCachedExecutor(String namePrefix) {
+      AtomicInteger threadNumber = new AtomicInteger();
+      return Executors.newCachedThreadPool(runnable -> newThread(namePrefix + threadNumber.getAndIncrement(), runnable));
+    }
+  },
+  /** One virtual thread per reader loop and per scheduled action. */
+  VIRTUAL {
+    @Override
+    public Thread newThread(String name, Runnable runnable) {
+      return Thread.ofVirtual().name(name).unstarted(runnable);
+    }
+
+    @Override
+    public ExecutorService newExecutor(String namePrefix, int platformThreads) {
+      return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+    }
+
+    @Override
+    public ExecutorService newCachedExecutor(String namePrefix) {
+      return newExecutor(namePrefix, 0);
+    }
+  };
+
+  /**
+   * Creates a new, unstarted thread.
+   */
+  public abstract Thread newThread(String name, Runnable runnable);
+
+  /**
+   * Creates an executor for short-lived tasks. {@code platformThreads} is ignored by modes that don't pool threads.
+   */
+  public abstract ExecutorService newExecutor(String namePrefix, int platformThreads);
+
+  /**
+   * Creates an executor for blocking tasks that starts threads as needed. Idle platform threads end after a minute.
+   */
+  public abstract ExecutorService newCachedExecutor(String namePrefix);
+}
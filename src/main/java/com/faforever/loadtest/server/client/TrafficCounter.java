@@ -0,0 +1,259 @@
+package com.faforever.loadtest.server.client;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the messages and payload bytes per direction and command of all client connections. Frames are counted by
+ * the encoders and decoders, so every frame on the wire is covered, including pings and messages that aren't handled.
+ * The connections also count their socket writes, which shows how many messages are sent per system call.
+ * <p>
+ * Commands are looked up by the chars of the message, so counting a known command doesn't allocate, and the counters
+ * are striped, so connections don't contend.
+ */
+@Component
+public class TrafficCounter {
+
+  /** Command of frames that aren't JSON objects with a command, e.g. long plain text messages. */
+  static final String UNKNOWN_COMMAND = "?";
+  /** Plain text frames up to this length, like {@code PING}, are counted under their text. */
+  private static final int MAX_PLAIN_COMMAND_LENGTH = 16;
+  private static final String COMMAND_KEY = "\"command\"";
+
+  /** Indexed by direction ordinal. */
+  private final CommandTable[] tables;
+  private final LongAdder socketWrites;
+
+  public TrafficCounter() {
+    tables = new CommandTable[MessageTraffic.Direction.values().length];
+    for (int i = 0; i < tables.length; i++) {
+      tables[i] = new CommandTable();
+    }
+    socketWrites = new LongAdder();
+  }
+
+  /**
+   * Counts a message whose command is already known.
+   */
+  public void record(MessageTraffic.Direction direction, String command, int payloadBytes) {
+    tables[direction.ordinal()].get(command, 0, command.length()).add(payloadBytes);
+  }
+
+  /**
+   * Counts a message under the command it contains, see {@link #commandOf(CharSequence)}.
+   */
+  public void record(MessageTraffic.Direction direction, CharSequence message) {
+    long range = commandRange(message);
+    Counters counters = range < 0
+        ? tables[direction.ordinal()].get(UNKNOWN_COMMAND, 0, UNKNOWN_COMMAND.length())
+        : tables[direction.ordinal()].get(message, (int) (range >>> 32), (int) range);
+    counters.add(message.length() * 2);
+  }
+
+  /** Counts a write to a socket, i.e. a system call, which may contain any number of frames. */
+  public void recordSocketWrite() {
+    socketWrites.increment();
+  }
+
+  public void reset() {
+    for (CommandTable table : tables) {
+      table.clear();
+    }
+    socketWrites.reset();
+  }
+
+  /** Returns the number of socket writes since the last reset. */
+  public long getSocketWrites() {
+    return socketWrites.sum();
+  }
+
+  /**
+   * Returns the totals since the last reset, ordered by direction and command, without blocking the connections.
+   */
+  public List<MessageTraffic> snapshot() {
+    List<MessageTraffic> snapshot = new ArrayList<>();
+    for (MessageTraffic.Direction direction : MessageTraffic.Direction.values()) {
+      for (Counters counters : tables[direction.ordinal()].table) {
+        if (counters != null) {
+          snapshot.add(new MessageTraffic()
+              .setDirection(direction)
+              .setCommand(counters.command)
+              .setMessages(counters.messages.sum())
+              .setPayloadBytes(counters.payloadBytes.sum()));
+        }
+      }
+    }
+    snapshot.sort(Comparator.comparing(MessageTraffic::getDirection).thenComparing(MessageTraffic::getCommand));
+    return snapshot;
+  }
+
+  /**
+   * Returns the value of the first {@code command} field of a JSON message, without parsing it. Plain text messages
+   * that are short enough are their own command.
+   */
+  static String commandOf(CharSequence message) {
+    long range = commandRange(message);
+    if (range < 0) {
+      return UNKNOWN_COMMAND;
+    }
+    return message.subSequence((int) (range >>> 32), (int) range).toString();
+  }
+
+  /**
+   * Returns the start index of the command in the upper and its end index in the lower 32 bits, or {@code -1}.
+   */
+  private static long commandRange(CharSequence message) {
+    int length = message.length();
+    if (length == 0 || message.charAt(0) != '{') {
+      return length > 0 && length <= MAX_PLAIN_COMMAND_LENGTH ? length : -1;
+    }
+
+    int index = indexOf(message, COMMAND_KEY);
+    if (index < 0) {
+      return -1;
+    }
+    index = skipWhitespace(message, index + COMMAND_KEY.length());
+    if (index >= length || message.charAt(index) != ':') {
+      return -1;
+    }
+    index = skipWhitespace(message, index + 1);
+    if (index >= length || message.charAt(index) != '"') {
+      return -1;
+    }
+    int start = index + 1;
+    for (int end = start; end < length; end++) {
+      char c = message.charAt(end);
+      if (c == '"') {
+        return (long) start << 32 | end;
+      }
+      if (c == '\\') {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  private static int indexOf(CharSequence message, String key) {
+    int last = message.length() - key.length();
+    for (int i = 0; i <= last; i++) {
+      int j = 0;
+      while (j < key.length() && message.charAt(i + j) == key.charAt(j)) {
+        j++;
+      }
+      if (j == key.length()) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int skipWhitespace(CharSequence message, int index) {
+    while (index < message.length() && Character.isWhitespace(message.charAt(index))) {
+      index++;
+    }
+    return index;
+  }
+
+  private static int hash(CharSequence chars, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + chars.charAt(i);
+    }
+    return hash;
+  }
+
+  private static final class Counters {
+    private final String command;
+    private final int hash;
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder payloadBytes = new LongAdder();
+
+    private Counters(String command, int hash) {
+      this.command = command;
+      this.hash = hash;
+    }
+
+    private boolean matches(CharSequence chars, int start, int end, int hash) {
+      if (this.hash != hash || command.length() != end - start) {
+        return false;
+      }
+      for (int i = 0; i < command.length(); i++) {
+        if (command.charAt(i) != chars.charAt(start + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void add(int bytes) {
+      messages.increment();
+      payloadBytes.add(bytes);
+    }
+  }
+
+  /**
+   * An open addressing hash table of the counters of one direction. Lookups read the current table without locking;
+   * new commands, which only occur a few dozen times per test, copy it.
+   */
+  private static final class CommandTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile Counters[] table = new Counters[INITIAL_CAPACITY];
+    private int size;
+
+    private Counters get(CharSequence chars, int start, int end) {
+      int hash = hash(chars, start, end);
+      Counters counters = find(table, chars, start, end, hash);
+      if (counters != null) {
+        return counters;
+      }
+      synchronized (this) {
+        counters = find(table, chars, start, end, hash);
+        if (counters != null) {
+          return counters;
+        }
+        Counters[] copy = (size + 1) * 2 > table.length ? new Counters[table.length * 2] : table.clone();
+        if (copy.length != table.length) {
+          for (Counters existing : table) {
+            if (existing != null) {
+              insert(copy, existing);
+            }
+          }
+        }
+        counters = new Counters(chars.subSequence(start, end).toString(), hash);
+        insert(copy, counters);
+        size++;
+        table = copy;
+        return counters;
+      }
+    }
+
+    private synchronized void clear() {
+      table = new Counters[INITIAL_CAPACITY];
+      size = 0;
+    }
+
+    private static Counters find(Counters[] table, CharSequence chars, int start, int end, int hash) {
+      int mask = table.length - 1;
+      for (int i = hash & mask; table[i] != null; i = (i + 1) & mask) {
+        if (table[i].matches(chars, start, end, hash)) {
+          return table[i];
+        }
+      }
+      return null;
+    }
+
+    private static void insert(Counters[] table, Counters counters) {
+      int mask = table.length - 1;
+      int i = counters.hash & mask;
+      while (table[i] != null) {
+        i = (i + 1) & mask;
+      }
+      table[i] = counters;
+    }
+  }
+}
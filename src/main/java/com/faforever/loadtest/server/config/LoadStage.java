@@ -0,0 +1,30 @@
+package com.faforever.loadtest.server.config;
+
+import lombok.Data;
+
+/**
+ * A stage of a load profile, which describes the number of connected clients over time.
+ */
+@Data
+public class LoadStage {
+
+  /** Name shown in statistics and reports, defaults to the stage's index and shape. */
+  private String name;
+  private Shape shape = Shape.RAMP;
+  private int durationSeconds;
+  /** Number of clients the stage ramps, steps, spikes or swings to. */
+  private int clients;
+  /** Period of a {@link Shape#SINE} stage. */
+  private int periodSeconds = 60;
+
+  public enum Shape {
+    /** Changes linearly from the previous level to {@link #clients} over the stage's duration. */
+    RAMP,
+    /** Jumps to {@link #clients} and holds that level. */
+    STEP,
+    /** Jumps to {@link #clients} for the stage's duration, then returns to the previous level. */
+    SPIKE,
+    /** Swings between the previous level and {@link #clients}, then returns to the previous level. */
+    SINE
+  }
+}
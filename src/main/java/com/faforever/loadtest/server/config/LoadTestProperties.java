@@ -1,9 +1,18 @@
 package com.faforever.loadtest.server.config;
 
+import com.faforever.loadtest.server.client.ArrivalDistribution;
+import com.faforever.loadtest.server.client.FlushMode;
+import com.faforever.loadtest.server.client.IoEngine;
+import com.faforever.loadtest.server.client.LoadModel;
 import com.faforever.loadtest.server.client.ThinkBehavior;
+import com.faforever.loadtest.server.client.ThreadingMode;
+import com.faforever.loadtest.server.distributed.Role;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @ConfigurationProperties(prefix = "loadtest", ignoreUnknownFields = false)
 public class LoadTestProperties {
@@ -11,17 +20,98 @@ public class LoadTestProperties {
   private String serverAddress;
   private int serverPort;
   private ThinkBehavior thinkBehavior = ThinkBehavior.HUMAN;
+  private IoEngine ioEngine = IoEngine.BLOCKING;
+  private ThreadingMode threadingMode = ThreadingMode.PLATFORM;
+  /** Number of selector threads shared by all clients if {@link IoEngine#NIO} is used. */
+  private int selectorThreads = Runtime.getRuntime().availableProcessors();
+  /** Size of the buffer each connection encodes messages into, and reads into if {@link IoEngine#BLOCKING} is used. */
+  private int connectionBufferSize = 8192;
+  /** Whether messages are written to the socket one by one or once per burst of a client. */
+  private FlushMode flushMode = FlushMode.PER_MESSAGE;
+  /**
+   * Interval in which each logged in client pings the server, or {@code 0} to not ping. The clients' pings are spread
+   * evenly over the interval.
+   */
+  private long heartbeatIntervalMillis = 45_000;
+  /** Pings in a row without pong after which a client drops its connection, or {@code 0} to only count them. */
+  private int heartbeatMaxMissedPongs;
+  /** Precision of the timer that schedules all client actions. */
+  private long timerTickMillis = 10;
+  /** Number of buckets of the timer wheel, rounded up to the next power of two. */
+  private int timerWheelSize = 512;
+  /** Number of threads that execute scheduled client actions if {@link ThreadingMode#PLATFORM} is used. */
+  private int timerWorkerThreads = Runtime.getRuntime().availableProcessors();
+
+  /** Runs the test without user interface for {@link #testDurationSeconds}, then writes a report and exits. */
+  private boolean headless;
+  /** Interval in which a summary is printed and a row is written to the CSV report if {@link #headless}. */
+  private int reportIntervalSeconds = 10;
+  /** Path of the reports written if {@link #headless}, without file extension. */
+  private String reportPath = "loadtest-report";
+
+  /** Directory each run's statistics are recorded to, or empty to not record them. */
+  private String recordingDirectory = "recordings";
+
+  /** Starts an embedded mock server on {@link #serverPort}, to measure how much load this application can generate. */
+  private boolean mockServer;
+  /** Number of selector threads of the mock server. */
+  private int mockServerThreads = 2;
+
+  /** Serves the statistics for Prometheus on {@code /metrics} at {@link #metricsPort}. */
+  private boolean metricsEnabled;
+  /** Port metrics are served on if {@link #metricsEnabled}, or {@code 0} to let the system choose one. */
+  private int metricsPort = 9464;
+  private Role role = Role.STANDALONE;
+  /** Address agents connect to. */
+  private String coordinatorAddress = "localhost";
+  /** Port the coordinator listens on for agents. */
+  private int coordinatorPort = 8101;
+  /** Number of user IDs reserved for each agent; the n-th agent to connect uses the IDs from {@code n * agentUserIds}. */
+  private int agentUserIds = 100_000;
+
+  /** Port real clients connect to if {@link Role#TRACE_PROXY} is used. */
+  private int traceProxyPort = 8102;
+  /** Directory the sessions recorded by {@link Role#TRACE_PROXY} are written to, one trace per run. */
+  private String traceDirectory = "traces";
+  /** Path of the trace replayed if {@link Role#REPLAY} is used. */
+  private String replayTrace;
+  /** Factor by which a trace is replayed faster than it has been captured, e.g. {@code 10} to replay it in a tenth. */
+  private double replaySpeed = 1;
+
+  private LoadModel loadModel = LoadModel.CLOSED;
+  private ArrivalDistribution arrivalDistribution = ArrivalDistribution.POISSON;
+  /** New sessions per second if {@link LoadModel#OPEN} is used, until {@link #numberOfClients} are connected. */
+  private double sessionArrivalRate = 10;
+  /** Game host requests per second, across all idle clients, if {@link LoadModel#OPEN} is used. */
+  private double gameHostArrivalRate = 1;
 
   private int numberOfClients = 1000;
+  /**
+   * Seed every random decision of the clients and arrivals is derived from, or {@code null} for a new one each run,
+   * which is logged. Runs with the same seed and clients draw the same think times, chances and backoffs.
+   */
+  private Long randomSeed;
+  /** Clients connected per second at most, or {@code 0} to connect them as fast as possible. */
+  private double connectRate = 200;
+  /** Connects of all clients that may be in flight at once, or {@code 0} for no limit. */
+  private int maxConcurrentConnects = 256;
+  /**
+   * Upper bound of the delay before the first reconnect after a failed or lost connection. It doubles with every
+   * failed attempt up to {@link #reconnectMaxDelayMillis}; the actual delay is chosen at random below it.
+   */
+  private long reconnectInitialDelayMillis = 1000;
+  private long reconnectMaxDelayMillis = 60_000;
+  /** Failed connects in a row after which a client gives up, or {@code 0} to reconnect forever. */
+  private int reconnectMaxAttempts;
+  /**
+   * Stages the number of clients follows one after another. If empty, {@link #numberOfClients} is used throughout.
+   * After the last stage, its final level is held.
+   */
+  private List<LoadStage> stages = new ArrayList<>();
   private int testDurationSeconds = 360;
-  private long lobbyMinTime = 5_000;
-  private long lobbyMaxTime = 15 * 60_000;
-  private long idleMinTime = 5_000;
-  private long idleMaxTime = 60 * 60_000;
-  private long gameMinTime = 2 * 60_000;
-  private long gameMaxTime = 60 * 60_000;
-  private long scoreScreenMinTime = 3_000;
-  private long scoreScreenMaxTime = 30 * 60_000;
-  private long gameStartupMinTime = 1_000;
-  private long gameStartupMaxTime = 15_000;
+  /**
+   * What the clients do once logged in: the name of a scenario in {@code scenarios/} on the classpath, or the path of a
+   * scenario file.
+   */
+  private String scenario = "default";
 }
@@ -1,16 +1,23 @@
 package com.faforever.loadtest.server.config;
 
+import com.faforever.loadtest.server.scenario.Scenario;
+import com.faforever.loadtest.server.scenario.ScenarioLoader;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.io.IOException;
 
 @Configuration
-@EnableScheduling
 public class ServerLoadtestConfig {
 
   @Bean
   public ObjectMapper objectMapper() {
     return new ObjectMapper();
   }
+
+  @Bean
+  public Scenario scenario(LoadTestProperties properties, ObjectMapper objectMapper) throws IOException {
+    return ScenarioLoader.load(properties.getScenario(), objectMapper);
+  }
 }
@@ -0,0 +1,87 @@
+package com.faforever.loadtest.server.distributed;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import com.faforever.loadtest.server.runner.Statistics;
+import lombok.Data;
+import org.HdrHistogram.Histogram;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+/**
+ * The statistics an agent reports to the coordinator. Latencies are sent as compressed histograms, so the coordinator
+ * can merge them into percentiles across all agents.
+ */
+@Data
+public class AgentStatistics {
+
+  private int createdGames;
+  private int sentMessages;
+  private int receivedMessages;
+  private Map<ClientSimulator.State, Integer> clientStates;
+  private float incomingMessagesRate;
+  private float outgoingMessagesRate;
+  private float timerLagMillis;
+  private float timerTasksPerTick;
+  private int pendingTimerTasks;
+  private long usedHeapBytes;
+  private long allocatedBytes;
+  private float allocatedBytesPerMessage;
+  private int pendingArrivals;
+  private List<MessageTraffic> messageTraffic;
+  private long socketWrites;
+  private float socketWritesRate;
+  private long reconnectAttempts;
+  private long connectFailures;
+  private long missedPongs;
+  /** Base64 encoded, compressed histograms of the latencies since the previous statistics. */
+  private Map<Exchange, String> latencyHistograms;
+
+  static AgentStatistics of(Statistics statistics) {
+    Map<Exchange, String> latencyHistograms = new EnumMap<>(Exchange.class);
+    statistics.getLatencyHistograms().forEach((exchange, histogram) -> latencyHistograms.put(exchange, encode(histogram)));
+
+    return new AgentStatistics()
+        .setCreatedGames(statistics.getCreatedGames())
+        .setSentMessages(statistics.getSentMessages())
+        .setReceivedMessages(statistics.getReceivedMessages())
+        .setClientStates(statistics.getClientStates())
+        .setIncomingMessagesRate(statistics.getIncomingMessagesRate())
+        .setOutgoingMessagesRate(statistics.getOutgoingMessagesRate())
+        .setTimerLagMillis(statistics.getTimerLagMillis())
+        .setTimerTasksPerTick(statistics.getTimerTasksPerTick())
+        .setPendingTimerTasks(statistics.getPendingTimerTasks())
+        .setUsedHeapBytes(statistics.getUsedHeapBytes())
+        .setAllocatedBytes(statistics.getAllocatedBytes())
+        .setAllocatedBytesPerMessage(statistics.getAllocatedBytesPerMessage())
+        .setPendingArrivals(statistics.getPendingArrivals())
+        .setMessageTraffic(statistics.getMessageTraffic())
+        .setSocketWrites(statistics.getSocketWrites())
+        .setSocketWritesRate(statistics.getSocketWritesRate())
+        .setReconnectAttempts(statistics.getReconnectAttempts())
+        .setConnectFailures(statistics.getConnectFailures())
+        .setMissedPongs(statistics.getMissedPongs())
+        .setLatencyHistograms(latencyHistograms);
+  }
+
+  private static String encode(Histogram histogram) {
+    ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+    int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+    return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+  }
+
+  static Histogram decode(String encoded) {
+    try {
+      return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(Base64.getDecoder().decode(encoded)), 0);
+    } catch (DataFormatException e) {
+      throw new IllegalArgumentException("Invalid histogram", e);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package com.faforever.loadtest.server.distributed;
+
+import com.faforever.loadtest.server.client.CharBufferPool;
+import com.faforever.loadtest.server.client.FafLegacyTcpClient;
+import com.faforever.loadtest.server.client.FrameDecoder;
+import com.faforever.loadtest.server.client.FrameEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The connection between a coordinator and an agent. Control messages are JSON objects with a {@code command}, framed
+ * like the messages of the lobby protocol. They're read by a dedicated thread and written by another one, so that
+ * sending never blocks on a peer that doesn't read.
+ */
+@Slf4j
+class ControlConnection {
+
+  private static final int BUFFER_SIZE = 8192;
+  /** How long closing waits for queued messages to be written. */
+  private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+  private final Socket socket;
+  private final ObjectMapper objectMapper;
+  private final FrameEncoder encoder;
+  private final BlockingQueue<String> outgoingMessages;
+  private final Thread reader;
+  private final Thread writer;
+  private volatile boolean closed;
+
+  ControlConnection(Socket socket, FafLegacyTcpClient tcpClient, ObjectMapper objectMapper, String name, Listener listener) throws IOException {
+    this.socket = socket;
+    this.objectMapper = objectMapper;
+    this.encoder = tcpClient.newEncoder(BUFFER_SIZE, socket.getOutputStream());
+    this.outgoingMessages = new LinkedBlockingQueue<>();
+    InputStream inputStream = socket.getInputStream();
+    FrameDecoder decoder = tcpClient.newDecoder(new CharBufferPool());
+
+    socket.setTcpNoDelay(true);
+    reader = new Thread(() -> {
+      ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+      IOException cause = null;
+      try {
+        while (!closed) {
+          int count = inputStream.read(readBuffer.array());
+          if (count < 0) {
+            throw new EOFException();
+          }
+          readBuffer.limit(count).position(0);
+          decoder.decode(readBuffer, message -> {
+            if (message != null) {
+              listener.onMessage(this, parse(message));
+            }
+          });
+        }
+      } catch (IOException | UncheckedIOException e) {
+        cause = e instanceof UncheckedIOException unchecked ? unchecked.getCause() : (IOException) e;
+      }
+      close();
+      listener.onClosed(this, cause != null ? cause : new SocketException("Socket closed"));
+    }, name);
+    reader.setDaemon(true);
+    writer = new Thread(this::writeMessages, name + "-writer");
+    writer.setDaemon(true);
+  }
+
+  /**
+   * Starts reading and writing messages. Separate from the constructor so that the listener may send messages right
+   * away.
+   */
+  void start() {
+    reader.start();
+    writer.start();
+  }
+
+  /** Writes queued messages, flushing once the queue is empty, until the end of messages or a failure. */
+  private void writeMessages() {
+    try {
+      String message = outgoingMessages.take();
+      // An empty message is queued by close(), serialized ones never are
+      while (!message.isEmpty()) {
+        encoder.encode(message);
+        message = outgoingMessages.poll();
+        if (message == null) {
+          encoder.flush();
+          message = outgoingMessages.take();
+        }
+      }
+      encoder.flush();
+    } catch (IOException e) {
+      if (!closed) {
+        log.warn("Control message could not be sent", e);
+        // Makes the reader fail, which reports the connection as closed
+        close();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private JsonNode parse(CharSequence message) {
+    try {
+      return objectMapper.readTree(message.toString());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Queues a message to be written, or drops it if the connection is closed. */
+  void send(Map<String, Object> message) throws IOException {
+    if (!closed) {
+      outgoingMessages.add(objectMapper.writeValueAsString(message));
+    }
+  }
+
+  String getRemoteAddress() {
+    return socket.getRemoteSocketAddress().toString();
+  }
+
+  /**
+   * Closes the connection after writing the queued messages, unless that takes longer than
+   * {@link #CLOSE_TIMEOUT_MILLIS}.
+   */
+  void close() {
+    closed = true;
+    outgoingMessages.add("");
+    if (Thread.currentThread() != writer && writer.isAlive()) {
+      try {
+        writer.join(CLOSE_TIMEOUT_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    try {
+      socket.close();
+    } catch (IOException e) {
+      log.warn("Control connection could not be closed", e);
+    }
+  }
+
+  interface Listener {
+
+    void onMessage(ControlConnection connection, JsonNode message);
+
+    void onClosed(ControlConnection connection, IOException cause);
+  }
+}
@@ -0,0 +1,148 @@
+package com.faforever.loadtest.server.distributed;
+
+import com.faforever.loadtest.server.client.FafLegacyTcpClient;
+import com.faforever.loadtest.server.client.ThinkBehavior;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.runner.LoadTestRunner;
+import com.faforever.loadtest.server.runner.Statistics;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates load with a local {@link LoadTestRunner} as instructed by a {@link LoadTestCoordinator}, and reports its
+ * statistics back every second.
+ */
+@Service
+@ConditionalOnProperty(prefix = "loadtest", name = "role", havingValue = "agent")
+@Slf4j
+public class LoadAgent implements ControlConnection.Listener {
+
+  private static final long CONNECT_RETRY_MILLIS = 1000;
+  private static final long REPORT_INTERVAL_MILLIS = 1000;
+
+  private final LoadTestRunner loadTestRunner;
+  private final FafLegacyTcpClient tcpClient;
+  private final ObjectMapper objectMapper;
+  private final LoadTestProperties properties;
+  private final ScheduledExecutorService reporter;
+  private final CountDownLatch disconnected;
+
+  private ScheduledFuture<?> reportTask;
+
+  public LoadAgent(LoadTestRunner loadTestRunner, FafLegacyTcpClient tcpClient, ObjectMapper objectMapper, LoadTestProperties properties) {
+    this.loadTestRunner = loadTestRunner;
+    this.tcpClient = tcpClient;
+    this.objectMapper = objectMapper;
+    this.properties = properties;
+    this.reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "agent-reporter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.disconnected = new CountDownLatch(1);
+  }
+
+  /**
+   * Connects to the coordinator, retrying until it is available, and follows its instructions until it disconnects.
+   */
+  public void run() throws InterruptedException {
+    ControlConnection connection = connect();
+    try {
+      connection.send(ImmutableMap.of(
+          "command", "hello",
+          "name", ManagementFactory.getRuntimeMXBean().getName()
+      ));
+      disconnected.await();
+    } catch (IOException e) {
+      log.warn("Coordinator could not be greeted", e);
+    } finally {
+      connection.close();
+      stopLoadTest();
+    }
+  }
+
+  private ControlConnection connect() throws InterruptedException {
+    while (true) {
+      try {
+        Socket socket = new Socket(properties.getCoordinatorAddress(), properties.getCoordinatorPort());
+        ControlConnection connection = new ControlConnection(socket, tcpClient, objectMapper, "agent-control", this);
+        connection.start();
+        log.info("Connected to coordinator at {}:{}", properties.getCoordinatorAddress(), properties.getCoordinatorPort());
+        return connection;
+      } catch (IOException e) {
+        log.info("Waiting for coordinator at {}:{}", properties.getCoordinatorAddress(), properties.getCoordinatorPort());
+        Thread.sleep(CONNECT_RETRY_MILLIS);
+      }
+    }
+  }
+
+  @Override
+  public void onMessage(ControlConnection connection, JsonNode message) {
+    String command = message.path("command").asText();
+    switch (command) {
+      case "assign":
+        loadTestRunner.setUserIdOffset(message.path("first_user_id").asInt());
+        break;
+      case "target":
+        loadTestRunner.setNumberOfClients(message.path("clients").asInt());
+        break;
+      case "start":
+        startLoadTest(connection, message);
+        break;
+      case "stop":
+        stopLoadTest();
+        break;
+      default:
+        log.warn("Unknown control command: {}", message);
+    }
+  }
+
+  private synchronized void startLoadTest(ControlConnection connection, JsonNode message) {
+    if (reportTask != null) {
+      stopLoadTest();
+    }
+    loadTestRunner.setRandomSeed(message.path("random_seed").asLong());
+    loadTestRunner.start(message.path("host").asText(), message.path("port").asInt(),
+        ThinkBehavior.valueOf(message.path("think_behavior").asText()));
+    reportTask = reporter.scheduleAtFixedRate(() -> report(connection), REPORT_INTERVAL_MILLIS, REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void stopLoadTest() {
+    Optional.ofNullable(reportTask).ifPresent(task -> task.cancel(false));
+    reportTask = null;
+    loadTestRunner.stop();
+  }
+
+  private void report(ControlConnection connection) {
+    Statistics statistics = loadTestRunner.getStatistics();
+    AgentStatistics agentStatistics = AgentStatistics.of(statistics);
+    try {
+      connection.send(ImmutableMap.of(
+          "command", "statistics",
+          "statistics", agentStatistics
+      ));
+    } catch (IOException e) {
+      log.warn("Statistics could not be reported", e);
+    }
+  }
+
+  @Override
+  public void onClosed(ControlConnection connection, IOException cause) {
+    log.info("Disconnected from coordinator: {}", cause.getMessage());
+    disconnected.countDown();
+  }
+}
@@ -0,0 +1,452 @@
+package com.faforever.loadtest.server.distributed;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.FafLegacyTcpClient;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import com.faforever.loadtest.server.client.ThinkBehavior;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.runner.Latency;
+import com.faforever.loadtest.server.runner.LoadProfile;
+import com.faforever.loadtest.server.runner.LoadTest;
+import com.faforever.loadtest.server.runner.Statistics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a load test on agents ({@link LoadAgent}) that connect to {@link LoadTestProperties#getCoordinatorPort()}.
+ * Each agent is assigned its own range of user IDs, the target number of clients is split evenly between them, and
+ * their statistics and latency histograms are merged as if a single instance ran the test.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "loadtest", name = "role", havingValue = "coordinator")
+@Slf4j
+public class LoadTestCoordinator implements LoadTest, ControlConnection.Listener {
+
+  private static final long CONTROL_INTERVAL_MILLIS = 100;
+
+  private final FafLegacyTcpClient tcpClient;
+  private final ObjectMapper objectMapper;
+  private final LoadTestProperties properties;
+  private final LoadProfile loadProfile;
+  /** Guarded by itself. Messages are sent while holding the lock, which doesn't block since they're only queued. */
+  private final Map<ControlConnection, Agent> agents;
+  /** Latencies reported since the previous statistics. Guarded by itself, as is {@link #totalLatencyHistograms}. */
+  private final Map<Exchange, Histogram> intervalLatencyHistograms;
+  private final Map<Exchange, Histogram> totalLatencyHistograms;
+  private final Stopwatch stopwatch;
+
+  private ServerSocket serverSocket;
+  private ScheduledExecutorService controlExecutor;
+  private volatile boolean running;
+  private volatile int numberOfClients;
+  private volatile int targetClients;
+  private int nextAgentIndex;
+  private String host;
+  private int port;
+  private ThinkBehavior thinkBehavior;
+  private long randomSeed;
+
+  public LoadTestCoordinator(FafLegacyTcpClient tcpClient, ObjectMapper objectMapper, LoadTestProperties properties) {
+    this.tcpClient = tcpClient;
+    this.objectMapper = objectMapper;
+    this.properties = properties;
+    this.loadProfile = new LoadProfile(properties.getStages(), 0);
+    this.agents = new LinkedHashMap<>();
+    this.intervalLatencyHistograms = new EnumMap<>(Exchange.class);
+    this.totalLatencyHistograms = new EnumMap<>(Exchange.class);
+    for (Exchange exchange : Exchange.values()) {
+      intervalLatencyHistograms.put(exchange, new Histogram(3));
+      totalLatencyHistograms.put(exchange, new Histogram(3));
+    }
+    this.stopwatch = Stopwatch.createUnstarted();
+  }
+
+  @PostConstruct
+  public void listen() throws IOException {
+    serverSocket = new ServerSocket(properties.getCoordinatorPort());
+    Thread acceptor = new Thread(this::acceptAgents, "coordinator-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    log.info("Coordinator listening for agents on port {}", serverSocket.getLocalPort());
+  }
+
+  /** The port agents connect to, which is chosen by the system if {@link LoadTestProperties#getCoordinatorPort()} is 0. */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  private void acceptAgents() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        ControlConnection connection = new ControlConnection(socket, tcpClient, objectMapper, "coordinator-control-" + socket.getPort(), this);
+        onAgentConnected(connection);
+        connection.start();
+      } catch (IOException e) {
+        if (!serverSocket.isClosed()) {
+          log.warn("Agent could not be accepted", e);
+        }
+      }
+    }
+  }
+
+  private void onAgentConnected(ControlConnection connection) {
+    synchronized (agents) {
+      Agent agent = new Agent(connection, nextAgentIndex++);
+      agents.put(connection, agent);
+      log.info("Agent {} connected from {}", agent.index, connection.getRemoteAddress());
+
+      int firstUserId = agent.index * properties.getAgentUserIds();
+      send(agent, ImmutableMap.of("command", "assign", "first_user_id", firstUserId));
+      if (running) {
+        distributeTargetClients();
+        send(agent, startMessage());
+      }
+    }
+  }
+
+  @Override
+  public void onMessage(ControlConnection connection, JsonNode message) {
+    Agent agent;
+    synchronized (agents) {
+      agent = agents.get(connection);
+    }
+    if (agent == null) {
+      return;
+    }
+
+    String command = message.path("command").asText();
+    switch (command) {
+      case "hello":
+        log.info("Agent {} is {}", agent.index, message.path("name").asText());
+        break;
+      case "statistics":
+        onAgentStatistics(agent, message.path("statistics"));
+        break;
+      default:
+        log.warn("Unknown control command from agent {}: {}", agent.index, message);
+    }
+  }
+
+  private void onAgentStatistics(Agent agent, JsonNode message) {
+    AgentStatistics statistics;
+    try {
+      statistics = objectMapper.treeToValue(message, AgentStatistics.class);
+    } catch (JsonProcessingException e) {
+      log.warn("Invalid statistics from agent {}", agent.index, e);
+      return;
+    }
+
+    synchronized (intervalLatencyHistograms) {
+      statistics.getLatencyHistograms().forEach((exchange, encoded) -> {
+        Histogram histogram = AgentStatistics.decode(encoded);
+        intervalLatencyHistograms.get(exchange).add(histogram);
+        totalLatencyHistograms.get(exchange).add(histogram);
+      });
+    }
+    synchronized (agents) {
+      agent.statistics = statistics;
+    }
+  }
+
+  @Override
+  public void onClosed(ControlConnection connection, IOException cause) {
+    synchronized (agents) {
+      Agent agent = agents.get(connection);
+      if (agent == null) {
+        return;
+      }
+      // Keep the agent's statistics for the totals, but don't give it clients anymore
+      agent.connected = false;
+      log.info("Agent {} disconnected: {}", agent.index, cause.getMessage());
+      if (running) {
+        distributeTargetClients();
+      }
+    }
+  }
+
+  @Override
+  public void start(String host, int port, ThinkBehavior thinkBehavior) {
+    this.host = host;
+    this.port = port;
+    this.thinkBehavior = thinkBehavior;
+    randomSeed = properties.getRandomSeed() != null ? properties.getRandomSeed() : new SplittableRandom().nextLong();
+    stopwatch.reset();
+    stopwatch.start();
+
+    synchronized (intervalLatencyHistograms) {
+      intervalLatencyHistograms.values().forEach(Histogram::reset);
+      totalLatencyHistograms.values().forEach(Histogram::reset);
+    }
+    synchronized (agents) {
+      agents.values().removeIf(agent -> !agent.connected);
+      running = true;
+      for (Agent agent : agents.values()) {
+        agent.statistics = null;
+        agent.targetClients = -1;
+      }
+      distributeTargetClients();
+      agents.values().forEach(agent -> send(agent, startMessage()));
+    }
+
+    controlExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "coordinator-control");
+      thread.setDaemon(true);
+      return thread;
+    });
+    controlExecutor.scheduleWithFixedDelay(() -> {
+      synchronized (agents) {
+        distributeTargetClients();
+      }
+    }, CONTROL_INTERVAL_MILLIS, CONTROL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    log.info("Load test started on {} agents", agents.size());
+  }
+
+  private Map<String, Object> startMessage() {
+    return ImmutableMap.of(
+        "command", "start",
+        "host", host,
+        "port", port,
+        "think_behavior", thinkBehavior.name(),
+        "random_seed", randomSeed
+    );
+  }
+
+  /**
+   * Splits the target number of clients evenly between the connected agents and tells those whose share changed.
+   * Must be called while holding the lock of {@link #agents}.
+   */
+  private void distributeTargetClients() {
+    int target = loadProfile.isEmpty() ? numberOfClients : loadProfile.getTargetClients(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    targetClients = target;
+
+    List<Agent> connectedAgents = new ArrayList<>();
+    for (Agent agent : agents.values()) {
+      if (agent.connected) {
+        connectedAgents.add(agent);
+      }
+    }
+    for (int i = 0; i < connectedAgents.size(); i++) {
+      Agent agent = connectedAgents.get(i);
+      int share = target / connectedAgents.size() + (i < target % connectedAgents.size() ? 1 : 0);
+      share = Math.min(share, properties.getAgentUserIds());
+      if (share != agent.targetClients) {
+        agent.targetClients = share;
+        send(agent, ImmutableMap.of("command", "target", "clients", share));
+      }
+    }
+  }
+
+  private void send(Agent agent, Map<String, Object> message) {
+    try {
+      agent.connection.send(message);
+    } catch (IOException e) {
+      log.warn("Message could not be sent to agent {}: {}", agent.index, message, e);
+    }
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    Optional.ofNullable(controlExecutor).ifPresent(ScheduledExecutorService::shutdownNow);
+    synchronized (agents) {
+      agents.values().stream()
+          .filter(agent -> agent.connected)
+          .forEach(agent -> send(agent, ImmutableMap.of("command", "stop")));
+    }
+    if (stopwatch.isRunning()) {
+      stopwatch.stop();
+    }
+    log.info("Load test stopped");
+  }
+
+  @Override
+  public void setNumberOfClients(int numberOfClients) {
+    this.numberOfClients = numberOfClients;
+  }
+
+  @Override
+  public long getRandomSeed() {
+    return randomSeed;
+  }
+
+  @Override
+  public LoadProfile getLoadProfile() {
+    return loadProfile;
+  }
+
+  @Override
+  public Statistics getStatistics() {
+    int elapsedMillis = (int) stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    int createdGames = 0;
+    int sentMessages = 0;
+    int receivedMessages = 0;
+    Map<ClientSimulator.State, Integer> clientStates = new EnumMap<>(ClientSimulator.State.class);
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      clientStates.put(state, 0);
+    }
+    float incomingMessagesRate = 0;
+    float outgoingMessagesRate = 0;
+    float timerLagMillis = 0;
+    float timerTasksPerTick = 0;
+    int pendingTimerTasks = 0;
+    long usedHeapBytes = 0;
+    long allocatedBytes = 0;
+    float weightedAllocatedBytesPerMessage = 0;
+    int pendingArrivals = 0;
+    long socketWrites = 0;
+    float socketWritesRate = 0;
+    long reconnectAttempts = 0;
+    long connectFailures = 0;
+    long missedPongs = 0;
+    // By direction and command, so that the order is the same as that of the agents
+    Map<String, MessageTraffic> messageTraffic = new TreeMap<>();
+
+    synchronized (agents) {
+      for (Agent agent : agents.values()) {
+        AgentStatistics statistics = agent.statistics;
+        if (statistics == null) {
+          continue;
+        }
+        createdGames += statistics.getCreatedGames();
+        sentMessages += statistics.getSentMessages();
+        receivedMessages += statistics.getReceivedMessages();
+        allocatedBytes = allocatedBytes < 0 || statistics.getAllocatedBytes() < 0 ? -1 : allocatedBytes + statistics.getAllocatedBytes();
+        socketWrites += statistics.getSocketWrites();
+        reconnectAttempts += statistics.getReconnectAttempts();
+        connectFailures += statistics.getConnectFailures();
+        missedPongs += statistics.getMissedPongs();
+
+        boolean connected = agent.connected;
+        statistics.getMessageTraffic().forEach(traffic -> mergeTraffic(messageTraffic, traffic, connected));
+
+        if (!connected) {
+          // Its totals still count, but its clients, rates and gauges are gone
+          continue;
+        }
+        statistics.getClientStates().forEach((state, count) -> clientStates.merge(state, count, Integer::sum));
+        pendingArrivals += statistics.getPendingArrivals();
+        pendingTimerTasks += statistics.getPendingTimerTasks();
+        timerLagMillis = Math.max(timerLagMillis, statistics.getTimerLagMillis());
+        timerTasksPerTick = Math.max(timerTasksPerTick, statistics.getTimerTasksPerTick());
+        usedHeapBytes += statistics.getUsedHeapBytes();
+        float agentMessagesRate = statistics.getIncomingMessagesRate() + statistics.getOutgoingMessagesRate();
+        incomingMessagesRate += statistics.getIncomingMessagesRate();
+        outgoingMessagesRate += statistics.getOutgoingMessagesRate();
+        socketWritesRate += statistics.getSocketWritesRate();
+        weightedAllocatedBytesPerMessage += statistics.getAllocatedBytesPerMessage() * agentMessagesRate;
+      }
+    }
+    float messagesRate = incomingMessagesRate + outgoingMessagesRate;
+    float allocatedBytesPerMessage = messagesRate > 0 ? weightedAllocatedBytesPerMessage / messagesRate : 0;
+
+    Map<Exchange, Latency> latencies = new EnumMap<>(Exchange.class);
+    Map<Exchange, Latency> totalLatencies = new EnumMap<>(Exchange.class);
+    Map<Exchange, Histogram> latencyHistograms = new EnumMap<>(Exchange.class);
+    synchronized (intervalLatencyHistograms) {
+      intervalLatencyHistograms.forEach((exchange, histogram) -> {
+        latencyHistograms.put(exchange, histogram.copy());
+        latencies.put(exchange, Latency.of(histogram));
+        totalLatencies.put(exchange, Latency.of(totalLatencyHistograms.get(exchange)));
+        histogram.reset();
+      });
+    }
+
+    return Statistics.builder()
+        .elapsedMillis(elapsedMillis)
+        .createdGames(createdGames)
+        .sentMessages(sentMessages)
+        .receivedMessages(receivedMessages)
+        .clientStates(clientStates)
+        .incomingMessagesRate(incomingMessagesRate)
+        .outgoingMessagesRate(outgoingMessagesRate)
+        .timerLagMillis(timerLagMillis)
+        .timerTasksPerTick(timerTasksPerTick)
+        .pendingTimerTasks(pendingTimerTasks)
+        .usedHeapBytes(usedHeapBytes)
+        .allocatedBytes(allocatedBytes)
+        .allocatedBytesPerMessage(allocatedBytesPerMessage)
+        .latencies(latencies)
+        .totalLatencies(totalLatencies)
+        .pendingArrivals(pendingArrivals)
+        .stage(loadProfile.getStageName(elapsedMillis))
+        .targetClients(targetClients)
+        .messageTraffic(new ArrayList<>(messageTraffic.values()))
+        .socketWrites(socketWrites)
+        .socketWritesRate(socketWritesRate)
+        .reconnectAttempts(reconnectAttempts)
+        .connectFailures(connectFailures)
+        .missedPongs(missedPongs)
+        .latencyHistograms(latencyHistograms)
+        .build();
+  }
+
+  private static void mergeTraffic(Map<String, MessageTraffic> messageTraffic, MessageTraffic traffic, boolean withRates) {
+    MessageTraffic merged = messageTraffic.computeIfAbsent(traffic.getDirection() + " " + traffic.getCommand(),
+        key -> new MessageTraffic().setDirection(traffic.getDirection()).setCommand(traffic.getCommand()));
+    merged.setMessages(merged.getMessages() + traffic.getMessages())
+        .setPayloadBytes(merged.getPayloadBytes() + traffic.getPayloadBytes());
+    if (withRates) {
+      merged.setMessagesRate(merged.getMessagesRate() + traffic.getMessagesRate())
+          .setPayloadBytesRate(merged.getPayloadBytesRate() + traffic.getPayloadBytesRate());
+    }
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    if (running) {
+      stop();
+    }
+    serverSocket.close();
+    List<ControlConnection> connections;
+    synchronized (agents) {
+      connections = new ArrayList<>(agents.keySet());
+    }
+    // Closing waits for the queued messages to be written
+    connections.forEach(ControlConnection::close);
+  }
+
+  private static class Agent {
+
+    private final ControlConnection connection;
+    private final int index;
+    /** Latest statistics, which are cumulative except for rates and latencies. */
+    private AgentStatistics statistics;
+    /** The share of clients last sent to the agent, or {@code -1}. */
+    private int targetClients = -1;
+    private boolean connected = true;
+
+    private Agent(ControlConnection connection, int index) {
+      this.connection = connection;
+      this.index = index;
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package com.faforever.loadtest.server.distributed;
+
+public enum Role {
+  /** Generates the load itself. */
+  STANDALONE,
+  /** Lets connected agents generate the load and merges their statistics. */
+  COORDINATOR,
+  /** Generates load as instructed by a coordinator. */
+  AGENT,
+  /** Forwards real clients to the server and records their sessions into a trace. */
+  TRACE_PROXY,
+  /** Replays the sessions of a trace against the server. */
+  REPLAY
+}
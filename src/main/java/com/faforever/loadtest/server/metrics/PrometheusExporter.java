@@ -0,0 +1,223 @@
+package com.faforever.loadtest.server.metrics;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.runner.Statistics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the latest statistics in the Prometheus text format on {@code /metrics}, if
+ * {@link LoadTestProperties#isMetricsEnabled()}.
+ * <p>
+ * The response is rendered whenever statistics are {@link #publish(Statistics) published}, i.e. once per sample taken
+ * by the user interface or the headless test, and a scrape just writes the rendered bytes. Scrapes therefore never
+ * touch the clients' counters, and statistics aren't taken more often however often Prometheus scrapes. With a
+ * coordinator, the merged statistics of all agents are served.
+ */
+@Component
+@Slf4j
+public class PrometheusExporter {
+
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  private static final String PREFIX = "faf_loadtest_";
+  /** Upper bounds of the latency histogram buckets in seconds. */
+  private static final double[] LATENCY_BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+  private final LoadTestProperties properties;
+  /** Latencies in microseconds since the last reset. Guarded by this. */
+  private final Map<Exchange, Histogram> totalLatencyHistograms;
+  private volatile byte[] body;
+  private HttpServer server;
+  private ExecutorService executor;
+
+  public PrometheusExporter(LoadTestProperties properties) {
+    this.properties = properties;
+    totalLatencyHistograms = new EnumMap<>(Exchange.class);
+    for (Exchange exchange : Exchange.values()) {
+      totalLatencyHistograms.put(exchange, new Histogram(3));
+    }
+    body = new byte[0];
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    if (!properties.isMetricsEnabled()) {
+      return;
+    }
+    server = HttpServer.create(new InetSocketAddress(properties.getMetricsPort()), 0);
+    executor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "metrics-exporter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(executor);
+    server.createContext("/metrics", this::handle);
+    server.start();
+    log.info("Serving metrics on http://localhost:{}/metrics", getPort());
+  }
+
+  /** The port metrics are served on, which is chosen by the system if {@link LoadTestProperties#getMetricsPort()} is 0. */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Forgets the latencies of the previous run. Called when a run is started.
+   */
+  public synchronized void reset() {
+    totalLatencyHistograms.values().forEach(Histogram::reset);
+    body = new byte[0];
+  }
+
+  /**
+   * Makes {@code statistics} the ones served from now on. Statistics have to be published in the order they have been
+   * taken, since their latencies are added up.
+   */
+  public synchronized void publish(Statistics statistics) {
+    statistics.getLatencyHistograms().forEach((exchange, histogram) -> totalLatencyHistograms.get(exchange).add(histogram));
+    body = render(statistics).getBytes(StandardCharsets.UTF_8);
+  }
+
+  byte[] getBody() {
+    return body;
+  }
+
+  private String render(Statistics statistics) {
+    StringBuilder out = new StringBuilder(4096);
+
+    header(out, "elapsed_seconds", "gauge", "Time since the load test has been started.");
+    sample(out, "elapsed_seconds", "", statistics.getElapsedMillis() / 1000.0);
+
+    header(out, "target_clients", "gauge", "Number of clients the load profile or the configuration asks for.");
+    sample(out, "target_clients", "", statistics.getTargetClients());
+
+    header(out, "clients", "gauge", "Number of clients per state.");
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      sample(out, "clients", label("state", state.name()), statistics.getClientStates().getOrDefault(state, 0));
+    }
+
+    header(out, "games_created_total", "counter", "Number of games hosted by the clients.");
+    sample(out, "games_created_total", "", statistics.getCreatedGames());
+    header(out, "messages_sent_total", "counter", "Number of messages sent by the clients.");
+    sample(out, "messages_sent_total", "", statistics.getSentMessages());
+    header(out, "messages_received_total", "counter", "Number of messages received by the clients.");
+    sample(out, "messages_received_total", "", statistics.getReceivedMessages());
+
+    header(out, "socket_writes_total", "counter", "Number of writes to the clients' sockets, i.e. system calls.");
+    sample(out, "socket_writes_total", "", statistics.getSocketWrites());
+
+    header(out, "reconnect_attempts_total", "counter", "Number of reconnects scheduled after failed or lost connections.");
+    sample(out, "reconnect_attempts_total", "", statistics.getReconnectAttempts());
+    header(out, "connect_failures_total", "counter", "Number of connects that failed.");
+    sample(out, "connect_failures_total", "", statistics.getConnectFailures());
+    header(out, "missed_pongs_total", "counter", "Number of pings that hadn't been answered when the next one was due.");
+    sample(out, "missed_pongs_total", "", statistics.getMissedPongs());
+
+    header(out, "command_messages_total", "counter", "Number of messages per direction and command.");
+    for (MessageTraffic traffic : statistics.getMessageTraffic()) {
+      sample(out, "command_messages_total", trafficLabels(traffic), traffic.getMessages());
+    }
+    header(out, "command_wire_bytes_total", "counter", "Bytes on the wire per direction and command.");
+    for (MessageTraffic traffic : statistics.getMessageTraffic()) {
+      sample(out, "command_wire_bytes_total", trafficLabels(traffic), traffic.getWireBytes());
+    }
+
+    header(out, "pending_arrivals", "gauge", "Game host arrivals waiting for an idle client.");
+    sample(out, "pending_arrivals", "", statistics.getPendingArrivals());
+    header(out, "timer_lag_seconds", "gauge", "Average delay of scheduled client actions.");
+    sample(out, "timer_lag_seconds", "", statistics.getTimerLagMillis() / 1000.0);
+    header(out, "pending_timer_tasks", "gauge", "Scheduled client actions.");
+    sample(out, "pending_timer_tasks", "", statistics.getPendingTimerTasks());
+    header(out, "heap_used_bytes", "gauge", "Used heap of the load test.");
+    sample(out, "heap_used_bytes", "", statistics.getUsedHeapBytes());
+
+    header(out, "latency_seconds", "histogram", "Time from a request to its response, per exchange.");
+    for (Exchange exchange : Exchange.values()) {
+      Histogram histogram = totalLatencyHistograms.get(exchange);
+      String exchangeLabel = label("exchange", exchange.name().toLowerCase(Locale.ROOT));
+      for (double bucket : LATENCY_BUCKETS) {
+        long count = histogram.getTotalCount() == 0 ? 0 : histogram.getCountBetweenValues(0, (long) (bucket * 1_000_000));
+        sample(out, "latency_seconds_bucket", exchangeLabel + "," + label("le", format(bucket)), count);
+      }
+      sample(out, "latency_seconds_bucket", exchangeLabel + "," + label("le", "+Inf"), histogram.getTotalCount());
+      sample(out, "latency_seconds_sum", exchangeLabel, histogram.getMean() * histogram.getTotalCount() / 1_000_000);
+      sample(out, "latency_seconds_count", exchangeLabel, histogram.getTotalCount());
+    }
+
+    return out.toString();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] response = body;
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      if (response.length == 0) {
+        // Nothing has been published yet
+        exchange.sendResponseHeaders(200, -1);
+        return;
+      }
+      exchange.sendResponseHeaders(200, response.length);
+      try (OutputStream outputStream = exchange.getResponseBody()) {
+        outputStream.write(response);
+      }
+    }
+  }
+
+  private static void header(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, double value) {
+    out.append(PREFIX).append(name);
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ').append(format(value)).append('\n');
+  }
+
+  private static String trafficLabels(MessageTraffic traffic) {
+    return label("direction", traffic.getDirection().name().toLowerCase(Locale.ROOT)) + "," + label("command", traffic.getCommand());
+  }
+
+  private static String label(String name, String value) {
+    return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+  }
+
+  private static String format(double value) {
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+
+  @PreDestroy
+  public void close() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+    }
+  }
+}
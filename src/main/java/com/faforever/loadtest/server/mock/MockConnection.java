@@ -0,0 +1,250 @@
+package com.faforever.loadtest.server.mock;
+
+import com.faforever.loadtest.server.client.EncodedFrame;
+import com.faforever.loadtest.server.client.FafLegacyTcpClient;
+import com.faforever.loadtest.server.client.FrameDecoder;
+import com.faforever.loadtest.server.client.FrameEncoder;
+import com.faforever.loadtest.server.client.FrameTemplate;
+import com.faforever.loadtest.server.client.NioChannelWriter;
+import com.faforever.loadtest.server.client.NioEventLoop;
+import com.faforever.loadtest.server.client.ServerMessage;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+/**
+ * A client connected to the {@link MockLobbyServer}. Everything happens on the thread of its {@link MockEventLoop};
+ * responses to all messages of a read are flushed at once.
+ */
+@Slf4j
+class MockConnection implements NioEventLoop.Handler {
+
+  private static final String PING = "PING";
+  private static final String PONG = "PONG";
+
+  private final SocketChannel channel;
+  private final MockEventLoop eventLoop;
+  private final MockLobbyServer server;
+  private final NioChannelWriter writer;
+  private final FrameEncoder encoder;
+  private final FrameDecoder decoder;
+  private final ByteBuffer readBuffer;
+  private final Consumer<CharBuffer> messageConsumer;
+  /** Reused for every received message, like the {@code ServerMessage} of a client. */
+  private final ServerMessage clientMessage;
+  private final ServerMessage.FieldHandler fieldHandler;
+  /** The value of the template being written, reused since it's encoded right away. */
+  private final int[] templateValues;
+  /** The fields of the message being handled besides its command. */
+  private int uid;
+  private String firstArg;
+  private int secondArg;
+  /** The player id once logged in, otherwise 0. */
+  private int playerId;
+  /** The game hosted or joined, or {@code null}. */
+  private MockGame game;
+
+  MockConnection(SocketChannel channel, MockEventLoop eventLoop, MockLobbyServer server, FafLegacyTcpClient tcpClient,
+                 ObjectMapper objectMapper, int bufferSize) {
+    NioEventLoop nioEventLoop = eventLoop.getEventLoop();
+    this.channel = channel;
+    this.eventLoop = eventLoop;
+    this.server = server;
+    this.writer = new NioChannelWriter(channel, nioEventLoop, null);
+    this.encoder = tcpClient.newEncoder(bufferSize, writer::write);
+    this.decoder = tcpClient.newDecoder(nioEventLoop.getCharBufferPool());
+    this.readBuffer = nioEventLoop.getReadBuffer();
+    this.messageConsumer = this::onMessage;
+    this.clientMessage = new ServerMessage(objectMapper);
+    this.fieldHandler = this::onField;
+    this.templateValues = new int[1];
+  }
+
+  /** Called on the event loop. */
+  void register() throws IOException {
+    channel.configureBlocking(false);
+    writer.setKey(channel.register(eventLoop.getEventLoop().getSelector(), SelectionKey.OP_READ, this));
+  }
+
+  @Override
+  public void onReady(SelectionKey key) throws IOException {
+    if (key.isValid() && key.isReadable()) {
+      onReadable();
+    }
+    if (key.isValid() && key.isWritable()) {
+      writer.onWritable();
+    }
+  }
+
+  @Override
+  public void onFailure(IOException e) {
+    close();
+  }
+
+  private void onReadable() throws IOException {
+    readBuffer.clear();
+    if (channel.read(readBuffer) < 0) {
+      throw new EOFException();
+    }
+    readBuffer.flip();
+    try {
+      decoder.decode(readBuffer, messageConsumer);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    encoder.flush();
+  }
+
+  private void onMessage(CharBuffer message) {
+    if (message == null) {
+      return;
+    }
+    server.onMessageReceived();
+    try {
+      if (PING.contentEquals(message)) {
+        write(server.getResponses().getPong());
+        return;
+      }
+      if (PONG.contentEquals(message)) {
+        return;
+      }
+      handleCommand(message);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void handleCommand(CharBuffer message) throws IOException {
+    uid = 0;
+    firstArg = null;
+    secondArg = 0;
+    clientMessage.read(message, fieldHandler);
+    String command = clientMessage.getCommand();
+
+    MockResponses responses = server.getResponses();
+    switch (String.valueOf(command)) {
+      case "ask_session":
+        write(responses.getSession(), server.nextSessionId());
+        break;
+      case "hello":
+        playerId = server.nextPlayerId();
+        eventLoop.addConnection(this);
+        write(responses.getWelcome(), playerId);
+        break;
+      case "game_host":
+        leaveGame();
+        game = server.hostGame(this, playerId);
+        write(responses.getGameLaunch(), game.getUid());
+        break;
+      case "game_join":
+        leaveGame();
+        game = server.joinGame(uid);
+        if (game != null) {
+          write(responses.getGameLaunch(), game.getUid());
+        } else {
+          write(responses.getGameFull());
+        }
+        break;
+      case "GameState":
+        onGameState(firstArg);
+        break;
+      case "GameOption":
+        if ("Slots".equals(firstArg) && secondArg > 0 && isHosting()) {
+          game.setMaxPlayers(secondArg);
+        }
+        break;
+      case "ping":
+        write(responses.getPong());
+        break;
+      default:
+        // Everything else is just absorbed
+    }
+  }
+
+  private void onField(String name, JsonToken value, JsonParser parser) throws IOException {
+    if ("uid".equals(name) && value == JsonToken.VALUE_NUMBER_INT) {
+      uid = parser.getIntValue();
+    } else if ("args".equals(name) && value == JsonToken.START_ARRAY) {
+      if (parser.nextToken() == JsonToken.VALUE_STRING) {
+        firstArg = parser.getText();
+        if (parser.nextToken() == JsonToken.VALUE_NUMBER_INT) {
+          secondArg = parser.getIntValue();
+        }
+      }
+      while (parser.currentToken() != JsonToken.END_ARRAY) {
+        parser.skipChildren();
+        parser.nextToken();
+      }
+    }
+  }
+
+  private void onGameState(String state) throws IOException {
+    switch (String.valueOf(state)) {
+      case "Idle":
+        write(game == null || isHosting() ? server.getResponses().getHostGame() : server.getResponses().getJoinGame());
+        break;
+      case "Launching":
+        if (isHosting()) {
+          server.launchGame(game);
+        }
+        break;
+      case "Ended":
+        leaveGame();
+        break;
+      default:
+        // Lobby and the like don't change the game
+    }
+  }
+
+  private boolean isHosting() {
+    return game != null && game.isHost(this);
+  }
+
+  private void leaveGame() {
+    if (game != null) {
+      server.leaveGame(game, this);
+      game = null;
+    }
+  }
+
+  /** Writes a message that isn't a response, i.e. has to be flushed on its own. */
+  void writeAndFlush(EncodedFrame frame) throws IOException {
+    write(frame);
+    encoder.flush();
+  }
+
+  private void write(EncodedFrame frame) throws IOException {
+    encoder.encode(frame);
+    server.onMessageSent();
+  }
+
+  private void write(FrameTemplate template, int value) throws IOException {
+    templateValues[0] = value;
+    template.encode(encoder, templateValues);
+    server.onMessageSent();
+  }
+
+  void close() {
+    if (!channel.isOpen()) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.warn("Mock connection could not be closed", e);
+    }
+    eventLoop.removeConnection(this);
+    leaveGame();
+    server.onConnectionClosed();
+  }
+}
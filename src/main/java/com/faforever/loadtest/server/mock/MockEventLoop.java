@@ -0,0 +1,62 @@
+package com.faforever.loadtest.server.mock;
+
+import com.faforever.loadtest.server.client.EncodedFrame;
+import com.faforever.loadtest.server.client.NioEventLoop;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A {@link NioEventLoop} of the {@link MockLobbyServer}, serving any number of {@link MockConnection}s and, on one of
+ * the loops, accepting new connections. Keeps track of its logged in connections to broadcast to them.
+ */
+class MockEventLoop {
+
+  private final NioEventLoop eventLoop;
+  /** The logged in connections of this loop, only accessed on the loop thread. */
+  private final Set<MockConnection> connections;
+
+  MockEventLoop(String name) throws IOException {
+    this.eventLoop = new NioEventLoop(name);
+    this.connections = new LinkedHashSet<>();
+  }
+
+  NioEventLoop getEventLoop() {
+    return eventLoop;
+  }
+
+  void execute(Runnable task) {
+    eventLoop.execute(task);
+  }
+
+  void addConnection(MockConnection connection) {
+    connections.add(connection);
+  }
+
+  void removeConnection(MockConnection connection) {
+    connections.remove(connection);
+  }
+
+  /**
+   * Writes the frame to all logged in connections of this loop, closing those it can't be written to.
+   */
+  void broadcast(EncodedFrame frame) {
+    Iterator<MockConnection> iterator = connections.iterator();
+    while (iterator.hasNext()) {
+      MockConnection connection = iterator.next();
+      try {
+        connection.writeAndFlush(frame);
+      } catch (IOException e) {
+        // Removed before closing, so that closing doesn't modify the set while iterating it
+        iterator.remove();
+        connection.close();
+      }
+    }
+  }
+
+  void stop() {
+    eventLoop.stop();
+  }
+}
@@ -0,0 +1,84 @@
+package com.faforever.loadtest.server.mock;
+
+import com.faforever.loadtest.server.client.EncodedFrame;
+
+/**
+ * A game hosted on the {@link MockLobbyServer}. Its players are connections on any event loop, so changes are
+ * synchronized.
+ */
+class MockGame {
+
+  private static final int DEFAULT_MAX_PLAYERS = 12;
+
+  private final int uid;
+  private final MockConnection host;
+  private final int hostId;
+  private GameState state;
+  private int numPlayers;
+  private int maxPlayers;
+
+  MockGame(int uid, MockConnection host, int hostId) {
+    this.uid = uid;
+    this.host = host;
+    this.hostId = hostId;
+    this.state = GameState.OPEN;
+    this.numPlayers = 1;
+    this.maxPlayers = DEFAULT_MAX_PLAYERS;
+  }
+
+  int getUid() {
+    return uid;
+  }
+
+  boolean isHost(MockConnection connection) {
+    return host == connection;
+  }
+
+  /** Returns whether the player could join, i.e. the game is open and not full. */
+  synchronized boolean join() {
+    if (state != GameState.OPEN || numPlayers >= maxPlayers) {
+      return false;
+    }
+    numPlayers++;
+    return true;
+  }
+
+  /** Removes a player, closing the game if it was the host or the last player. */
+  synchronized void leave(MockConnection connection) {
+    numPlayers--;
+    if (connection == host || numPlayers <= 0) {
+      state = GameState.CLOSED;
+    }
+  }
+
+  synchronized void launch() {
+    if (state == GameState.OPEN) {
+      state = GameState.PLAYING;
+    }
+  }
+
+  synchronized void setMaxPlayers(int maxPlayers) {
+    this.maxPlayers = maxPlayers;
+  }
+
+  synchronized boolean isClosed() {
+    return state == GameState.CLOSED;
+  }
+
+  /** Returns the {@code game_info} of the current state, to be broadcast to all players. */
+  synchronized EncodedFrame gameInfo(MockResponses responses) {
+    return responses.gameInfo(uid, state.value, hostId, numPlayers, maxPlayers);
+  }
+
+  private enum GameState {
+    OPEN("open"),
+    PLAYING("playing"),
+    CLOSED("closed");
+
+    private final String value;
+
+    GameState(String value) {
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package com.faforever.loadtest.server.mock;
+
+import com.faforever.loadtest.server.client.EncodedFrame;
+import com.faforever.loadtest.server.client.FafLegacyTcpClient;
+import com.faforever.loadtest.server.client.NioEventLoop;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A minimal stand-in for the FAF lobby server that answers just what {@link
+ * com.faforever.loadtest.server.client.ClientSimulator} needs: sessions, logins, game hosting and joining, and pings.
+ * Like the real server, it broadcasts a {@code game_info} to every logged in client whenever a game changes. It does
+ * no other work, so a load test against it shows how much load this application itself is able to generate.
+ * <p>
+ * Listens on {@link LoadTestProperties#getServerPort()} if {@link LoadTestProperties#isMockServer()} is set.
+ */
+@Component
+@ConditionalOnProperty(prefix = "loadtest", name = "mock-server", havingValue = "true")
+@Slf4j
+public class MockLobbyServer {
+
+  private final LoadTestProperties properties;
+  private final FafLegacyTcpClient tcpClient;
+  private final ObjectMapper objectMapper;
+  private final MockResponses responses;
+  private final AtomicInteger sessionIds;
+  private final AtomicInteger playerIds;
+  private final AtomicInteger gameIds;
+  private final Map<Integer, MockGame> games;
+  private final LongAdder receivedMessages;
+  private final LongAdder sentMessages;
+  private final LongAdder openConnections;
+
+  private ServerSocketChannel serverChannel;
+  private MockEventLoop[] eventLoops;
+  private int nextEventLoop;
+
+  public MockLobbyServer(LoadTestProperties properties, FafLegacyTcpClient tcpClient, ObjectMapper objectMapper) {
+    this.properties = properties;
+    this.tcpClient = tcpClient;
+    this.objectMapper = objectMapper;
+    this.responses = new MockResponses(objectMapper);
+    this.sessionIds = new AtomicInteger();
+    this.playerIds = new AtomicInteger();
+    this.gameIds = new AtomicInteger();
+    this.games = new ConcurrentHashMap<>();
+    this.receivedMessages = new LongAdder();
+    this.sentMessages = new LongAdder();
+    this.openConnections = new LongAdder();
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    eventLoops = new MockEventLoop[Math.max(properties.getMockServerThreads(), 1)];
+    for (int i = 0; i < eventLoops.length; i++) {
+      eventLoops[i] = new MockEventLoop("mock-server-" + i);
+    }
+
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(new InetSocketAddress(properties.getServerPort()), 1024);
+    serverChannel.configureBlocking(false);
+    NioEventLoop acceptLoop = eventLoops[0].getEventLoop();
+    acceptLoop.execute(() -> {
+      try {
+        serverChannel.register(acceptLoop.getSelector(), SelectionKey.OP_ACCEPT, new NioEventLoop.Handler() {
+          @Override
+          public void onReady(SelectionKey key) {
+            onAcceptable();
+          }
+
+          @Override
+          public void onFailure(IOException e) {
+            log.warn("Mock server could not accept connections", e);
+          }
+        });
+      } catch (IOException e) {
+        log.warn("Mock server could not accept connections", e);
+      }
+    });
+    log.info("Mock server listening on port {} with {} threads", properties.getServerPort(), eventLoops.length);
+  }
+
+  private void onAcceptable() {
+    try {
+      SocketChannel channel;
+      while ((channel = serverChannel.accept()) != null) {
+        MockEventLoop eventLoop = eventLoops[nextEventLoop++ % eventLoops.length];
+        MockConnection connection = new MockConnection(channel, eventLoop, this, tcpClient, objectMapper,
+            properties.getConnectionBufferSize());
+        openConnections.increment();
+        eventLoop.execute(() -> {
+          try {
+            connection.register();
+          } catch (IOException e) {
+            connection.close();
+          }
+        });
+      }
+    } catch (IOException e) {
+      log.warn("Mock server could not accept connection", e);
+    }
+  }
+
+  MockResponses getResponses() {
+    return responses;
+  }
+
+  int nextSessionId() {
+    return sessionIds.incrementAndGet();
+  }
+
+  int nextPlayerId() {
+    return playerIds.incrementAndGet();
+  }
+
+  MockGame hostGame(MockConnection host, int hostId) {
+    MockGame game = new MockGame(gameIds.incrementAndGet(), host, hostId);
+    games.put(game.getUid(), game);
+    broadcast(game);
+    return game;
+  }
+
+  /** Returns the game that has been joined, or {@code null} if it doesn't exist, is full or has been launched. */
+  MockGame joinGame(int uid) {
+    MockGame game = games.get(uid);
+    if (game == null || !game.join()) {
+      return null;
+    }
+    broadcast(game);
+    return game;
+  }
+
+  void leaveGame(MockGame game, MockConnection connection) {
+    game.leave(connection);
+    if (game.isClosed()) {
+      games.remove(game.getUid());
+    }
+    broadcast(game);
+  }
+
+  void launchGame(MockGame game) {
+    game.launch();
+    broadcast(game);
+  }
+
+  /**
+   * Sends the game's current {@code game_info} to all logged in connections, each on its own event loop.
+   */
+  void broadcast(MockGame game) {
+    EncodedFrame gameInfo = game.gameInfo(responses);
+    for (MockEventLoop eventLoop : eventLoops) {
+      eventLoop.execute(() -> eventLoop.broadcast(gameInfo));
+    }
+  }
+
+  void onMessageReceived() {
+    receivedMessages.increment();
+  }
+
+  void onMessageSent() {
+    sentMessages.increment();
+  }
+
+  void onConnectionClosed() {
+    openConnections.decrement();
+  }
+
+  public long getReceivedMessages() {
+    return receivedMessages.sum();
+  }
+
+  public long getSentMessages() {
+    return sentMessages.sum();
+  }
+
+  public long getOpenConnections() {
+    return openConnections.sum();
+  }
+
+  @PreDestroy
+  public void stop() throws IOException {
+    if (serverChannel != null) {
+      serverChannel.close();
+    }
+    if (eventLoops != null) {
+      for (MockEventLoop eventLoop : eventLoops) {
+        eventLoop.stop();
+      }
+    }
+    log.info("Mock server stopped after receiving {} and sending {} messages", getReceivedMessages(), getSentMessages());
+  }
+}
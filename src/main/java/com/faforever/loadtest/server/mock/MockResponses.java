@@ -0,0 +1,94 @@
+package com.faforever.loadtest.server.mock;
+
+import com.faforever.loadtest.server.client.EncodedFrame;
+import com.faforever.loadtest.server.client.FrameTemplate;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import static com.faforever.loadtest.server.client.FrameTemplate.raw;
+
+/**
+ * The messages the {@link MockLobbyServer} answers with, encoded in advance.
+ */
+@Getter
+class MockResponses {
+
+  @Getter(AccessLevel.NONE)
+  private final ObjectMapper objectMapper;
+  private final EncodedFrame pong;
+  /** Values: {@code session}. */
+  private final FrameTemplate session;
+  /** Values: {@code id}. */
+  private final FrameTemplate welcome;
+  /** Values: {@code uid}. */
+  private final FrameTemplate gameLaunch;
+  private final EncodedFrame hostGame;
+  private final EncodedFrame joinGame;
+  private final EncodedFrame gameFull;
+
+  MockResponses(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+    pong = EncodedFrame.of("PONG");
+    session = FrameTemplate.compile(serialize(objectMapper, ImmutableMap.of(
+        "command", "session",
+        "session", raw("session")
+    )));
+    welcome = FrameTemplate.compile(serialize(objectMapper, ImmutableMap.of(
+        "command", "welcome",
+        "id", raw("id")
+    )));
+    gameLaunch = FrameTemplate.compile(serialize(objectMapper, ImmutableMap.of(
+        "command", "game_launch",
+        "mod", "faf",
+        "uid", raw("uid"),
+        "args", new String[]{"/numgames", "1"}
+    )));
+    hostGame = EncodedFrame.of(serialize(objectMapper, ImmutableMap.of(
+        "command", "HostGame",
+        "target", "game",
+        "args", new String[]{"12 The Pass"}
+    )));
+    joinGame = EncodedFrame.of(serialize(objectMapper, ImmutableMap.of(
+        "command", "JoinGame",
+        "target", "game",
+        "args", new Object[]{"User #1", 1}
+    )));
+    gameFull = EncodedFrame.of(serialize(objectMapper, ImmutableMap.of(
+        "command", "notice",
+        "style", "info",
+        "text", "The game can't be joined."
+    )));
+  }
+
+  /**
+   * Returns a {@code game_info}. It is encoded once per change and written to every connection, so it isn't a template.
+   */
+  EncodedFrame gameInfo(int uid, String state, int hostId, int numPlayers, int maxPlayers) {
+    return EncodedFrame.of(serialize(objectMapper, ImmutableMap.<String, Object>builder()
+        .put("command", "game_info")
+        .put("visibility", "public")
+        .put("uid", uid)
+        .put("title", "Test Game " + hostId)
+        .put("state", state)
+        .put("featured_mod", "faf")
+        .put("map_file_path", "maps/12 The Pass.zip")
+        .put("host", "User #" + hostId)
+        .put("num_players", numPlayers)
+        .put("max_players", maxPlayers)
+        .build()));
+  }
+
+  private static String serialize(ObjectMapper objectMapper, Map<String, Object> message) {
+    try {
+      return objectMapper.writeValueAsString(message);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
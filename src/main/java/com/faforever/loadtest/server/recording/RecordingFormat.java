@@ -0,0 +1,54 @@
+package com.faforever.loadtest.server.recording;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary format of statistics recordings, which are appended to once per sample and therefore stored row by row.
+ * <p>
+ * A file starts with {@link #MAGIC}, a version byte, and the names of the client states and exchanges in the order
+ * their values are written in, so that recordings remain readable when these change. Each sample follows as a
+ * variable-length payload prefixed by its length, so a file that has been cut off while writing can be read up to the
+ * last complete sample. Integers are written as zig-zag variable-length deltas to the previous sample, which keeps
+ * counters that change slowly at one or two bytes. Strings like stages and commands are written once and referenced by
+ * index afterwards. Latencies are stored as compressed HdrHistograms.
+ */
+final class RecordingFormat {
+
+  static final byte[] MAGIC = "FAFLTSTATS".getBytes(StandardCharsets.US_ASCII);
+  static final int VERSION = 1;
+  static final String FILE_EXTENSION = ".stats";
+  /**
+   * Number of delta-encoded values at the start of each sample: elapsed millis, created games, sent and received
+   * messages, target clients, pending arrivals, pending timer tasks, used heap bytes, allocated bytes, socket writes,
+   * reconnect attempts, connect failures and missed pongs.
+   */
+  static final int INTEGER_COLUMNS = 13;
+
+  private RecordingFormat() {
+    // Static class
+  }
+
+  static void writeVarLong(DataOutput out, long value) throws IOException {
+    long zigZag = (value << 1) ^ (value >> 63);
+    while ((zigZag & ~0x7FL) != 0) {
+      out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+      zigZag >>>= 7;
+    }
+    out.writeByte((int) zigZag);
+  }
+
+  static long readVarLong(DataInput in) throws IOException {
+    long zigZag = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+      zigZag |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+      }
+    }
+    throw new IOException("Malformed variable-length integer");
+  }
+}
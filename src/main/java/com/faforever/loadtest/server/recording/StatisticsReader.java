@@ -0,0 +1,288 @@
+package com.faforever.loadtest.server.recording;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import com.faforever.loadtest.server.runner.Latency;
+import com.faforever.loadtest.server.runner.Statistics;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+
+import static com.faforever.loadtest.server.recording.RecordingFormat.readVarLong;
+
+/**
+ * Reads the samples of a recording written by {@link StatisticsWriter} one by one. Client states and exchanges that
+ * don't exist anymore are skipped. Not thread-safe.
+ */
+public class StatisticsReader implements Closeable {
+
+  private final DataInputStream in;
+  /** The client states in the order of the file, {@code null} if unknown. */
+  private final ClientSimulator.State[] states;
+  /** The exchanges in the order of the file, {@code null} if unknown. */
+  private final Exchange[] exchanges;
+  private final List<String> strings;
+  private final long[] values;
+  private final int[] stateCounts;
+  /** Totals by direction and command. */
+  private final Map<String, MessageTraffic> messageTraffic;
+  private List<MessageTraffic> previousMessageTraffic;
+  private final Map<Exchange, Histogram> totalLatencyHistograms;
+
+  public StatisticsReader(Path file) throws IOException {
+    in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+
+    byte[] magic = new byte[RecordingFormat.MAGIC.length];
+    in.readFully(magic);
+    if (!Arrays.equals(magic, RecordingFormat.MAGIC)) {
+      throw new IOException("Not a statistics recording: " + file);
+    }
+    int version = in.readUnsignedByte();
+    if (version != RecordingFormat.VERSION) {
+      throw new IOException("Unsupported recording version " + version + ": " + file);
+    }
+
+    states = new ClientSimulator.State[(int) readVarLong(in)];
+    for (int i = 0; i < states.length; i++) {
+      states[i] = valueOf(ClientSimulator.State.class, in.readUTF());
+    }
+    exchanges = new Exchange[(int) readVarLong(in)];
+    for (int i = 0; i < exchanges.length; i++) {
+      exchanges[i] = valueOf(Exchange.class, in.readUTF());
+    }
+
+    strings = new ArrayList<>();
+    values = new long[RecordingFormat.INTEGER_COLUMNS];
+    stateCounts = new int[states.length];
+    messageTraffic = new TreeMap<>();
+    previousMessageTraffic = List.of();
+    totalLatencyHistograms = new EnumMap<>(Exchange.class);
+    for (Exchange exchange : Exchange.values()) {
+      totalLatencyHistograms.put(exchange, new Histogram(3));
+    }
+  }
+
+  /**
+   * Counts the samples of a recording without decoding them.
+   */
+  public static int count(Path file) throws IOException {
+    try (StatisticsReader reader = new StatisticsReader(file)) {
+      int count = 0;
+      while (reader.nextPayload() != null) {
+        count++;
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Passes at most about {@code maxSamples} samples of a recording to {@code consumer}. If the recording has more
+   * samples, every n-th one is passed with the latencies of all samples since the previous one it was passed.
+   */
+  public static void read(Path file, int maxSamples, Consumer<Statistics> consumer) throws IOException {
+    int stride = Math.max(1, (int) Math.ceil((double) count(file) / maxSamples));
+    Map<Exchange, Histogram> strideHistograms = new EnumMap<>(Exchange.class);
+    for (Exchange exchange : Exchange.values()) {
+      strideHistograms.put(exchange, new Histogram(3));
+    }
+
+    try (StatisticsReader reader = new StatisticsReader(file)) {
+      int index = 0;
+      Statistics statistics;
+      Statistics last = null;
+      while ((statistics = reader.next()) != null) {
+        if (stride == 1) {
+          consumer.accept(statistics);
+          continue;
+        }
+        statistics.getLatencyHistograms().forEach((exchange, histogram) -> strideHistograms.get(exchange).add(histogram));
+        last = statistics;
+        if (++index % stride == 0) {
+          consumer.accept(withLatencies(statistics, strideHistograms));
+          strideHistograms.values().forEach(Histogram::reset);
+          last = null;
+        }
+      }
+      if (last != null) {
+        consumer.accept(withLatencies(last, strideHistograms));
+      }
+    }
+  }
+
+  private static Statistics withLatencies(Statistics statistics, Map<Exchange, Histogram> histograms) {
+    Map<Exchange, Latency> latencies = new EnumMap<>(Exchange.class);
+    Map<Exchange, Histogram> latencyHistograms = new EnumMap<>(Exchange.class);
+    histograms.forEach((exchange, histogram) -> {
+      latencies.put(exchange, Latency.of(histogram));
+      latencyHistograms.put(exchange, histogram.copy());
+    });
+    return statistics.toBuilder()
+        .latencies(latencies)
+        .latencyHistograms(latencyHistograms)
+        .build();
+  }
+
+  /**
+   * Returns the next sample, or {@code null} if there is none. A sample that has been cut off is treated as the end.
+   */
+  public Statistics next() throws IOException {
+    byte[] bytes = nextPayload();
+    if (bytes == null) {
+      return null;
+    }
+    DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes));
+
+    long previousElapsedMillis = values[0];
+    for (int column = 0; column < values.length; column++) {
+      values[column] += readVarLong(payload);
+    }
+
+    Map<ClientSimulator.State, Integer> clientStates = new EnumMap<>(ClientSimulator.State.class);
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      clientStates.put(state, 0);
+    }
+    for (int i = 0; i < states.length; i++) {
+      stateCounts[i] += (int) readVarLong(payload);
+      if (states[i] != null) {
+        clientStates.put(states[i], stateCounts[i]);
+      }
+    }
+
+    float incomingMessagesRate = payload.readFloat();
+    float outgoingMessagesRate = payload.readFloat();
+    float timerLagMillis = payload.readFloat();
+    float timerTasksPerTick = payload.readFloat();
+    float allocatedBytesPerMessage = payload.readFloat();
+    float socketWritesRate = payload.readFloat();
+
+    String stage = readString(payload);
+
+    int types = (int) readVarLong(payload);
+    for (int i = 0; i < types; i++) {
+      MessageTraffic.Direction direction = MessageTraffic.Direction.values()[payload.readUnsignedByte()];
+      addTraffic(direction, readString(payload), readVarLong(payload), readVarLong(payload));
+    }
+    List<MessageTraffic> currentMessageTraffic = new ArrayList<>();
+    for (MessageTraffic traffic : messageTraffic.values()) {
+      currentMessageTraffic.add(traffic.copyTotals());
+    }
+    MessageTraffic.computeRates(currentMessageTraffic, previousMessageTraffic, values[0] - previousElapsedMillis);
+    previousMessageTraffic = currentMessageTraffic;
+
+    Map<Exchange, Histogram> latencyHistograms = new EnumMap<>(Exchange.class);
+    Map<Exchange, Latency> latencies = new EnumMap<>(Exchange.class);
+    Map<Exchange, Latency> totalLatencies = new EnumMap<>(Exchange.class);
+    for (Exchange exchange : exchanges) {
+      Histogram histogram = readHistogram(payload);
+      if (exchange != null) {
+        latencyHistograms.put(exchange, histogram);
+        totalLatencyHistograms.get(exchange).add(histogram);
+      }
+    }
+    for (Exchange exchange : Exchange.values()) {
+      latencyHistograms.computeIfAbsent(exchange, e -> new Histogram(3));
+      latencies.put(exchange, Latency.of(latencyHistograms.get(exchange)));
+      totalLatencies.put(exchange, Latency.of(totalLatencyHistograms.get(exchange)));
+    }
+
+    return Statistics.builder()
+        .elapsedMillis((int) values[0])
+        .createdGames((int) values[1])
+        .sentMessages((int) values[2])
+        .receivedMessages((int) values[3])
+        .clientStates(clientStates)
+        .incomingMessagesRate(incomingMessagesRate)
+        .outgoingMessagesRate(outgoingMessagesRate)
+        .timerLagMillis(timerLagMillis)
+        .timerTasksPerTick(timerTasksPerTick)
+        .pendingTimerTasks((int) values[6])
+        .usedHeapBytes(values[7])
+        .allocatedBytes(values[8])
+        .allocatedBytesPerMessage(allocatedBytesPerMessage)
+        .latencies(latencies)
+        .totalLatencies(totalLatencies)
+        .pendingArrivals((int) values[5])
+        .stage(stage)
+        .targetClients((int) values[4])
+        .messageTraffic(currentMessageTraffic)
+        .socketWrites(values[9])
+        .socketWritesRate(socketWritesRate)
+        .reconnectAttempts(values[10])
+        .connectFailures(values[11])
+        .missedPongs(values[12])
+        .latencyHistograms(latencyHistograms)
+        .build();
+  }
+
+  private void addTraffic(MessageTraffic.Direction direction, String command, long messages, long payloadBytes) {
+    MessageTraffic traffic = messageTraffic.computeIfAbsent(direction + " " + command,
+        key -> new MessageTraffic().setDirection(direction).setCommand(command));
+    traffic.setMessages(traffic.getMessages() + messages)
+        .setPayloadBytes(traffic.getPayloadBytes() + payloadBytes);
+  }
+
+  private byte[] nextPayload() throws IOException {
+    try {
+      byte[] bytes = new byte[(int) readVarLong(in)];
+      in.readFully(bytes);
+      return bytes;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  private String readString(DataInputStream payload) throws IOException {
+    int reference = (int) readVarLong(payload);
+    if (reference == 0) {
+      return null;
+    }
+    if (reference == strings.size() + 1) {
+      strings.add(payload.readUTF());
+    }
+    return strings.get(reference - 1);
+  }
+
+  private static Histogram readHistogram(DataInputStream payload) throws IOException {
+    int length = (int) readVarLong(payload);
+    if (length == 0) {
+      return new Histogram(3);
+    }
+    byte[] bytes = new byte[length];
+    payload.readFully(bytes);
+    try {
+      return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 0);
+    } catch (DataFormatException e) {
+      throw new IOException("Invalid latency histogram", e);
+    }
+  }
+
+  private static <T extends Enum<T>> T valueOf(Class<T> type, String name) {
+    try {
+      return Enum.valueOf(type, name);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,71 @@
+package com.faforever.loadtest.server.recording;
+
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.runner.Statistics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Records the statistics of each run to a new file in {@link LoadTestProperties#getRecordingDirectory()}. Failing to
+ * record doesn't affect the run, the recording is just stopped.
+ */
+@Component
+@Slf4j
+public class StatisticsRecorder {
+
+  private static final DateTimeFormatter FILE_NAME_FORMATTER = DateTimeFormatter.ofPattern("'run-'yyyyMMdd-HHmmss");
+
+  private final LoadTestProperties properties;
+  private StatisticsWriter writer;
+  private Path file;
+
+  public StatisticsRecorder(LoadTestProperties properties) {
+    this.properties = properties;
+  }
+
+  public synchronized void start() {
+    stop();
+    if (properties.getRecordingDirectory() == null || properties.getRecordingDirectory().isEmpty()) {
+      return;
+    }
+    try {
+      Path directory = Files.createDirectories(Paths.get(properties.getRecordingDirectory()));
+      file = directory.resolve(LocalDateTime.now().format(FILE_NAME_FORMATTER) + RecordingFormat.FILE_EXTENSION);
+      writer = new StatisticsWriter(file);
+      log.info("Recording statistics to {}", file.toAbsolutePath());
+    } catch (IOException e) {
+      log.warn("Statistics can't be recorded", e);
+    }
+  }
+
+  public synchronized void record(Statistics statistics) {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.write(statistics);
+    } catch (IOException e) {
+      log.warn("Statistics could not be recorded to {}, recording stopped", file, e);
+      stop();
+    }
+  }
+
+  public synchronized void stop() {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.close();
+    } catch (IOException e) {
+      log.warn("Recording {} could not be closed", file, e);
+    }
+    writer = null;
+  }
+}
@@ -0,0 +1,158 @@
+package com.faforever.loadtest.server.recording;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import com.faforever.loadtest.server.runner.Statistics;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.faforever.loadtest.server.recording.RecordingFormat.writeVarLong;
+
+/**
+ * Appends {@link Statistics} to a new recording file in the {@link RecordingFormat}. Every sample is flushed, so the
+ * recording is complete up to the last sample even if the application is killed. Not thread-safe.
+ */
+public class StatisticsWriter implements Closeable {
+
+  private final DataOutputStream out;
+  private final ByteArrayOutputStream payloadBytes;
+  private final DataOutputStream payload;
+  private final Map<String, Integer> stringIndices;
+  /** Messages and payload bytes by direction and command. */
+  private final Map<String, long[]> previousTraffic;
+  private final long[] previousValues;
+  private final int[] previousStateCounts;
+  private ByteBuffer histogramBuffer;
+
+  public StatisticsWriter(Path file) throws IOException {
+    out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE_NEW)));
+    payloadBytes = new ByteArrayOutputStream();
+    payload = new DataOutputStream(payloadBytes);
+    stringIndices = new HashMap<>();
+    previousTraffic = new HashMap<>();
+    previousValues = new long[RecordingFormat.INTEGER_COLUMNS];
+    previousStateCounts = new int[ClientSimulator.State.values().length];
+    histogramBuffer = ByteBuffer.allocate(1024);
+
+    out.write(RecordingFormat.MAGIC);
+    out.writeByte(RecordingFormat.VERSION);
+    writeVarLong(out, ClientSimulator.State.values().length);
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      out.writeUTF(state.name());
+    }
+    writeVarLong(out, Exchange.values().length);
+    for (Exchange exchange : Exchange.values()) {
+      out.writeUTF(exchange.name());
+    }
+    out.flush();
+  }
+
+  public void write(Statistics statistics) throws IOException {
+    payloadBytes.reset();
+
+    int column = 0;
+    writeDelta(column++, statistics.getElapsedMillis());
+    writeDelta(column++, statistics.getCreatedGames());
+    writeDelta(column++, statistics.getSentMessages());
+    writeDelta(column++, statistics.getReceivedMessages());
+    writeDelta(column++, statistics.getTargetClients());
+    writeDelta(column++, statistics.getPendingArrivals());
+    writeDelta(column++, statistics.getPendingTimerTasks());
+    writeDelta(column++, statistics.getUsedHeapBytes());
+    writeDelta(column++, statistics.getAllocatedBytes());
+    writeDelta(column++, statistics.getSocketWrites());
+    writeDelta(column++, statistics.getReconnectAttempts());
+    writeDelta(column++, statistics.getConnectFailures());
+    writeDelta(column, statistics.getMissedPongs());
+
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      int count = statistics.getClientStates().getOrDefault(state, 0);
+      writeVarLong(payload, count - previousStateCounts[state.ordinal()]);
+      previousStateCounts[state.ordinal()] = count;
+    }
+
+    payload.writeFloat(statistics.getIncomingMessagesRate());
+    payload.writeFloat(statistics.getOutgoingMessagesRate());
+    payload.writeFloat(statistics.getTimerLagMillis());
+    payload.writeFloat(statistics.getTimerTasksPerTick());
+    payload.writeFloat(statistics.getAllocatedBytesPerMessage());
+    payload.writeFloat(statistics.getSocketWritesRate());
+
+    writeString(statistics.getStage());
+
+    List<MessageTraffic> messageTraffic = statistics.getMessageTraffic();
+    writeVarLong(payload, messageTraffic.size());
+    for (MessageTraffic traffic : messageTraffic) {
+      payload.writeByte(traffic.getDirection().ordinal());
+      writeString(traffic.getCommand());
+      long[] previous = previousTraffic.computeIfAbsent(traffic.getDirection() + " " + traffic.getCommand(), key -> new long[2]);
+      writeVarLong(payload, traffic.getMessages() - previous[0]);
+      writeVarLong(payload, traffic.getPayloadBytes() - previous[1]);
+      previous[0] = traffic.getMessages();
+      previous[1] = traffic.getPayloadBytes();
+    }
+
+    for (Exchange exchange : Exchange.values()) {
+      writeHistogram(statistics.getLatencyHistograms().get(exchange));
+    }
+
+    writeVarLong(out, payloadBytes.size());
+    payloadBytes.writeTo(out);
+    out.flush();
+  }
+
+  private void writeDelta(int column, long value) throws IOException {
+    writeVarLong(payload, value - previousValues[column]);
+    previousValues[column] = value;
+  }
+
+  /** Writes {@code 0} for {@code null}, the index + 1 of a known string, or a new index followed by the string. */
+  private void writeString(String string) throws IOException {
+    if (string == null) {
+      writeVarLong(payload, 0);
+      return;
+    }
+    Integer index = stringIndices.get(string);
+    if (index != null) {
+      writeVarLong(payload, index + 1);
+      return;
+    }
+    index = stringIndices.size();
+    stringIndices.put(string, index);
+    writeVarLong(payload, index + 1);
+    payload.writeUTF(string);
+  }
+
+  private void writeHistogram(Histogram histogram) throws IOException {
+    if (histogram == null || histogram.getTotalCount() == 0) {
+      writeVarLong(payload, 0);
+      return;
+    }
+    int capacity = histogram.getNeededByteBufferCapacity();
+    if (histogramBuffer.capacity() < capacity) {
+      histogramBuffer = ByteBuffer.allocate(capacity);
+    }
+    histogramBuffer.clear();
+    int length = histogram.encodeIntoCompressedByteBuffer(histogramBuffer);
+    writeVarLong(payload, length);
+    payload.write(histogramBuffer.array(), 0, length);
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,78 @@
+package com.faforever.loadtest.server.runner;
+
+import com.faforever.loadtest.server.client.ArrivalDistribution;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * Generates arrivals at a fixed average rate on its own thread. Arrival times are computed from the start of the
+ * process rather than from the previous arrival, so if the consumer falls behind, the next arrivals happen
+ * immediately, each with the time it was supposed to happen at.
+ */
+@Slf4j
+class ArrivalProcess implements Runnable {
+
+  private final double meanIntervalNanos;
+  private final ArrivalDistribution distribution;
+  private final LongConsumer consumer;
+  private final SplittableRandom random;
+  private final Thread thread;
+  private volatile boolean stopped;
+
+  /**
+   * @param random draws the intervals between arrivals; only used by this process' thread
+   * @param consumer called with the {@link System#nanoTime()} each arrival was scheduled for
+   */
+  ArrivalProcess(String name, double ratePerSecond, ArrivalDistribution distribution, SplittableRandom random, LongConsumer consumer) {
+    this.meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+    this.distribution = distribution;
+    this.consumer = consumer;
+    this.random = random;
+    this.thread = new Thread(this, name);
+    thread.setDaemon(true);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  @Override
+  public void run() {
+    long arrivalNanos = System.nanoTime();
+    while (!stopped) {
+      arrivalNanos += nextIntervalNanos();
+      long waitNanos;
+      while ((waitNanos = arrivalNanos - System.nanoTime()) > 0 && !stopped) {
+        LockSupport.parkNanos(waitNanos);
+      }
+      if (stopped) {
+        return;
+      }
+      try {
+        consumer.accept(arrivalNanos);
+      } catch (RuntimeException e) {
+        log.warn("Arrival could not be handled", e);
+      }
+    }
+  }
+
+  private long nextIntervalNanos() {
+    switch (distribution) {
+      case CONSTANT:
+        return (long) meanIntervalNanos;
+      case POISSON:
+        return (long) (-Math.log(1 - random.nextDouble()) * meanIntervalNanos);
+      default:
+        throw new IllegalStateException("Uncovered arrival distribution: " + distribution);
+    }
+  }
+
+  void stop() {
+    stopped = true;
+    LockSupport.unpark(thread);
+  }
+}
@@ -0,0 +1,53 @@
+package com.faforever.loadtest.server.runner;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the clients per state. Updates only touch striped cells, so clients changing their state don't contend.
+ */
+public class ClientStateCounter {
+
+  /** Indexed by state ordinal. */
+  private final LongAdder[] counts;
+
+  public ClientStateCounter() {
+    counts = new LongAdder[ClientSimulator.State.values().length];
+    Arrays.setAll(counts, i -> new LongAdder());
+  }
+
+  public void onStateChanged(ClientSimulator.State oldState, ClientSimulator.State newState) {
+    if (oldState != null) {
+      counts[oldState.ordinal()].decrement();
+    }
+    counts[newState.ordinal()].increment();
+  }
+
+  public void onClientStopped(ClientSimulator.State state) {
+    if (state != null) {
+      counts[state.ordinal()].decrement();
+    }
+  }
+
+  public void reset() {
+    for (LongAdder count : counts) {
+      count.reset();
+    }
+  }
+
+  /**
+   * Sums up the counters without blocking the clients. Since clients may change their state meanwhile, a client
+   * may briefly be counted in both or none of its states.
+   */
+  public Map<ClientSimulator.State, Integer> snapshot() {
+    Map<ClientSimulator.State, Integer> snapshot = new EnumMap<>(ClientSimulator.State.class);
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      snapshot.put(state, (int) Math.max(0, counts[state.ordinal()].sum()));
+    }
+    return snapshot;
+  }
+}
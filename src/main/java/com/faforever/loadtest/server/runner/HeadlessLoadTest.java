@@ -0,0 +1,284 @@
+package com.faforever.loadtest.server.runner;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.metrics.PrometheusExporter;
+import com.faforever.loadtest.server.recording.StatisticsRecorder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a load test as configured by {@link LoadTestProperties} without user interface. While running, a summary is
+ * logged and a row is appended to a CSV report every {@link LoadTestProperties#getReportIntervalSeconds()}. When the
+ * test is over, a JSON report is written.
+ */
+@Service
+@Slf4j
+public class HeadlessLoadTest {
+
+  /** Statistics are taken, and recorded, every second; the report only every report interval. */
+  private static final long SAMPLE_INTERVAL_MILLIS = 1000;
+
+  private final LoadTest loadTest;
+  private final LoadTestProperties properties;
+  private final ObjectMapper objectMapper;
+  private final StatisticsRecorder statisticsRecorder;
+  private final PrometheusExporter prometheusExporter;
+
+  public HeadlessLoadTest(LoadTest loadTest, LoadTestProperties properties, ObjectMapper objectMapper, StatisticsRecorder statisticsRecorder, PrometheusExporter prometheusExporter) {
+    this.loadTest = loadTest;
+    this.properties = properties;
+    this.objectMapper = objectMapper;
+    this.statisticsRecorder = statisticsRecorder;
+    this.prometheusExporter = prometheusExporter;
+  }
+
+  public void run() {
+    LoadProfile loadProfile = loadTest.getLoadProfile();
+    long durationMillis = loadProfile.isEmpty()
+        ? TimeUnit.SECONDS.toMillis(properties.getTestDurationSeconds())
+        : loadProfile.getDurationMillis();
+    long intervalMillis = TimeUnit.SECONDS.toMillis(Math.max(properties.getReportIntervalSeconds(), 1));
+    Path csvFile = Paths.get(properties.getReportPath() + ".csv");
+    Path jsonFile = Paths.get(properties.getReportPath() + ".json");
+
+    if (loadProfile.isEmpty()) {
+      log.info("Starting headless load test with {} clients against {}:{} for {} seconds", properties.getNumberOfClients(),
+          properties.getServerAddress(), properties.getServerPort(), durationMillis / 1000);
+    } else {
+      log.info("Starting headless load test with {} stages against {}:{} for {} seconds", properties.getStages().size(),
+          properties.getServerAddress(), properties.getServerPort(), durationMillis / 1000);
+    }
+
+    Statistics statistics;
+    // Connected clients times the milliseconds they were connected for, so that rates per client stay meaningful while
+    // the number of clients changes
+    long connectedClientMillis = 0;
+    try (PrintWriter csvWriter = new PrintWriter(Files.newBufferedWriter(csvFile))) {
+      csvWriter.println(csvHeader());
+
+      loadTest.setNumberOfClients(properties.getNumberOfClients());
+      statisticsRecorder.start();
+      prometheusExporter.reset();
+      loadTest.start(properties.getServerAddress(), properties.getServerPort(), properties.getThinkBehavior());
+      log.info("Random seed: {}", loadTest.getRandomSeed());
+      try {
+        Map<Exchange, Histogram> reportHistograms = new EnumMap<>(Exchange.class);
+        for (Exchange exchange : Exchange.values()) {
+          reportHistograms.put(exchange, new Histogram(3));
+        }
+        Statistics previousReported = null;
+        long previousReportedClientMillis = 0;
+        int previousElapsedMillis = 0;
+        long startTime = System.currentTimeMillis();
+        long nextReportMillis = intervalMillis;
+        long elapsedMillis = 0;
+        do {
+          Thread.sleep(Math.max(0, Math.min(SAMPLE_INTERVAL_MILLIS - elapsedMillis % SAMPLE_INTERVAL_MILLIS, durationMillis - elapsedMillis)));
+
+          statistics = loadTest.getStatistics();
+          statisticsRecorder.record(statistics);
+          prometheusExporter.publish(statistics);
+          statistics.getLatencyHistograms().forEach((exchange, histogram) -> reportHistograms.get(exchange).add(histogram));
+          connectedClientMillis += (long) statistics.getConnectedClients() * (statistics.getElapsedMillis() - previousElapsedMillis);
+          previousElapsedMillis = statistics.getElapsedMillis();
+
+          elapsedMillis = System.currentTimeMillis() - startTime;
+          if (elapsedMillis >= nextReportMillis || elapsedMillis >= durationMillis) {
+            Interval interval = Interval.of(previousReported, statistics, connectedClientMillis - previousReportedClientMillis,
+                reportHistograms);
+            log.info(summary(statistics, interval));
+            csvWriter.println(csvRow(statistics, interval));
+            csvWriter.flush();
+
+            reportHistograms.values().forEach(Histogram::reset);
+            previousReported = statistics;
+            previousReportedClientMillis = connectedClientMillis;
+            nextReportMillis += intervalMillis;
+          }
+        } while (elapsedMillis < durationMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        statistics = loadTest.getStatistics();
+      } finally {
+        loadTest.stop();
+        statisticsRecorder.stop();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("CSV report could not be written to " + csvFile, e);
+    }
+
+    writeJsonReport(jsonFile, statistics, connectedClientMillis);
+    log.info("Load test finished, reports written to {} and {}", csvFile.toAbsolutePath(), jsonFile.toAbsolutePath());
+  }
+
+  private void writeJsonReport(Path file, Statistics statistics, long connectedClientMillis) {
+    float elapsedSeconds = Math.max(statistics.getElapsedMillis(), 1) / 1000f;
+    List<MessageTraffic> messageTraffic = new ArrayList<>();
+    statistics.getMessageTraffic().forEach(traffic -> messageTraffic.add(traffic.copyTotals()));
+    MessageTraffic.computeRates(messageTraffic, List.of(), statistics.getElapsedMillis());
+    Report report = new Report(
+        properties.getServerAddress() + ":" + properties.getServerPort(),
+        properties.getNumberOfClients(),
+        properties.getThinkBehavior(),
+        properties.getIoEngine(),
+        properties.getThreadingMode(),
+        properties.getFlushMode(),
+        loadTest.getRandomSeed(),
+        statistics.getElapsedMillis(),
+        statistics.getCreatedGames(),
+        statistics.getSentMessages(),
+        statistics.getReceivedMessages(),
+        statistics.getSentMessages() / elapsedSeconds,
+        statistics.getReceivedMessages() / elapsedSeconds,
+        statistics.getSocketWrites(),
+        perClientPerSecond(statistics.getSocketWrites(), connectedClientMillis),
+        statistics.getReconnectAttempts(),
+        statistics.getConnectFailures(),
+        statistics.getMissedPongs(),
+        statistics.getClientStates(),
+        statistics.getTotalLatencies(),
+        messageTraffic
+    );
+    try {
+      objectMapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), report);
+    } catch (IOException e) {
+      throw new IllegalStateException("JSON report could not be written to " + file, e);
+    }
+  }
+
+  /** Returns the count per second of a connected client, given how long clients were connected in total. */
+  private static float perClientPerSecond(long count, long connectedClientMillis) {
+    return connectedClientMillis > 0 ? count * 1000f / connectedClientMillis : 0;
+  }
+
+  private static String summary(Statistics statistics, Interval interval) {
+    StringBuilder summary = new StringBuilder(String.format(Locale.ROOT,
+        "[%4ds] stage: %s, target clients: %d, games: %d, messages in: %.0f/s, out: %.0f/s, socket writes per client: %.2f/s, pending arrivals: %d, heap: %d MB",
+        statistics.getElapsedMillis() / 1000, Objects.toString(statistics.getStage(), "-"), statistics.getTargetClients(),
+        statistics.getCreatedGames(), interval.incomingMessagesRate, interval.outgoingMessagesRate,
+        interval.socketWritesPerClientRate, statistics.getPendingArrivals(), statistics.getUsedHeapBytes() / (1024 * 1024)));
+
+    summary.append("\n  states:");
+    statistics.getClientStates().forEach((state, count) -> summary.append(' ').append(state).append('=').append(count));
+    if (statistics.getReconnectAttempts() > 0 || statistics.getMissedPongs() > 0) {
+      summary.append(String.format(Locale.ROOT, "\n  reconnect attempts: %d, connect failures: %d, missed pongs: %d",
+          statistics.getReconnectAttempts(), statistics.getConnectFailures(), statistics.getMissedPongs()));
+    }
+
+    statistics.getTotalLatencies().forEach((exchange, latency) -> summary.append(String.format(Locale.ROOT,
+        "\n  %-26s n=%d p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f ms", exchange, latency.getCount(),
+        latency.getP50Millis(), latency.getP90Millis(), latency.getP99Millis(), latency.getP999Millis(),
+        latency.getMaxMillis())));
+    return summary.toString();
+  }
+
+  private static String csvHeader() {
+    StringJoiner header = new StringJoiner(",");
+    header.add("elapsed_seconds").add("stage").add("target_clients").add("created_games").add("sent_messages").add("received_messages")
+        .add("incoming_messages_rate").add("outgoing_messages_rate").add("socket_writes_per_client_rate").add("pending_arrivals")
+        .add("used_heap_bytes").add("reconnect_attempts").add("connect_failures")
+        .add("missed_pongs");
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      header.add("clients_" + state.name().toLowerCase(Locale.ROOT));
+    }
+    for (Exchange exchange : Exchange.values()) {
+      String prefix = exchange.name().toLowerCase(Locale.ROOT);
+      header.add(prefix + "_count").add(prefix + "_p50_ms").add(prefix + "_p90_ms").add(prefix + "_p99_ms")
+          .add(prefix + "_p999_ms").add(prefix + "_max_ms");
+    }
+    return header.toString();
+  }
+
+  /** The rates and latencies of a row are the ones of its interval. */
+  private static String csvRow(Statistics statistics, Interval interval) {
+    StringJoiner row = new StringJoiner(",");
+    row.add(String.valueOf(statistics.getElapsedMillis() / 1000))
+        .add(Objects.toString(statistics.getStage(), ""))
+        .add(String.valueOf(statistics.getTargetClients()))
+        .add(String.valueOf(statistics.getCreatedGames()))
+        .add(String.valueOf(statistics.getSentMessages()))
+        .add(String.valueOf(statistics.getReceivedMessages()))
+        .add(String.valueOf(interval.incomingMessagesRate))
+        .add(String.valueOf(interval.outgoingMessagesRate))
+        .add(String.valueOf(interval.socketWritesPerClientRate))
+        .add(String.valueOf(statistics.getPendingArrivals()))
+        .add(String.valueOf(statistics.getUsedHeapBytes()))
+        .add(String.valueOf(statistics.getReconnectAttempts()))
+        .add(String.valueOf(statistics.getConnectFailures()))
+        .add(String.valueOf(statistics.getMissedPongs()));
+    Map<ClientSimulator.State, Integer> clientStates = statistics.getClientStates();
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      row.add(String.valueOf(clientStates.get(state)));
+    }
+    for (Exchange exchange : Exchange.values()) {
+      Latency latency = interval.latencies.get(exchange);
+      row.add(String.valueOf(latency.getCount()))
+          .add(String.valueOf(latency.getP50Millis()))
+          .add(String.valueOf(latency.getP90Millis()))
+          .add(String.valueOf(latency.getP99Millis()))
+          .add(String.valueOf(latency.getP999Millis()))
+          .add(String.valueOf(latency.getMaxMillis()));
+    }
+    return row.toString();
+  }
+
+  /** Rates and latencies between two rows of the report, which span several statistics. */
+  private static final class Interval {
+
+    private final float incomingMessagesRate;
+    private final float outgoingMessagesRate;
+    /** Socket writes per second of a connected client during the interval. */
+    private final float socketWritesPerClientRate;
+    private final Map<Exchange, Latency> latencies;
+
+    private Interval(float incomingMessagesRate, float outgoingMessagesRate, float socketWritesPerClientRate,
+                     Map<Exchange, Latency> latencies) {
+      this.incomingMessagesRate = incomingMessagesRate;
+      this.outgoingMessagesRate = outgoingMessagesRate;
+      this.socketWritesPerClientRate = socketWritesPerClientRate;
+      this.latencies = latencies;
+    }
+
+    /**
+     * @param previous the statistics of the previous row, or {@code null} for the first row
+     * @param connectedClientMillis the connected clients times the milliseconds they were connected for since the
+     * previous row
+     * @param histograms the latencies of all statistics since the previous row
+     */
+    static Interval of(Statistics previous, Statistics current, long connectedClientMillis, Map<Exchange, Histogram> histograms) {
+      int previousElapsedMillis = previous != null ? previous.getElapsedMillis() : 0;
+      int previousReceivedMessages = previous != null ? previous.getReceivedMessages() : 0;
+      int previousSentMessages = previous != null ? previous.getSentMessages() : 0;
+      long previousSocketWrites = previous != null ? previous.getSocketWrites() : 0;
+      float seconds = Math.max(current.getElapsedMillis() - previousElapsedMillis, 1) / 1000f;
+
+      Map<Exchange, Latency> latencies = new EnumMap<>(Exchange.class);
+      histograms.forEach((exchange, histogram) -> latencies.put(exchange, Latency.of(histogram)));
+      return new Interval(
+          (current.getReceivedMessages() - previousReceivedMessages) / seconds,
+          (current.getSentMessages() - previousSentMessages) / seconds,
+          perClientPerSecond(current.getSocketWrites() - previousSocketWrites, connectedClientMillis),
+          latencies
+      );
+    }
+  }
+}
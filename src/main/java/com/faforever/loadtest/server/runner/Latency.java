@@ -0,0 +1,41 @@
+package com.faforever.loadtest.server.runner;
+
+import lombok.Data;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Percentiles of the latencies of an exchange, in milliseconds.
+ */
+@Data
+public class Latency {
+
+  public static final Latency NONE = new Latency(0, 0, 0, 0, 0, 0);
+
+  private final long count;
+  private final float p50Millis;
+  private final float p90Millis;
+  private final float p99Millis;
+  private final float p999Millis;
+  private final float maxMillis;
+
+  /**
+   * @param histogram a histogram of latencies in microseconds
+   */
+  public static Latency of(Histogram histogram) {
+    if (histogram.getTotalCount() == 0) {
+      return NONE;
+    }
+    return new Latency(
+        histogram.getTotalCount(),
+        toMillis(histogram.getValueAtPercentile(50)),
+        toMillis(histogram.getValueAtPercentile(90)),
+        toMillis(histogram.getValueAtPercentile(99)),
+        toMillis(histogram.getValueAtPercentile(99.9)),
+        toMillis(histogram.getMaxValue())
+    );
+  }
+
+  private static float toMillis(long micros) {
+    return micros / 1000f;
+  }
+}
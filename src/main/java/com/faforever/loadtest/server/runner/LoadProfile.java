@@ -0,0 +1,98 @@
+package com.faforever.loadtest.server.runner;
+
+import com.faforever.loadtest.server.config.LoadStage;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The target number of clients over time, as described by a list of {@link LoadStage}s.
+ */
+public class LoadProfile {
+
+  private final List<LoadStage> stages;
+  private final long[] startMillis;
+  /** The level each stage starts from, which is the level the previous stage ended with. */
+  private final int[] startLevels;
+  private final String[] names;
+  private final long durationMillis;
+  private final int finalLevel;
+
+  public LoadProfile(List<LoadStage> stages, int initialLevel) {
+    this.stages = List.copyOf(stages);
+    startMillis = new long[stages.size()];
+    startLevels = new int[stages.size()];
+    names = new String[stages.size()];
+
+    long millis = 0;
+    int level = initialLevel;
+    for (int i = 0; i < stages.size(); i++) {
+      LoadStage stage = stages.get(i);
+      startMillis[i] = millis;
+      startLevels[i] = level;
+      names[i] = stage.getName() != null ? stage.getName() : (i + 1) + "-" + stage.getShape().name().toLowerCase(Locale.ROOT);
+
+      millis += TimeUnit.SECONDS.toMillis(stage.getDurationSeconds());
+      if (stage.getShape() == LoadStage.Shape.RAMP || stage.getShape() == LoadStage.Shape.STEP) {
+        level = stage.getClients();
+      }
+    }
+    durationMillis = millis;
+    finalLevel = level;
+  }
+
+  public boolean isEmpty() {
+    return stages.isEmpty();
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  /**
+   * Returns the name of the stage at the given time since the start of the test, or {@code null} if all stages are
+   * over.
+   */
+  public String getStageName(long elapsedMillis) {
+    int index = stageIndex(elapsedMillis);
+    return index < 0 ? null : names[index];
+  }
+
+  public int getTargetClients(long elapsedMillis) {
+    int index = stageIndex(elapsedMillis);
+    if (index < 0) {
+      return finalLevel;
+    }
+
+    LoadStage stage = stages.get(index);
+    int from = startLevels[index];
+    long stageMillis = elapsedMillis - startMillis[index];
+    long stageDurationMillis = Math.max(TimeUnit.SECONDS.toMillis(stage.getDurationSeconds()), 1);
+
+    switch (stage.getShape()) {
+      case RAMP:
+        return (int) Math.round(from + (stage.getClients() - from) * (double) stageMillis / stageDurationMillis);
+      case STEP:
+      case SPIKE:
+        return stage.getClients();
+      case SINE:
+        long periodMillis = Math.max(TimeUnit.SECONDS.toMillis(stage.getPeriodSeconds()), 1);
+        double phase = 2 * Math.PI * stageMillis / periodMillis;
+        return (int) Math.round(from + (stage.getClients() - from) * (1 - Math.cos(phase)) / 2);
+      default:
+        throw new IllegalStateException("Uncovered stage shape: " + stage.getShape());
+    }
+  }
+
+  private int stageIndex(long elapsedMillis) {
+    if (elapsedMillis >= durationMillis) {
+      return -1;
+    }
+    int index = startMillis.length - 1;
+    while (startMillis[index] > elapsedMillis) {
+      index--;
+    }
+    return index;
+  }
+}
@@ -0,0 +1,27 @@
+package com.faforever.loadtest.server.runner;
+
+import com.faforever.loadtest.server.client.ThinkBehavior;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+
+/**
+ * A load test that can be started, steered and observed, either run by this instance itself ({@link LoadTestRunner})
+ * or by remote agents.
+ */
+public interface LoadTest {
+
+  void start(String host, int port, ThinkBehavior thinkBehavior);
+
+  void stop();
+
+  /**
+   * Sets the number of clients to keep connected. Ignored while a load profile is configured.
+   */
+  void setNumberOfClients(int numberOfClients);
+
+  Statistics getStatistics();
+
+  LoadProfile getLoadProfile();
+
+  /** Returns the seed of the current or last test's random numbers, see {@link LoadTestProperties#getRandomSeed()}. */
+  long getRandomSeed();
+}
@@ -2,23 +2,38 @@ package com.faforever.loadtest.server.runner;
 
 import com.faforever.loadtest.server.client.ClientService;
 import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.ConnectThrottle;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.HashedWheelTimer;
+import com.faforever.loadtest.server.client.HeartbeatScheduler;
+import com.faforever.loadtest.server.client.LatencyRecorder;
+import com.faforever.loadtest.server.client.LoadModel;
+import com.faforever.loadtest.server.client.MessageTraffic;
 import com.faforever.loadtest.server.client.ThinkBehavior;
+import com.faforever.loadtest.server.client.TrafficCounter;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.distributed.Role;
 import com.google.common.base.Stopwatch;
-import javafx.application.Platform;
+import com.google.common.util.concurrent.RateLimiter;
+import com.sun.management.ThreadMXBean;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
 import org.springframework.stereotype.Service;
-import org.springframework.util.Assert;
 
+import java.lang.management.ManagementFactory;
 import java.net.Inet4Address;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -27,34 +42,78 @@ import java.util.stream.Collectors;
 
 @Service
 @Slf4j
-public class LoadTestRunner {
+public class LoadTestRunner implements LoadTest {
+
+  /** How often the number of clients is adjusted to the target when it is reached. */
+  private static final long CONTROL_INTERVAL_MILLIS = 100;
+  /**
+   * Keys of the arrival processes' random numbers, which don't collide with user IDs. They're combined with the user ID
+   * offset, so that agents sharing a seed don't see their arrivals at the same times.
+   */
+  private static final long SESSION_ARRIVALS_RANDOM_KEY = -1;
+  private static final long GAME_HOST_ARRIVALS_RANDOM_KEY = -2;
 
   private final ClientService clientService;
+  private final HashedWheelTimer timer;
+  private final LatencyRecorder latencyRecorder;
+  private final TrafficCounter trafficCounter;
+  private final ConnectThrottle connectThrottle;
+  private final HeartbeatScheduler heartbeatScheduler;
+  private final Map<Exchange, Histogram> totalLatencyHistograms;
   private final List<ClientSimulator> clients;
-  private final ConcurrentMap<ClientSimulator.State, Integer> clientStates;
+  private final ClientStateCounter clientStates;
   private final Stopwatch stopwatch;
+  private final LoadTestProperties properties;
+  private final List<ArrivalProcess> arrivalProcesses;
+  /** Game host arrivals, by scheduled time, that wait for an idle client. Guarded by itself. */
+  private final Deque<Long> pendingGameHostArrivals;
+  /** Guarded by {@link #pendingGameHostArrivals}. */
+  private final Deque<ClientSimulator> idleClients;
+  private final LoadProfile loadProfile;
 
   private ExecutorService executor;
   private volatile boolean stop;
   private Statistics previousStatistics;
-  private int numberOfClients;
+  private HashedWheelTimer.Metrics previousTimerMetrics;
+  private volatile int numberOfClients;
+  private volatile int targetClients;
+  private volatile int userIdOffset;
   private InetSocketAddress serverAddress;
   private ThinkBehavior thinkBehavior;
+  /** Seed of the following runs, overriding {@link LoadTestProperties#getRandomSeed()}, or {@code null}. */
+  private volatile Long configuredRandomSeed;
+  private long randomSeed;
   private AtomicInteger createdGames;
   private AtomicInteger sentMessages;
   private AtomicInteger receivedMessages;
-  private ConcurrentMap<String, AtomicInteger> messagesByType;
 
-  public LoadTestRunner(ClientService clientService) throws UnknownHostException {
+  public LoadTestRunner(ClientService clientService, HashedWheelTimer timer, LatencyRecorder latencyRecorder, TrafficCounter trafficCounter, ConnectThrottle connectThrottle, HeartbeatScheduler heartbeatScheduler, LoadTestProperties properties) throws UnknownHostException {
     this.clientService = clientService;
+    this.timer = timer;
+    this.latencyRecorder = latencyRecorder;
+    this.trafficCounter = trafficCounter;
+    this.connectThrottle = connectThrottle;
+    this.heartbeatScheduler = heartbeatScheduler;
+    this.properties = properties;
+    this.arrivalProcesses = new ArrayList<>();
+    this.pendingGameHostArrivals = new ArrayDeque<>();
+    this.idleClients = new ArrayDeque<>();
+    // Agents follow the target clients of their coordinator, which runs the load profile
+    if (properties.getRole() == Role.AGENT && !properties.getStages().isEmpty()) {
+      log.warn("Ignoring {} load stages, since agents follow the target of their coordinator", properties.getStages().size());
+    }
+    this.loadProfile = new LoadProfile(properties.getRole() == Role.AGENT ? List.of() : properties.getStages(), 0);
+    totalLatencyHistograms = new EnumMap<>(Exchange.class);
+    for (Exchange exchange : Exchange.values()) {
+      totalLatencyHistograms.put(exchange, new Histogram(3));
+    }
     this.stop = true;
     clients = new ArrayList<>();
-    clientStates = new ConcurrentHashMap<>();
+    clientStates = new ClientStateCounter();
     stopwatch = Stopwatch.createUnstarted();
-
-    messagesByType = new ConcurrentHashMap<>();
   }
 
+  @Override
   @SneakyThrows
   public void start(String host, int port, ThinkBehavior thinkBehavior) {
     this.stop = false;
@@ -63,22 +122,90 @@ public class LoadTestRunner {
     stopwatch.reset();
     stopwatch.start();
 
-    synchronized (clientStates) {
-      clientStates.clear();
-      for (ClientSimulator.State state : ClientSimulator.State.values()) {
-        clientStates.put(state, 0);
-      }
-    }
+    Long configured = configuredRandomSeed != null ? configuredRandomSeed : properties.getRandomSeed();
+    randomSeed = configured != null ? configured : new SplittableRandom().nextLong();
+
+    clientStates.reset();
 
     createdGames = new AtomicInteger();
     sentMessages = new AtomicInteger();
     receivedMessages = new AtomicInteger();
+    latencyRecorder.reset();
+    trafficCounter.reset();
+    connectThrottle.reset();
+    heartbeatScheduler.reset();
+    totalLatencyHistograms.values().forEach(Histogram::reset);
 
+    targetClients = currentTargetClients();
     executor = createExecutor();
-    executor.execute(() -> spawnClients(0, numberOfClients));
+    executor.execute(this::driveClients);
+    if (properties.getLoadModel() == LoadModel.OPEN) {
+      startArrivalProcesses();
+    }
     log.info("Load test started");
   }
 
+  /**
+   * Starts spawning clients and making idle clients host games at the configured rates. Arrivals that can't be served
+   * immediately are kept with the time they should have happened at, so the latency includes the time they waited.
+   */
+  private void startArrivalProcesses() {
+    if (properties.getSessionArrivalRate() > 0) {
+      arrivalProcesses.add(new ArrivalProcess("session-arrivals", properties.getSessionArrivalRate(),
+          properties.getArrivalDistribution(), random(arrivalsRandomKey(SESSION_ARRIVALS_RANDOM_KEY)), this::onSessionArrival));
+    }
+    if (properties.getGameHostArrivalRate() > 0) {
+      arrivalProcesses.add(new ArrivalProcess("game-host-arrivals", properties.getGameHostArrivalRate(),
+          properties.getArrivalDistribution(), random(arrivalsRandomKey(GAME_HOST_ARRIVALS_RANDOM_KEY)), this::onGameHostArrival));
+    }
+    arrivalProcesses.forEach(ArrivalProcess::start);
+  }
+
+  private void onSessionArrival(long arrivalNanos) {
+    int userId;
+    synchronized (clients) {
+      userId = clients.size();
+      if (userId >= targetClients) {
+        return;
+      }
+    }
+    spawnClient(userId, arrivalNanos);
+  }
+
+  private void onGameHostArrival(long arrivalNanos) {
+    synchronized (pendingGameHostArrivals) {
+      pendingGameHostArrivals.addLast(arrivalNanos);
+      dispatchGameHostArrivals();
+    }
+  }
+
+  /** Puts an arrival that an idle client couldn't take back at the head of the queue, since it's the oldest. */
+  private void onGameHostArrivalReturned(long arrivalNanos) {
+    synchronized (pendingGameHostArrivals) {
+      if (stop) {
+        return;
+      }
+      pendingGameHostArrivals.addFirst(arrivalNanos);
+      dispatchGameHostArrivals();
+    }
+  }
+
+  private void onClientIdle(ClientSimulator client) {
+    synchronized (pendingGameHostArrivals) {
+      idleClients.addLast(client);
+      dispatchGameHostArrivals();
+    }
+  }
+
+  /** Must be called while holding the lock of {@link #pendingGameHostArrivals}. */
+  private void dispatchGameHostArrivals() {
+    while (!pendingGameHostArrivals.isEmpty() && !idleClients.isEmpty()) {
+      if (idleClients.pollFirst().offerGameHost(pendingGameHostArrivals.peekFirst())) {
+        pendingGameHostArrivals.removeFirst();
+      }
+    }
+  }
+
   private ExecutorService createExecutor() {
     return Executors.newSingleThreadExecutor(runnable -> {
       Thread thread = new Thread(runnable);
@@ -87,21 +214,56 @@ public class LoadTestRunner {
     });
   }
 
-  private void spawnClients(int firstId, int numberOfClients) {
-    Assert.state(!Platform.isFxApplicationThread(), "Must not run on application thread");
-    if (Thread.interrupted()) {
-      return;
+  /**
+   * Keeps the number of clients at the target of the load profile, or at {@link #numberOfClients} if there is none.
+   * New clients are connected at no more than the configured connect rate; in the open load model, clients are only
+   * removed here since new ones are spawned by the session arrivals.
+   */
+  private void driveClients() {
+    RateLimiter connectLimiter = properties.getConnectRate() > 0 ? RateLimiter.create(properties.getConnectRate()) : null;
+    while (!stop && !Thread.currentThread().isInterrupted()) {
+      int target = currentTargetClients();
+      targetClients = target;
+
+      int currentNumber;
+      synchronized (clients) {
+        currentNumber = clients.size();
+      }
+
+      if (currentNumber > target) {
+        removeClients(currentNumber - target);
+      } else if (currentNumber < target && properties.getLoadModel() == LoadModel.CLOSED) {
+        if (connectLimiter != null) {
+          connectLimiter.acquire();
+        }
+        if (!stop) {
+          spawnClient(currentNumber, 0);
+        }
+        continue;
+      }
+
+      try {
+        Thread.sleep(CONTROL_INTERVAL_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
     }
-    for (int userId = firstId; userId < firstId + numberOfClients && !stop; userId++) {
-      spawnClient(userId);
+  }
+
+  private int currentTargetClients() {
+    if (loadProfile.isEmpty()) {
+      return numberOfClients;
     }
+    return loadProfile.getTargetClients(stopwatch.elapsed(TimeUnit.MILLISECONDS));
   }
 
-  private void spawnClient(int userId) {
-    ClientSimulator client = clientService.createClientSimulator(userId, serverAddress, this.thinkBehavior, new ClientSimulator.ClientEventListener() {
+  /**
+   * @param arrivalNanos the {@link System#nanoTime()} the client's session was scheduled for, or 0 to start it now
+   */
+  private void spawnClient(int userId, long arrivalNanos) {
+    ClientSimulator client = clientService.createClientSimulator(userIdOffset + userId, serverAddress, this.thinkBehavior, random(userIdOffset + userId), new ClientSimulator.ClientEventListener() {
       @Override
       public void onMessageReceived(String type) {
-        messagesByType.computeIfAbsent(type, s -> new AtomicInteger()).incrementAndGet();
         receivedMessages.incrementAndGet();
       }
 
@@ -117,30 +279,41 @@ public class LoadTestRunner {
 
       @Override
       public void onClienStopped(ClientSimulator client) {
-        synchronized (clientStates) {
-          Optional.ofNullable(client.getState()).ifPresent(state -> clientStates.compute(state, (state1, integer) -> integer - 1));
-        }
+        clientStates.onClientStopped(client.getState());
       }
 
       @Override
       public void onStateChanged(ClientSimulator.State oldState, ClientSimulator.State state) {
-        synchronized (clientStates) {
-          if (oldState != null) {
-            clientStates.compute(oldState, (state1, integer) -> integer - 1);
-          }
-          clientStates.compute(state, (state1, integer) -> integer + 1);
-        }
+        clientStates.onStateChanged(oldState, state);
+      }
+
+      @Override
+      public void onIdle(ClientSimulator client) {
+        onClientIdle(client);
+      }
+
+      @Override
+      public void onGameHostReturned(long arrivalNanos) {
+        onGameHostArrivalReturned(arrivalNanos);
       }
     });
+    client.setSessionArrivalNanos(arrivalNanos);
     client.run();
     synchronized (clients) {
       clients.add(client);
     }
   }
 
+  @Override
   public void stop() {
     this.stop = true;
     Optional.ofNullable(executor).ifPresent(ExecutorService::shutdownNow);
+    arrivalProcesses.forEach(ArrivalProcess::stop);
+    arrivalProcesses.clear();
+    synchronized (pendingGameHostArrivals) {
+      pendingGameHostArrivals.clear();
+      idleClients.clear();
+    }
     synchronized (clients) {
       clients.forEach(ClientSimulator::stop);
     }
@@ -149,10 +322,11 @@ public class LoadTestRunner {
     }
     clients.clear();
     previousStatistics = null;
-    messagesByType.clear();
+    previousTimerMetrics = null;
     log.info("Load test stopped");
   }
 
+  @Override
   public Statistics getStatistics() {
     int incomingMessagesRate = 0;
     int outgoingMessagesRate = 0;
@@ -166,37 +340,139 @@ public class LoadTestRunner {
       outgoingMessagesRate = (sentMessage - previousStatistics.getSentMessages()) * 1000 / millisSinceLastStatistics;
     }
 
-    messagesByType.forEach((s, atomicInteger) -> log.debug("Received '{}': {}", s, atomicInteger.get()));
+    float timerLagMillis = 0;
+    float timerTasksPerTick = 0;
+    HashedWheelTimer.Metrics timerMetrics = timer.getMetrics();
+    if (previousTimerMetrics != null) {
+      long expiredTimeouts = timerMetrics.getExpiredTimeouts() - previousTimerMetrics.getExpiredTimeouts();
+      long ticks = timerMetrics.getTicks() - previousTimerMetrics.getTicks();
+      if (expiredTimeouts > 0) {
+        timerLagMillis = (timerMetrics.getLagNanos() - previousTimerMetrics.getLagNanos()) / 1_000_000f / expiredTimeouts;
+      }
+      if (ticks > 0) {
+        timerTasksPerTick = (float) expiredTimeouts / ticks;
+      }
+    }
+    previousTimerMetrics = timerMetrics;
+
+    List<MessageTraffic> messageTraffic = trafficCounter.snapshot();
+    long socketWrites = trafficCounter.getSocketWrites();
+    float socketWritesRate = 0;
+    if (previousStatistics != null) {
+      int millisSinceLastStatistics = Math.max(elapsedMillis - previousStatistics.getElapsedMillis(), 1);
+      MessageTraffic.computeRates(messageTraffic, previousStatistics.getMessageTraffic(), millisSinceLastStatistics);
+      socketWritesRate = (socketWrites - previousStatistics.getSocketWrites()) * 1000f / millisSinceLastStatistics;
+    }
+    messageTraffic.forEach(traffic -> log.debug("{} '{}': {} messages, {} bytes", traffic.getDirection(),
+        traffic.getCommand(), traffic.getMessages(), traffic.getWireBytes()));
+    log.debug("Socket writes: {}/s", socketWritesRate);
+    log.debug("Timer lag: {} ms, tasks per tick: {}, pending: {}", timerLagMillis, timerTasksPerTick, timerMetrics.getPendingTimeouts());
     log.debug("----------");
 
-    previousStatistics = new Statistics(elapsedMillis, createdGames.get(), sentMessage, receivedMessages, clientStates, incomingMessagesRate, outgoingMessagesRate);
+    long usedHeapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    long allocatedBytes = getTotalAllocatedBytes();
+    float allocatedBytesPerMessage = 0;
+    if (previousStatistics != null && allocatedBytes >= 0) {
+      int messages = receivedMessages + sentMessage - previousStatistics.getReceivedMessages() - previousStatistics.getSentMessages();
+      if (messages > 0) {
+        allocatedBytesPerMessage = (float) (allocatedBytes - previousStatistics.getAllocatedBytes()) / messages;
+      }
+    }
+    log.debug("Allocated bytes per message: {}", allocatedBytesPerMessage);
+
+    Map<Exchange, Latency> latencies = new EnumMap<>(Exchange.class);
+    Map<Exchange, Latency> totalLatencies = new EnumMap<>(Exchange.class);
+    Map<Exchange, Histogram> latencyHistograms = new EnumMap<>(Exchange.class);
+    latencyRecorder.getIntervalHistograms().forEach((exchange, histogram) -> {
+      Histogram totalHistogram = totalLatencyHistograms.get(exchange);
+      totalHistogram.add(histogram);
+      latencyHistograms.put(exchange, histogram.copy());
+      latencies.put(exchange, Latency.of(histogram));
+      totalLatencies.put(exchange, Latency.of(totalHistogram));
+    });
+    totalLatencies.forEach((exchange, latency) -> log.debug("Latency of '{}': {}", exchange, latency));
+
+    int pendingArrivals;
+    synchronized (pendingGameHostArrivals) {
+      pendingArrivals = pendingGameHostArrivals.size();
+    }
+
+    String stage = loadProfile.getStageName(elapsedMillis);
+
+    previousStatistics = Statistics.builder()
+        .elapsedMillis(elapsedMillis)
+        .createdGames(createdGames.get())
+        .sentMessages(sentMessage)
+        .receivedMessages(receivedMessages)
+        .clientStates(clientStates.snapshot())
+        .incomingMessagesRate(incomingMessagesRate)
+        .outgoingMessagesRate(outgoingMessagesRate)
+        .timerLagMillis(timerLagMillis)
+        .timerTasksPerTick(timerTasksPerTick)
+        .pendingTimerTasks(timerMetrics.getPendingTimeouts())
+        .usedHeapBytes(usedHeapBytes)
+        .allocatedBytes(allocatedBytes)
+        .allocatedBytesPerMessage(allocatedBytesPerMessage)
+        .latencies(latencies)
+        .totalLatencies(totalLatencies)
+        .pendingArrivals(pendingArrivals)
+        .stage(stage)
+        .targetClients(targetClients)
+        .messageTraffic(messageTraffic)
+        .socketWrites(socketWrites)
+        .socketWritesRate(socketWritesRate)
+        .reconnectAttempts(connectThrottle.getReconnectAttempts())
+        .connectFailures(connectThrottle.getConnectFailures())
+        .missedPongs(heartbeatScheduler.getMissedPongs())
+        .latencyHistograms(latencyHistograms)
+        .build();
     return previousStatistics;
   }
 
+  /**
+   * Returns the random numbers of a client or arrival process. Their seed is a hash of the run's seed and the key, so
+   * the streams of different keys don't overlap like those of consecutive seeds would.
+   */
+  private SplittableRandom random(long key) {
+    return new SplittableRandom(new SplittableRandom(randomSeed ^ key).nextLong());
+  }
+
+  private long arrivalsRandomKey(long key) {
+    return key - ((long) userIdOffset << 32);
+  }
+
+  private long getTotalAllocatedBytes() {
+    if (!(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean threadMXBean)
+        || !threadMXBean.isThreadAllocatedMemorySupported()
+        || !threadMXBean.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    return threadMXBean.getTotalThreadAllocatedBytes();
+  }
+
+  @Override
   public void setNumberOfClients(int numberOfClients) {
     this.numberOfClients = numberOfClients;
-    if (!isRunning()) {
-      return;
-    }
+  }
 
-    executor.execute(() -> {
-      int currentNumber;
-      synchronized (clients) {
-        currentNumber = clients.size();
+  @Override
+  public LoadProfile getLoadProfile() {
+    return loadProfile;
+  }
 
-        if (numberOfClients < currentNumber) {
-          removeClients(currentNumber - numberOfClients);
-        } else {
-          spawnClients(currentNumber, numberOfClients - currentNumber);
-        }
-      }
-    });
+  @Override
+  public long getRandomSeed() {
+    return randomSeed;
+  }
+
+  /** Sets the seed of the following runs, so that agents use the one of the coordinator. */
+  public void setRandomSeed(long randomSeed) {
+    this.configuredRandomSeed = randomSeed;
   }
 
-  private boolean isRunning() {
-    return !stop
-        && executor != null
-        && !executor.isTerminated();
+  /** Sets the user ID of the first client, so that several instances can run tests with disjoint users. */
+  public void setUserIdOffset(int userIdOffset) {
+    this.userIdOffset = userIdOffset;
   }
 
   private void removeClients(int numberOfClients) {
@@ -0,0 +1,45 @@
+package com.faforever.loadtest.server.runner;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.FlushMode;
+import com.faforever.loadtest.server.client.IoEngine;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import com.faforever.loadtest.server.client.ThinkBehavior;
+import com.faforever.loadtest.server.client.ThreadingMode;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Final result of a headless load test.
+ */
+@Data
+public class Report {
+
+  private final String serverAddress;
+  private final int numberOfClients;
+  private final ThinkBehavior thinkBehavior;
+  private final IoEngine ioEngine;
+  private final ThreadingMode threadingMode;
+  private final FlushMode flushMode;
+  private final long randomSeed;
+  private final int elapsedMillis;
+  private final int createdGames;
+  private final int sentMessages;
+  private final int receivedMessages;
+  private final float sentMessagesPerSecond;
+  private final float receivedMessagesPerSecond;
+  private final long socketWrites;
+  /** Socket writes per second of a connected client, averaged over the time clients were connected. */
+  private final float socketWritesPerClientPerSecond;
+  private final long reconnectAttempts;
+  private final long connectFailures;
+  private final long missedPongs;
+  /** Number of clients per state at the end of the test. */
+  private final Map<ClientSimulator.State, Integer> clientStates;
+  private final Map<Exchange, Latency> latencies;
+  /** Messages and bytes per direction and command, with rates averaged over the whole test. */
+  private final List<MessageTraffic> messageTraffic;
+}
@@ -1,18 +1,84 @@
 package com.faforever.loadtest.server.runner;
 
 import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import lombok.Builder;
 import lombok.Data;
+import org.HdrHistogram.Histogram;
 
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 @Data
+@Builder(toBuilder = true)
 public class Statistics {
 
   private final int elapsedMillis;
   private final int createdGames;
   private final int sentMessages;
   private final int receivedMessages;
+  /** Number of clients per state. A snapshot that isn't modified anymore. */
   private final Map<ClientSimulator.State, Integer> clientStates;
   private final float incomingMessagesRate;
   private final float outgoingMessagesRate;
+  /** Average delay between the deadline of a scheduled client action and its execution. */
+  private final float timerLagMillis;
+  private final float timerTasksPerTick;
+  private final int pendingTimerTasks;
+  private final long usedHeapBytes;
+  /** Total bytes allocated by all threads of the JVM, or {@code -1} if not supported. */
+  private final long allocatedBytes;
+  /** Bytes allocated by the JVM since the previous statistics per sent or received message. */
+  private final float allocatedBytesPerMessage;
+  /** Latencies of the exchanges completed since the previous statistics. */
+  private final Map<Exchange, Latency> latencies;
+  /** Latencies of all exchanges completed since the test has been started. */
+  private final Map<Exchange, Latency> totalLatencies;
+  /** Game host arrivals waiting for an idle client, if the open load model is used. */
+  private final int pendingArrivals;
+  /** Name of the load profile's stage the statistics were taken in, or {@code null} if there is none. */
+  private final String stage;
+  /** Number of clients the load profile or the configuration asks for. */
+  private final int targetClients;
+  /**
+   * Messages and bytes per direction and command, in totals since the test has been started and in rates since the
+   * previous statistics. Ordered by direction and command. A snapshot.
+   */
+  private final List<MessageTraffic> messageTraffic;
+  /** Writes to the clients' sockets since the test has been started, each of which is a system call. */
+  private final long socketWrites;
+  /** Socket writes per second since the previous statistics. */
+  private final float socketWritesRate;
+  /** Reconnects scheduled by clients whose connect failed or whose connection was lost, since the test has been started. */
+  private final long reconnectAttempts;
+  /** Connects that failed since the test has been started. */
+  private final long connectFailures;
+  /** Pings that hadn't been answered by the time the next one was due, since the test has been started. */
+  private final long missedPongs;
+  /** Histograms of the latencies in microseconds of the exchanges completed since the previous statistics. Copies. */
+  private final Map<Exchange, Histogram> latencyHistograms;
+
+  /** Returns the number of clients that are connected to the server, whatever they're doing. */
+  public int getConnectedClients() {
+    int connectedClients = 0;
+    for (Map.Entry<ClientSimulator.State, Integer> entry : clientStates.entrySet()) {
+      if (entry.getKey().ordinal() >= ClientSimulator.State.CONNECTED.ordinal()) {
+        connectedClients += entry.getValue();
+      }
+    }
+    return connectedClients;
+  }
+
+  /** Returns the number of received messages per command since the test has been started. */
+  public Map<String, Integer> getReceivedMessagesByType() {
+    Map<String, Integer> receivedMessagesByType = new TreeMap<>();
+    for (MessageTraffic traffic : messageTraffic) {
+      if (traffic.getDirection() == MessageTraffic.Direction.INBOUND) {
+        receivedMessagesByType.put(traffic.getCommand(), (int) traffic.getMessages());
+      }
+    }
+    return receivedMessagesByType;
+  }
 }
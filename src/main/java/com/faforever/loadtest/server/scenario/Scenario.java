@@ -0,0 +1,409 @@
+package com.faforever.loadtest.server.scenario;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.EncodedFrame;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.FrameTemplate;
+import com.faforever.loadtest.server.scenario.ScenarioDefinition.ActionDefinition;
+import com.faforever.loadtest.server.scenario.ScenarioDefinition.Each;
+import com.faforever.loadtest.server.scenario.ScenarioDefinition.StateDefinition;
+import com.faforever.loadtest.server.scenario.ScenarioDefinition.ThinkTime;
+import com.faforever.loadtest.server.scenario.ScenarioDefinition.TransitionDefinition;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.google.common.io.Resources;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link ScenarioDefinition} compiled for the clients: states are linked to each other, messages are encoded in
+ * advance, and the transitions of each state are kept in an array indexed by a perfect hash of the commands, so
+ * dispatching a received message takes neither map lookups nor reflection.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Scenario {
+
+  private static final Pattern SCENARIO_PLACEHOLDER = Pattern.compile("\\{\\{([a-zA-Z]+)}}");
+  private static final Pattern TEMPLATE_PLACEHOLDER = Pattern.compile("\\$\\{([a-zA-Z]+)}");
+  private static final int MAX_COMMAND_TABLE_SIZE = 1 << 16;
+
+  @Getter
+  private final int playersPerGame;
+  @Getter
+  private final State initialState;
+  /** The commands any state has a transition for, at their hash's index. The length is a power of two. */
+  private final String[] commands;
+
+  /**
+   * Returns the index of the command's transitions, see {@link State#getTransition(int)}, or {@code -1} if no state
+   * handles the command.
+   */
+  public int indexOf(String command) {
+    int index = spread(command.hashCode()) & (commands.length - 1);
+    return command.equals(commands[index]) ? index : -1;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  public static Scenario compile(ScenarioDefinition definition, ObjectMapper objectMapper) {
+    return new Compiler(definition, objectMapper).compile();
+  }
+
+  /** Variables that are only known when a message is sent. */
+  public enum Variable {
+    USER_ID("userId"),
+    PLAYER("player"),
+    SLOT("slot"),
+    /** The game the client hosts or joins, as captured from a received message. */
+    GAME("game");
+
+    private final String placeholder;
+
+    Variable(String placeholder) {
+      this.placeholder = placeholder;
+    }
+
+    private static Variable forPlaceholder(String placeholder) {
+      for (Variable variable : values()) {
+        if (variable.placeholder.equals(placeholder)) {
+          return variable;
+        }
+      }
+      return null;
+    }
+  }
+
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class State {
+
+    private final String name;
+    private ClientSimulator.State clientState;
+    /** The think time drawn when entering the state, or {@code null}. */
+    private ThinkTime duration;
+    private Action[] onEnter;
+    /** Indexed by {@link #indexOf(String)}. */
+    @Getter(AccessLevel.NONE)
+    private Transition[] transitions;
+    /** The timed transition, or {@code null}. */
+    private Transition after;
+    private boolean openModelArrival;
+
+    /**
+     * Returns the first transition considered on the command with the given {@link Scenario#indexOf(String) index},
+     * or {@code null}. If it doesn't accept the message, its {@link Transition#getAlternative() alternative} is next.
+     */
+    public Transition getTransition(int commandIndex) {
+      return commandIndex < 0 ? null : transitions[commandIndex];
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Transition {
+
+    private final State target;
+    private final Action[] actions;
+    private final boolean countsGame;
+    private final long minMillis;
+    private final long maxMillis;
+    private final Condition[] conditions;
+    /** The field whose value becomes {@link Variable#GAME}, or {@code null}. */
+    private final String gameField;
+    private final double chance;
+    /** The transition considered next for the same command if this one isn't taken, or {@code null}. */
+    private Transition alternative;
+
+    /** Whether the received message has to be parsed to decide whether to take the transition. */
+    public boolean isReadingMessage() {
+      return conditions.length > 0 || gameField != null;
+    }
+  }
+
+  /**
+   * Requires a top level field of the received message to have a constant value or the value of a variable.
+   */
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Condition {
+
+    private final String field;
+    /** The required value as string, if it is a constant. */
+    private final String value;
+    /** The variable whose value is required, otherwise {@code null}. */
+    private final Variable variable;
+  }
+
+  @Getter
+  @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+  public static final class Action {
+
+    /** The message if it has no variables, otherwise {@code null}. */
+    private final EncodedFrame frame;
+    /** The message if it has variables, otherwise {@code null}. */
+    private final FrameTemplate template;
+    /** The values of {@link #template}, in order. */
+    private final Variable[] variables;
+    private final Exchange exchange;
+    private final Each each;
+    /** The think time to delay the action by, or {@code null}. */
+    private final ThinkTime delay;
+    private final boolean delayWithinDuration;
+    private final Action[] actions;
+  }
+
+  private static final class Compiler {
+
+    private final ScenarioDefinition definition;
+    private final ObjectMapper objectMapper;
+    private final Map<String, State> states;
+    /** Values of placeholders that are the same for all messages. */
+    private final Map<String, Object> constants;
+
+    private Compiler(ScenarioDefinition definition, ObjectMapper objectMapper) {
+      this.definition = definition;
+      this.objectMapper = objectMapper;
+      this.states = new HashMap<>();
+      this.constants = new HashMap<>();
+    }
+
+    private Scenario compile() {
+      check(definition.getPlayersPerGame() > 0, "players-per-game must be positive");
+      constants.put("playersPerGame", definition.getPlayersPerGame());
+      definition.getResources().forEach((name, path) -> constants.put(name, readResource(path)));
+
+      definition.getStates().keySet().forEach(name -> states.put(name, new State(name)));
+      State initialState = state(definition.getInitialState(), "initial-state");
+
+      String[] commands = commandTable();
+      definition.getStates().forEach((name, stateDefinition) -> compileState(states.get(name), stateDefinition, commands));
+      return new Scenario(definition.getPlayersPerGame(), initialState, commands);
+    }
+
+    /**
+     * Places every command at the index of its hash, doubling the table until no two commands collide.
+     */
+    private String[] commandTable() {
+      List<String> commands = definition.getStates().values().stream()
+          .flatMap(state -> state.getOnCommand().keySet().stream())
+          .distinct()
+          .toList();
+      for (int size = Integer.highestOneBit(Math.max(commands.size(), 1) * 2 - 1) << 1; size <= MAX_COMMAND_TABLE_SIZE; size <<= 1) {
+        String[] table = new String[size];
+        boolean collision = false;
+        for (String command : commands) {
+          int index = spread(command.hashCode()) & (size - 1);
+          if (table[index] != null) {
+            collision = true;
+            break;
+          }
+          table[index] = command;
+        }
+        if (!collision) {
+          return table;
+        }
+      }
+      throw new IllegalStateException("Commands can't be hashed without collisions: " + commands);
+    }
+
+    private void compileState(State state, StateDefinition stateDefinition, String[] commands) {
+      check(stateDefinition.getClientState() != null, "state '" + state.name + "' has no client-state");
+      state.clientState = stateDefinition.getClientState();
+      state.duration = checkThinkTime(stateDefinition.getDuration(), "duration of state '" + state.name + "'");
+      state.onEnter = compileActions(stateDefinition.getOnEnter(), state.duration != null);
+      state.transitions = new Transition[commands.length];
+      stateDefinition.getOnCommand().forEach((command, transitions) -> {
+        String description = "on " + command + " in state '" + state.name + "'";
+        check(!transitions.isEmpty(), description + " has no transition");
+        Transition next = null;
+        for (int i = transitions.size() - 1; i >= 0; i--) {
+          Transition transition = compileTransition(transitions.get(i), description);
+          transition.alternative = next;
+          next = transition;
+        }
+        state.transitions[spread(command.hashCode()) & (commands.length - 1)] = next;
+      });
+      if (stateDefinition.getAfter() != null) {
+        TransitionDefinition after = stateDefinition.getAfter();
+        String description = "timed transition of state '" + state.name + "'";
+        check(after.getMin() >= 0 && after.getMax() >= after.getMin(), description + " needs 0 <= min <= max");
+        check(after.getWhen().isEmpty() && after.getCapture().isEmpty() && after.getChance() == 1,
+            description + " has no message to check or capture");
+        state.after = compileTransition(after, description);
+      }
+      check(!stateDefinition.isOpenModelArrival() || state.after != null,
+          "state '" + state.name + "' is an open model arrival but has no timed transition");
+      state.openModelArrival = stateDefinition.isOpenModelArrival();
+    }
+
+    private Transition compileTransition(TransitionDefinition transition, String description) {
+      check(transition.getChance() > 0 && transition.getChance() <= 1, "chance of " + description + " needs 0 < chance <= 1");
+      transition.getCapture().keySet().forEach(variable -> check(Variable.GAME.placeholder.equals(variable),
+          description + " can only capture '" + Variable.GAME.placeholder + "', not '" + variable + "'"));
+      Condition[] conditions = transition.getWhen().entrySet().stream()
+          .map(condition -> compileCondition(condition.getKey(), condition.getValue()))
+          .toArray(Condition[]::new);
+      return new Transition(state(transition.getTo(), "target of " + description),
+          compileActions(transition.getActions(), false), transition.isCountsGame(), transition.getMin(), transition.getMax(),
+          conditions, transition.getCapture().get(Variable.GAME.placeholder), transition.getChance());
+    }
+
+    private Condition compileCondition(String field, Object value) {
+      Matcher matcher = SCENARIO_PLACEHOLDER.matcher(String.valueOf(value));
+      Object resolved = value instanceof String && matcher.matches() ? lookup(matcher.group(1), Map.of()) : value;
+      check(resolved != Variable.PLAYER && resolved != Variable.SLOT, "condition on '" + field + "' can't refer to a player or slot");
+      return resolved instanceof Variable variable
+          ? new Condition(field, null, variable)
+          : new Condition(field, String.valueOf(resolved), null);
+    }
+
+    private Action[] compileActions(List<ActionDefinition> actions, boolean durationKnown) {
+      return actions.stream()
+          .map(action -> compileAction(action, durationKnown))
+          .toArray(Action[]::new);
+    }
+
+    private Action compileAction(ActionDefinition action, boolean durationKnown) {
+      check(action.getExchange() == null || action.getSend() != null, "an action without message can't start an exchange");
+      check(action.getDelay() == null || !action.isDelayWithinDuration(), "an action can only have one delay");
+      check(!action.isDelayWithinDuration() || durationKnown, "only actions run on entering a state with duration can be delayed within it");
+      ThinkTime delay = checkThinkTime(action.getDelay(), "delay");
+
+      EncodedFrame frame = null;
+      FrameTemplate template = null;
+      Variable[] variables = new Variable[0];
+      if (action.getSend() != null) {
+        JsonNode message = definition.getMessages().get(action.getSend());
+        check(message != null, "no message named '" + action.getSend() + "'");
+        String serialized = serialize(resolve(message.deepCopy(), action.getValues()));
+
+        List<Variable> templateVariables = new ArrayList<>();
+        Matcher matcher = TEMPLATE_PLACEHOLDER.matcher(serialized);
+        while (matcher.find()) {
+          templateVariables.add(Variable.forPlaceholder(matcher.group(1)));
+        }
+        if (templateVariables.isEmpty()) {
+          frame = EncodedFrame.of(serialized);
+        } else {
+          template = FrameTemplate.compile(serialized);
+          variables = templateVariables.toArray(new Variable[0]);
+        }
+      }
+
+      return new Action(frame, template, variables, action.getExchange(), action.getEach(), delay,
+          action.isDelayWithinDuration(), compileActions(action.getActions(), durationKnown));
+    }
+
+    /**
+     * Replaces the placeholders in {@code node} by constants, or by template placeholders for variables.
+     */
+    private JsonNode resolve(JsonNode node, Map<String, Object> values) {
+      if (node instanceof ObjectNode objectNode) {
+        for (Map.Entry<String, JsonNode> field : objectNode.properties()) {
+          field.setValue(resolve(field.getValue(), values));
+        }
+        return node;
+      }
+      if (node instanceof ArrayNode arrayNode) {
+        for (int i = 0; i < arrayNode.size(); i++) {
+          arrayNode.set(i, resolve(arrayNode.get(i), values));
+        }
+        return node;
+      }
+      if (!(node instanceof TextNode)) {
+        return node;
+      }
+
+      Matcher matcher = SCENARIO_PLACEHOLDER.matcher(node.textValue());
+      if (matcher.matches()) {
+        Object value = lookup(matcher.group(1), values);
+        return value instanceof Variable variable
+            ? objectMapper.getNodeFactory().rawValueNode(new RawValue(FrameTemplate.placeholder(variable.placeholder)))
+            : objectMapper.valueToTree(value);
+      }
+      return new TextNode(matcher.replaceAll(result -> {
+        Object value = lookup(result.group(1), values);
+        return Matcher.quoteReplacement(value instanceof Variable variable
+            ? FrameTemplate.placeholder(variable.placeholder)
+            : String.valueOf(value));
+      }));
+    }
+
+    /**
+     * Returns the constant value of a placeholder, or its {@link Variable}. Values that consist of just a placeholder
+     * refer to that placeholder's value.
+     */
+    private Object lookup(String name, Map<String, Object> values) {
+      if (values.containsKey(name)) {
+        Object value = values.get(name);
+        Matcher matcher = SCENARIO_PLACEHOLDER.matcher(String.valueOf(value));
+        return value instanceof String && matcher.matches() ? lookup(matcher.group(1), Map.of()) : value;
+      }
+      if (constants.containsKey(name)) {
+        return constants.get(name);
+      }
+      Variable variable = Variable.forPlaceholder(name);
+      check(variable != null, "no value for placeholder '" + name + "'");
+      return variable;
+    }
+
+    private State state(String name, String description) {
+      State state = states.get(name);
+      check(state != null, description + " refers to unknown state '" + name + "'");
+      return state;
+    }
+
+    private String serialize(JsonNode message) {
+      try {
+        return objectMapper.writeValueAsString(message);
+      } catch (JsonProcessingException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private static ThinkTime checkThinkTime(ThinkTime thinkTime, String description) {
+      check(thinkTime == null || thinkTime.getMin() >= 0 && thinkTime.getMax() >= thinkTime.getMin(), description + " needs 0 <= min <= max");
+      return thinkTime;
+    }
+
+    private static String readResource(String path) {
+      URL resource = Scenario.class.getResource(path);
+      check(resource != null, "no resource '" + path + "'");
+      try {
+        return Resources.toString(resource, StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private static void check(boolean condition, String message) {
+      if (!condition) {
+        throw new IllegalStateException("Invalid scenario: " + message);
+      }
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.faforever.loadtest.server.scenario;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What clients do once they have logged in, as read from a scenario file: the states they go through, the messages
+ * they send and the think times in between. See {@code scenarios/default.yml} for an example.
+ * <p>
+ * Messages contain placeholders like <code>{{player}}</code>, which are replaced by values of the sending action, by
+ * {@link #resources} and {@code playersPerGame}, or by the variables {@code userId}, {@code player}, {@code slot} and
+ * {@code game}.
+ * A string consisting of just a placeholder is replaced by the value as is, so numbers stay numbers.
+ */
+@Data
+@JsonNaming(PropertyNamingStrategies.KebabCaseStrategy.class)
+public class ScenarioDefinition {
+
+  /** Number of players in a game, which {@link Each#PLAYER} iterates over. */
+  private int playersPerGame = 12;
+  /** State a client enters once it has logged in. */
+  private String initialState;
+  /** Classpath resources by placeholder name, whose contents can be used in messages as strings. */
+  private Map<String, String> resources = new LinkedHashMap<>();
+  /** JSON messages by name. */
+  private Map<String, JsonNode> messages = new LinkedHashMap<>();
+  private Map<String, StateDefinition> states = new LinkedHashMap<>();
+
+  @Data
+  @JsonNaming(PropertyNamingStrategies.KebabCaseStrategy.class)
+  public static class StateDefinition {
+
+    /** State the client is counted in while in this state. */
+    private ClientSimulator.State clientState;
+    /** Think time drawn when entering the state, to which actions can be {@link ActionDefinition#delayWithinDuration delayed}. */
+    private ThinkTime duration;
+    /** Actions run when entering the state. */
+    private List<ActionDefinition> onEnter = new ArrayList<>();
+    /**
+     * Transitions by command of the received message, of which the first one that accepts the message is taken.
+     * Messages without transition are ignored.
+     */
+    private Map<String, List<TransitionDefinition>> onCommand = new LinkedHashMap<>();
+    /** Transition taken after a think time, which starts when the last delayed action of {@link #onEnter} has run. */
+    private TransitionDefinition after;
+    /** With the open load model, {@link #after} is taken when the arrival process asks for a game host instead. */
+    private boolean openModelArrival;
+  }
+
+  @Data
+  @JsonNaming(PropertyNamingStrategies.KebabCaseStrategy.class)
+  public static class TransitionDefinition {
+
+    /** Name of the next state. */
+    private String to;
+    private List<ActionDefinition> actions = new ArrayList<>();
+    /** Counts a created game when taken. */
+    private boolean countsGame;
+    /** Values the received message's fields must have, which may be placeholders. */
+    private Map<String, Object> when = new LinkedHashMap<>();
+    /** Fields of the received message to store in variables, by variable. Only {@code game} can be captured. */
+    private Map<String, String> capture = new LinkedHashMap<>();
+    /** Probability of taking the transition if a received message is accepted otherwise. */
+    private double chance = 1;
+    /** Think time of a timed transition. */
+    private long min;
+    private long max;
+  }
+
+  @Data
+  @JsonNaming(PropertyNamingStrategies.KebabCaseStrategy.class)
+  public static class ActionDefinition {
+
+    /** Name of the message to send, if any. */
+    private String send;
+    /** Values of the message's placeholders. */
+    private Map<String, Object> values = new LinkedHashMap<>();
+    /** Exchange whose latency is measured from sending the message. */
+    private Exchange exchange;
+    /** Repeats the action for every player or slot. */
+    private Each each = Each.NONE;
+    private ThinkTime delay;
+    /** Delays the action by a think time between zero and the state's duration. */
+    private boolean delayWithinDuration;
+    /** Actions run after the message has been sent. */
+    private List<ActionDefinition> actions = new ArrayList<>();
+  }
+
+  @Data
+  public static class ThinkTime {
+
+    private long min;
+    private long max;
+  }
+
+  public enum Each {
+    NONE,
+    /** Every player from 1 to {@code playersPerGame}, as {@code player}. */
+    PLAYER,
+    /** Every slot from the current {@code player}, or 1, to {@code playersPerGame}, as {@code slot}. */
+    SLOT
+  }
+}
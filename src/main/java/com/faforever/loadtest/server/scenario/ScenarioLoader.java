@@ -0,0 +1,57 @@
+package com.faforever.loadtest.server.scenario;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads scenarios from YAML files: either a file at the given path or, for a plain name like {@code default}, the
+ * scenario {@code scenarios/<name>.yml} on the classpath.
+ */
+public final class ScenarioLoader {
+
+  /**
+   * Binds the parsed YAML, with enums written in lower case like in {@code application.yml} and single transitions
+   * without list.
+   */
+  private static final ObjectMapper DEFINITION_MAPPER = JsonMapper.builder()
+      .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS)
+      .enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+      .enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+      .build();
+
+  private ScenarioLoader() {
+    // Static class
+  }
+
+  /**
+   * Reads and compiles a scenario.
+   *
+   * @param objectMapper serializes the scenario's messages
+   */
+  public static Scenario load(String scenario, ObjectMapper objectMapper) throws IOException {
+    return Scenario.compile(read(scenario), objectMapper);
+  }
+
+  static ScenarioDefinition read(String scenario) throws IOException {
+    Path file = Path.of(scenario);
+    try (InputStream inputStream = Files.isRegularFile(file)
+        ? Files.newInputStream(file)
+        : ScenarioLoader.class.getResourceAsStream("/scenarios/" + scenario + ".yml")) {
+      if (inputStream == null) {
+        throw new IOException("No such scenario: " + scenario);
+      }
+      Object tree = new Yaml(new SafeConstructor(new LoaderOptions())).load(inputStream);
+      return DEFINITION_MAPPER.convertValue(tree, ScenarioDefinition.class);
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package com.faforever.loadtest.server.trace;
+
+/**
+ * What a trace record stands for. Stored by ordinal, so new events must be appended.
+ */
+public enum TraceEvent {
+  /** A client connected. */
+  OPENED,
+  /** A client sent a message to the server. */
+  CLIENT_MESSAGE,
+  /** The server sent a message to a client. */
+  SERVER_MESSAGE,
+  /** The connection was closed by either side. */
+  CLOSED
+}
@@ -0,0 +1,28 @@
+package com.faforever.loadtest.server.trace;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary format of session traces, which hold the frames real clients and the server exchanged.
+ * <p>
+ * A file starts with {@link #MAGIC} and a version byte, followed by records in the order they have been captured. A
+ * record consists of the microseconds since the capture has been started (64 bits), the session (32 bits) and the
+ * {@link TraceEvent} (8 bits), all big endian. Message records are followed by the frame exactly as on the wire,
+ * i.e. the frame size, the string size and the UTF-16BE string. Since all sizes are known upfront, a trace can be read
+ * straight from a memory-mapped file without decoding more than the current record.
+ */
+final class TraceFormat {
+
+  static final byte[] MAGIC = "FAFLTTRACE".getBytes(StandardCharsets.US_ASCII);
+  static final int VERSION = 1;
+  static final String FILE_EXTENSION = ".trace";
+  static final int FILE_HEADER_SIZE = MAGIC.length + 1;
+  /** Timestamp, session and event. */
+  static final int RECORD_HEADER_SIZE = 8 + 4 + 1;
+  /** Frame size and string size. */
+  static final int FRAME_HEADER_SIZE = 8;
+
+  private TraceFormat() {
+    // Static class
+  }
+}
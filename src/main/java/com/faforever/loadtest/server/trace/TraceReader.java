@@ -0,0 +1,154 @@
+package com.faforever.loadtest.server.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streams the records of a trace written by {@link TraceWriter} from a memory-mapped window that slides over the file,
+ * so traces of any size are read without copying them to the heap. A record that has been cut off is treated as the
+ * end. Not thread-safe.
+ */
+public class TraceReader implements Closeable {
+
+  private static final long DEFAULT_WINDOW_SIZE = 64L * 1024 * 1024;
+
+  private final FileChannel channel;
+  private final long size;
+  private final long windowSize;
+  private MappedByteBuffer window;
+  private long windowStart;
+  /** Position of the next record in the file. */
+  private long position;
+
+  private long timestampMicros;
+  private int session;
+  private TraceEvent event;
+  /** Offset of the current message's chars in the window. */
+  private int messageOffset;
+  private int messageBytes;
+
+  public TraceReader(Path file) throws IOException {
+    this(file, DEFAULT_WINDOW_SIZE);
+  }
+
+  TraceReader(Path file, long windowSize) throws IOException {
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    this.size = channel.size();
+    this.windowSize = windowSize;
+
+    if (!ensureMapped(0, TraceFormat.FILE_HEADER_SIZE)) {
+      channel.close();
+      throw new IOException("Not a trace: " + file);
+    }
+    byte[] magic = new byte[TraceFormat.MAGIC.length];
+    window.get(0, magic);
+    if (!Arrays.equals(magic, TraceFormat.MAGIC)) {
+      channel.close();
+      throw new IOException("Not a trace: " + file);
+    }
+    int version = window.get(magic.length) & 0xFF;
+    if (version != TraceFormat.VERSION) {
+      channel.close();
+      throw new IOException("Unsupported trace version " + version + ": " + file);
+    }
+    position = TraceFormat.FILE_HEADER_SIZE;
+  }
+
+  /**
+   * Advances to the next record.
+   *
+   * @return {@code false} if there is none
+   */
+  public boolean next() throws IOException {
+    if (!ensureMapped(position, TraceFormat.RECORD_HEADER_SIZE)) {
+      return false;
+    }
+    int offset = (int) (position - windowStart);
+    long timestampMicros = window.getLong(offset);
+    int session = window.getInt(offset + 8);
+    int ordinal = window.get(offset + 12) & 0xFF;
+    if (ordinal >= TraceEvent.values().length) {
+      throw new IOException("Unknown trace event " + ordinal + " at " + position);
+    }
+    TraceEvent event = TraceEvent.values()[ordinal];
+
+    long recordSize = TraceFormat.RECORD_HEADER_SIZE;
+    int messageOffset = 0;
+    int messageBytes = 0;
+    if (event == TraceEvent.CLIENT_MESSAGE || event == TraceEvent.SERVER_MESSAGE) {
+      if (!ensureMapped(position, recordSize + TraceFormat.FRAME_HEADER_SIZE)) {
+        return false;
+      }
+      messageBytes = window.getInt((int) (position - windowStart) + TraceFormat.RECORD_HEADER_SIZE + 4);
+      if (messageBytes < 0 || messageBytes % 2 != 0) {
+        throw new IOException("Invalid string size " + messageBytes + " at " + position);
+      }
+      recordSize += TraceFormat.FRAME_HEADER_SIZE + messageBytes;
+      if (!ensureMapped(position, recordSize)) {
+        return false;
+      }
+      messageOffset = (int) (position - windowStart) + TraceFormat.RECORD_HEADER_SIZE + TraceFormat.FRAME_HEADER_SIZE;
+    }
+
+    this.timestampMicros = timestampMicros;
+    this.session = session;
+    this.event = event;
+    this.messageOffset = messageOffset;
+    this.messageBytes = messageBytes;
+    position += recordSize;
+    return true;
+  }
+
+  /** Microseconds between the start of the capture and the current record. */
+  public long getTimestampMicros() {
+    return timestampMicros;
+  }
+
+  public int getSession() {
+    return session;
+  }
+
+  public TraceEvent getEvent() {
+    return event;
+  }
+
+  /**
+   * Returns the message of the current record as a view of the mapped file, which is only valid until {@link #next()}
+   * is called. Empty for records without message.
+   */
+  public CharBuffer getMessage() {
+    ByteBuffer bytes = window.duplicate();
+    bytes.limit(messageOffset + messageBytes).position(messageOffset);
+    return bytes.slice().asCharBuffer();
+  }
+
+  /**
+   * Maps a window containing the given range of the file, unless the current one does.
+   *
+   * @return {@code false} if the file ends before the range does
+   */
+  private boolean ensureMapped(long start, long length) throws IOException {
+    if (start + length > size) {
+      return false;
+    }
+    if (window != null && start >= windowStart && start + length <= windowStart + window.limit()) {
+      return true;
+    }
+    long mappedSize = Math.min(Math.max(windowSize, length), size - start);
+    window = channel.map(FileChannel.MapMode.READ_ONLY, start, mappedSize);
+    windowStart = start;
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
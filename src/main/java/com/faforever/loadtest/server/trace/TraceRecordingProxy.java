@@ -0,0 +1,222 @@
+package com.faforever.loadtest.server.trace;
+
+import com.faforever.loadtest.server.client.CharBufferPool;
+import com.faforever.loadtest.server.client.FafLegacyTcpClient;
+import com.faforever.loadtest.server.client.FrameDecoder;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the sessions of real clients into a trace, by listening on {@link LoadTestProperties#getTraceProxyPort()}
+ * and forwarding every connection to the configured server. Bytes are forwarded as they arrive and, separately,
+ * decoded into frames for the trace, so the proxy never changes what the client or the server sees.
+ * <p>
+ * When the application shuts down, the proxy stops accepting, closes the forwarded connections and records their end
+ * before the trace is closed, so the trace is complete.
+ */
+@Service
+@ConditionalOnProperty(prefix = "loadtest", name = "role", havingValue = "trace_proxy")
+@Slf4j
+public class TraceRecordingProxy {
+
+  private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+  private static final int READ_BUFFER_SIZE = 8192;
+  private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+  private final FafLegacyTcpClient tcpClient;
+  private final LoadTestProperties properties;
+  private final AtomicInteger nextSession;
+  /** The sockets of all forwarded connections, on both sides. */
+  private final Set<Socket> sockets;
+  private final Set<Thread> forwarders;
+  private final CountDownLatch stopped;
+
+  private volatile ServerSocket serverSocket;
+  private volatile boolean stop;
+
+  public TraceRecordingProxy(FafLegacyTcpClient tcpClient, LoadTestProperties properties) {
+    this.tcpClient = tcpClient;
+    this.properties = properties;
+    this.nextSession = new AtomicInteger();
+    this.sockets = ConcurrentHashMap.newKeySet();
+    this.forwarders = ConcurrentHashMap.newKeySet();
+    this.stopped = new CountDownLatch(1);
+  }
+
+  /**
+   * Accepts and records connections until {@link #stop()} is called.
+   */
+  public void run() throws IOException {
+    Path directory = Path.of(properties.getTraceDirectory());
+    Files.createDirectories(directory);
+    Path file = directory.resolve("session-" + LocalDateTime.now().format(FILE_NAME_FORMAT) + TraceFormat.FILE_EXTENSION);
+
+    try (TraceWriter writer = new TraceWriter(file);
+         ServerSocket serverSocket = new ServerSocket(properties.getTraceProxyPort())) {
+      this.serverSocket = serverSocket;
+      log.info("Recording sessions forwarded from port {} to {}:{} into {}",
+          properties.getTraceProxyPort(), properties.getServerAddress(), properties.getServerPort(), file);
+      Thread flusher = properties.getThreadingMode().newThread("trace-flusher", () -> flushPeriodically(writer));
+      flusher.start();
+      try {
+        while (!stop) {
+          accept(serverSocket.accept(), writer);
+        }
+      } catch (SocketException e) {
+        if (!stop) {
+          throw e;
+        }
+      } finally {
+        flusher.interrupt();
+        closeForwardedConnections();
+      }
+      log.info("Recording into {} stopped", file);
+    } finally {
+      stopped.countDown();
+    }
+  }
+
+  /**
+   * Stops accepting connections and waits until the forwarded ones have been closed and the trace has been written.
+   */
+  @PreDestroy
+  public void stop() {
+    stop = true;
+    ServerSocket serverSocket = this.serverSocket;
+    if (serverSocket == null) {
+      return;
+    }
+    closeQuietly(serverSocket);
+    try {
+      stopped.await();
+    } catch (InterruptedException e) {
+      // The application is closed by the thread that has run the proxy, which means it's done
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Closes the sockets of all sessions and waits until their ends have been recorded. */
+  private void closeForwardedConnections() {
+    sockets.forEach(TraceRecordingProxy::closeQuietly);
+    try {
+      for (Thread forwarder : forwarders) {
+        forwarder.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void accept(Socket clientSocket, TraceWriter writer) {
+    int session = nextSession.incrementAndGet();
+    Socket serverSocket;
+    try {
+      serverSocket = new Socket(properties.getServerAddress(), properties.getServerPort());
+      sockets.add(clientSocket);
+      sockets.add(serverSocket);
+      writer.opened(session);
+    } catch (IOException e) {
+      log.warn("Session {} could not be forwarded", session, e);
+      closeQuietly(clientSocket);
+      return;
+    }
+    log.debug("Session {} opened by {}", session, clientSocket.getRemoteSocketAddress());
+
+    AtomicInteger openDirections = new AtomicInteger(2);
+    Runnable onDirectionClosed = () -> {
+      closeQuietly(clientSocket);
+      closeQuietly(serverSocket);
+      sockets.remove(clientSocket);
+      sockets.remove(serverSocket);
+      if (openDirections.decrementAndGet() == 0) {
+        try {
+          writer.closed(session);
+        } catch (IOException e) {
+          log.warn("End of session {} could not be recorded", session, e);
+        }
+        log.debug("Session {} closed", session);
+      }
+    };
+    startForwarder("trace-client-" + session,
+        () -> forward(clientSocket, serverSocket, session, TraceEvent.CLIENT_MESSAGE, writer, onDirectionClosed));
+    startForwarder("trace-server-" + session,
+        () -> forward(serverSocket, clientSocket, session, TraceEvent.SERVER_MESSAGE, writer, onDirectionClosed));
+  }
+
+  private void startForwarder(String name, Runnable forward) {
+    Thread forwarder = properties.getThreadingMode().newThread(name, () -> {
+      try {
+        forward.run();
+      } finally {
+        forwarders.remove(Thread.currentThread());
+      }
+    });
+    forwarders.add(forwarder);
+    forwarder.start();
+  }
+
+  private void forward(Socket from, Socket to, int session, TraceEvent event, TraceWriter writer, Runnable onClosed) {
+    FrameDecoder decoder = tcpClient.newDecoder(new CharBufferPool());
+    byte[] buffer = new byte[READ_BUFFER_SIZE];
+    try (InputStream inputStream = from.getInputStream()) {
+      OutputStream outputStream = to.getOutputStream();
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        outputStream.write(buffer, 0, read);
+        decoder.decode(ByteBuffer.wrap(buffer, 0, read), message -> {
+          try {
+            writer.message(session, event, message != null ? message : "");
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      }
+    } catch (IOException | UncheckedIOException e) {
+      log.debug("Session {} lost its {} side", session, event == TraceEvent.CLIENT_MESSAGE ? "client" : "server", e);
+    } finally {
+      onClosed.run();
+    }
+  }
+
+  private static void flushPeriodically(TraceWriter writer) {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        Thread.sleep(FLUSH_INTERVAL_MILLIS);
+        writer.flush();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      log.warn("Trace could not be flushed", e);
+    }
+  }
+
+  private static void closeQuietly(Closeable socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // Already closed
+    }
+  }
+}
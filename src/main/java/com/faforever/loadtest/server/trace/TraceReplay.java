@@ -0,0 +1,364 @@
+package com.faforever.loadtest.server.trace;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.ConnectionService;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.LatencyRecorder;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import com.faforever.loadtest.server.client.ServerConnection;
+import com.faforever.loadtest.server.client.ThinkBehavior;
+import com.faforever.loadtest.server.client.TrafficCounter;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.runner.Latency;
+import com.faforever.loadtest.server.runner.LoadProfile;
+import com.faforever.loadtest.server.runner.LoadTest;
+import com.faforever.loadtest.server.runner.Statistics;
+import com.google.common.base.Stopwatch;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays the client side of the sessions in {@link LoadTestProperties#getReplayTrace()} against the server: sessions
+ * are opened and closed and client messages are sent at the times they have been captured, divided by
+ * {@link LoadTestProperties#getReplaySpeed()}. Server messages of the trace are only counted, to compare them with
+ * what the server actually sends.
+ * <p>
+ * Connections are opened in the background, so a slow connect doesn't hold up the rest of the trace; messages of a
+ * session that is still connecting are sent once it's connected. The time from the traced open to the connection is
+ * reported as the latency of {@link Exchange#CONNECT}.
+ * <p>
+ * The trace is streamed by {@link TraceReader}, so its size is only limited by the disk. The number of clients follows
+ * the trace and can't be changed.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "loadtest", name = "role", havingValue = "replay")
+@Slf4j
+public class TraceReplay implements LoadTest {
+
+  private final ConnectionService connectionService;
+  private final TrafficCounter trafficCounter;
+  private final LatencyRecorder latencyRecorder;
+  private final LoadTestProperties properties;
+  private final LoadProfile loadProfile;
+  private final ExecutorService connectExecutor;
+  /** By ID of the session in the trace. */
+  private final Map<Integer, Session> sessions;
+  private final Map<Exchange, Histogram> totalLatencyHistograms;
+  private final AtomicInteger sentMessages;
+  private final AtomicInteger receivedMessages;
+  private final AtomicInteger tracedServerMessages;
+  /** Sessions opened and not yet closed at the current position of the trace. */
+  private final AtomicInteger tracedSessions;
+  private final Stopwatch stopwatch;
+
+  private volatile Thread replayThread;
+  private Statistics previousStatistics;
+
+  public TraceReplay(ConnectionService connectionService, TrafficCounter trafficCounter, LatencyRecorder latencyRecorder, LoadTestProperties properties) {
+    this.connectionService = connectionService;
+    this.trafficCounter = trafficCounter;
+    this.latencyRecorder = latencyRecorder;
+    this.properties = properties;
+    this.loadProfile = new LoadProfile(List.of(), 0);
+    this.connectExecutor = properties.getThreadingMode().newCachedExecutor("trace-connect-");
+    this.sessions = new ConcurrentHashMap<>();
+    this.totalLatencyHistograms = new EnumMap<>(Exchange.class);
+    for (Exchange exchange : Exchange.values()) {
+      totalLatencyHistograms.put(exchange, new Histogram(3));
+    }
+    this.sentMessages = new AtomicInteger();
+    this.receivedMessages = new AtomicInteger();
+    this.tracedServerMessages = new AtomicInteger();
+    this.tracedSessions = new AtomicInteger();
+    this.stopwatch = Stopwatch.createUnstarted();
+  }
+
+  @Override
+  public synchronized void start(String host, int port, ThinkBehavior thinkBehavior) {
+    if (replayThread != null) {
+      return;
+    }
+    sentMessages.set(0);
+    receivedMessages.set(0);
+    tracedServerMessages.set(0);
+    tracedSessions.set(0);
+    trafficCounter.reset();
+    latencyRecorder.reset();
+    totalLatencyHistograms.values().forEach(Histogram::reset);
+    previousStatistics = null;
+    stopwatch.reset().start();
+
+    Path trace = Path.of(properties.getReplayTrace());
+    InetSocketAddress serverAddress = new InetSocketAddress(host, port);
+    log.info("Replaying {} against {} at {}x speed", trace, serverAddress, properties.getReplaySpeed());
+    replayThread = properties.getThreadingMode().newThread("trace-replay", () -> replay(trace, serverAddress));
+    replayThread.start();
+  }
+
+  private void replay(Path trace, InetSocketAddress serverAddress) {
+    double nanosPerTracedMicro = 1000 / properties.getReplaySpeed();
+    long startNanos = System.nanoTime();
+    try (TraceReader reader = new TraceReader(trace)) {
+      while (!Thread.currentThread().isInterrupted() && reader.next()) {
+        long dueNanos = startNanos + (long) (reader.getTimestampMicros() * nanosPerTracedMicro);
+        long delayNanos = dueNanos - System.nanoTime();
+        if (delayNanos > 0) {
+          TimeUnit.NANOSECONDS.sleep(delayNanos);
+        }
+        int session = reader.getSession();
+        switch (reader.getEvent()) {
+          case OPENED:
+            tracedSessions.incrementAndGet();
+            open(serverAddress, session, dueNanos);
+            break;
+          case CLIENT_MESSAGE:
+            send(session, reader.getMessage());
+            break;
+          case SERVER_MESSAGE:
+            tracedServerMessages.incrementAndGet();
+            break;
+          case CLOSED:
+            tracedSessions.decrementAndGet();
+            close(session);
+            break;
+          default:
+            throw new IllegalStateException("Uncovered event: " + reader.getEvent());
+        }
+      }
+      log.info("Replay of {} finished", trace);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      log.warn("Trace {} could not be replayed", trace, e);
+    } finally {
+      sessions.keySet().forEach(this::close);
+    }
+  }
+
+  private void open(InetSocketAddress serverAddress, int id, long dueNanos) {
+    Session session = new Session(id);
+    sessions.put(id, session);
+    connectExecutor.execute(() -> connect(serverAddress, session, dueNanos));
+  }
+
+  private void connect(InetSocketAddress serverAddress, Session session, long dueNanos) {
+    ServerConnection connection;
+    try {
+      connection = connectionService.connect(serverAddress, session.id, new ServerConnection.Listener() {
+        @Override
+        public void onMessage(CharBuffer message) {
+          receivedMessages.incrementAndGet();
+        }
+
+        @Override
+        public void onConnectionLost(IOException e) {
+          sessions.remove(session.id, session);
+        }
+      });
+    } catch (IOException e) {
+      log.debug("Session {} could not be opened", session.id, e);
+      sessions.remove(session.id, session);
+      return;
+    }
+    latencyRecorder.record(Exchange.CONNECT, dueNanos);
+    session.connected(connection);
+  }
+
+  private void send(int id, CharBuffer message) {
+    Session session = sessions.get(id);
+    if (session != null) {
+      session.send(message);
+    }
+  }
+
+  private void close(int id) {
+    Session session = sessions.remove(id);
+    if (session != null) {
+      session.close();
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (replayThread == null) {
+      return;
+    }
+    replayThread.interrupt();
+    try {
+      replayThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    replayThread = null;
+    stopwatch.stop();
+    log.info("Replay stopped, the trace expected {} server messages, {} have been received",
+        tracedServerMessages.get(), receivedMessages.get());
+  }
+
+  @Override
+  public void setNumberOfClients(int numberOfClients) {
+    // Given by the trace
+  }
+
+  @Override
+  public synchronized Statistics getStatistics() {
+    int elapsedMillis = (int) stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    int sentMessages = this.sentMessages.get();
+    int receivedMessages = this.receivedMessages.get();
+    float incomingMessagesRate = 0;
+    float outgoingMessagesRate = 0;
+    List<MessageTraffic> messageTraffic = trafficCounter.snapshot();
+    long socketWrites = trafficCounter.getSocketWrites();
+    float socketWritesRate = 0;
+    if (previousStatistics != null) {
+      int millisSinceLastStatistics = Math.max(elapsedMillis - previousStatistics.getElapsedMillis(), 1);
+      incomingMessagesRate = (receivedMessages - previousStatistics.getReceivedMessages()) * 1000f / millisSinceLastStatistics;
+      outgoingMessagesRate = (sentMessages - previousStatistics.getSentMessages()) * 1000f / millisSinceLastStatistics;
+      MessageTraffic.computeRates(messageTraffic, previousStatistics.getMessageTraffic(), millisSinceLastStatistics);
+      socketWritesRate = (socketWrites - previousStatistics.getSocketWrites()) * 1000f / millisSinceLastStatistics;
+    }
+
+    Map<ClientSimulator.State, Integer> clientStates = new EnumMap<>(ClientSimulator.State.class);
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      clientStates.put(state, 0);
+    }
+    int connecting = 0;
+    int connected = 0;
+    for (Session session : sessions.values()) {
+      if (session.connection != null) {
+        connected++;
+      } else {
+        connecting++;
+      }
+    }
+    clientStates.put(ClientSimulator.State.CONNECTING, connecting);
+    clientStates.put(ClientSimulator.State.CONNECTED, connected);
+    clientStates.put(ClientSimulator.State.DISCONNECTED, Math.max(tracedSessions.get() - connecting - connected, 0));
+
+    Map<Exchange, Latency> latencies = new EnumMap<>(Exchange.class);
+    Map<Exchange, Latency> totalLatencies = new EnumMap<>(Exchange.class);
+    Map<Exchange, Histogram> latencyHistograms = new EnumMap<>(Exchange.class);
+    latencyRecorder.getIntervalHistograms().forEach((exchange, histogram) -> {
+      Histogram totalHistogram = totalLatencyHistograms.get(exchange);
+      totalHistogram.add(histogram);
+      latencyHistograms.put(exchange, histogram.copy());
+      latencies.put(exchange, Latency.of(histogram));
+      totalLatencies.put(exchange, Latency.of(totalHistogram));
+    });
+
+    long usedHeapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    previousStatistics = Statistics.builder()
+        .elapsedMillis(elapsedMillis)
+        .sentMessages(sentMessages)
+        .receivedMessages(receivedMessages)
+        .clientStates(clientStates)
+        .incomingMessagesRate(incomingMessagesRate)
+        .outgoingMessagesRate(outgoingMessagesRate)
+        .usedHeapBytes(usedHeapBytes)
+        .allocatedBytes(-1)
+        .latencies(latencies)
+        .totalLatencies(totalLatencies)
+        .targetClients(tracedSessions.get())
+        .messageTraffic(messageTraffic)
+        .socketWrites(socketWrites)
+        .socketWritesRate(socketWritesRate)
+        .latencyHistograms(latencyHistograms)
+        .build();
+    return previousStatistics;
+  }
+
+  @Override
+  public LoadProfile getLoadProfile() {
+    return loadProfile;
+  }
+
+  /** Returns {@code 0}, since a replay doesn't draw random numbers. */
+  @Override
+  public long getRandomSeed() {
+    return 0;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    connectExecutor.shutdownNow();
+  }
+
+  /**
+   * A session of the trace, whose connection is opened in the background. Messages sent until it's open are kept and
+   * sent once it is, so they're copied since the reader's buffer is reused.
+   */
+  private final class Session {
+
+    private final int id;
+    private List<String> pendingMessages;
+    private volatile ServerConnection connection;
+    private boolean closed;
+
+    private Session(int id) {
+      this.id = id;
+      this.pendingMessages = new ArrayList<>();
+    }
+
+    private synchronized void connected(ServerConnection connection) {
+      if (closed) {
+        connection.close();
+        return;
+      }
+      this.connection = connection;
+      connection.start();
+      try {
+        for (String message : pendingMessages) {
+          connection.write(message);
+        }
+        connection.flush();
+        sentMessages.addAndGet(pendingMessages.size());
+      } catch (IOException e) {
+        log.debug("Messages of session {} could not be sent", id, e);
+        TraceReplay.this.close(id);
+      }
+      pendingMessages = null;
+    }
+
+    private synchronized void send(CharBuffer message) {
+      if (connection == null) {
+        pendingMessages.add(message.toString());
+        return;
+      }
+      try {
+        connection.write(message);
+        // Traced messages are replayed at their own time, so they aren't batched
+        connection.flush();
+        sentMessages.incrementAndGet();
+      } catch (IOException e) {
+        log.debug("Message of session {} could not be sent", id, e);
+        TraceReplay.this.close(id);
+      }
+    }
+
+    private synchronized void close() {
+      closed = true;
+      if (connection != null) {
+        connection.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.faforever.loadtest.server.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends records in the {@link TraceFormat} to a new file. Timestamps are taken when a record is written, relative to
+ * the creation of the writer. Thread-safe, so all sessions of a capture can share one writer and one file.
+ */
+public class TraceWriter implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final DataOutputStream out;
+  private final long startNanos;
+
+  public TraceWriter(Path file) throws IOException {
+    out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE_NEW), BUFFER_SIZE));
+    out.write(TraceFormat.MAGIC);
+    out.writeByte(TraceFormat.VERSION);
+    startNanos = System.nanoTime();
+  }
+
+  public synchronized void opened(int session) throws IOException {
+    writeHeader(session, TraceEvent.OPENED);
+  }
+
+  /**
+   * @param event {@link TraceEvent#CLIENT_MESSAGE} or {@link TraceEvent#SERVER_MESSAGE}
+   */
+  public synchronized void message(int session, TraceEvent event, CharSequence message) throws IOException {
+    writeHeader(session, event);
+    int stringSize = message.length() * 2;
+    out.writeInt(stringSize + 4);
+    out.writeInt(stringSize);
+    for (int i = 0; i < message.length(); i++) {
+      out.writeChar(message.charAt(i));
+    }
+  }
+
+  public synchronized void closed(int session) throws IOException {
+    writeHeader(session, TraceEvent.CLOSED);
+  }
+
+  private void writeHeader(int session, TraceEvent event) throws IOException {
+    out.writeLong((System.nanoTime() - startNanos) / 1000);
+    out.writeInt(session);
+    out.writeByte(event.ordinal());
+  }
+
+  public synchronized void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+}
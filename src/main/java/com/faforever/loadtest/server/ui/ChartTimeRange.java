@@ -0,0 +1,30 @@
+package com.faforever.loadtest.server.ui;
+
+/**
+ * The time ranges the charts can be zoomed to, counted back from the latest sample.
+ */
+public enum ChartTimeRange {
+  LAST_5_MINUTES("Last 5 minutes", 5 * 60),
+  LAST_15_MINUTES("Last 15 minutes", 15 * 60),
+  LAST_HOUR("Last hour", 60 * 60),
+  LAST_6_HOURS("Last 6 hours", 6 * 60 * 60),
+  ALL("All", Integer.MAX_VALUE);
+
+  private final String label;
+  private final int seconds;
+
+  ChartTimeRange(String label, int seconds) {
+    this.label = label;
+    this.seconds = seconds;
+  }
+
+  /** Returns the first second shown if the latest sample is at {@code latestSecond}. */
+  public int getFromSecond(int latestSecond) {
+    return seconds == Integer.MAX_VALUE ? Integer.MIN_VALUE : latestSecond - seconds;
+  }
+
+  @Override
+  public String toString() {
+    return label;
+  }
+}
@@ -0,0 +1,32 @@
+package com.faforever.loadtest.server.ui;
+
+import javafx.application.Application;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import org.springframework.context.ApplicationContext;
+
+public class FxApplication extends Application {
+
+  private static ApplicationContext applicationContext;
+
+  public static void launch(ApplicationContext applicationContext, String[] args) {
+    FxApplication.applicationContext = applicationContext;
+    launch(FxApplication.class, args);
+  }
+
+  @Override
+  public void start(Stage primaryStage) throws Exception {
+    UiService uiService = applicationContext.getBean(UiService.class);
+
+    MainController mainController = uiService.loadFxml("/main.fxml");
+    Scene scene = new Scene(mainController.getRoot());
+    scene.getStylesheets().setAll(getClass().getResource("/style.css").toExternalForm());
+    primaryStage.setScene(scene);
+    primaryStage.showingProperty().addListener((observable, oldValue, newValue) -> {
+      if (!newValue) {
+        mainController.onStopButtonClicked();
+      }
+    });
+    primaryStage.show();
+  }
+}
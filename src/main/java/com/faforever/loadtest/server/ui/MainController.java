@@ -1,14 +1,24 @@
 package com.faforever.loadtest.server.ui;
 
 import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.MessageTraffic;
 import com.faforever.loadtest.server.client.ThinkBehavior;
 import com.faforever.loadtest.server.config.LoadTestProperties;
-import com.faforever.loadtest.server.runner.LoadTestRunner;
+import com.faforever.loadtest.server.metrics.PrometheusExporter;
+import com.faforever.loadtest.server.recording.StatisticsReader;
+import com.faforever.loadtest.server.recording.StatisticsRecorder;
+import com.faforever.loadtest.server.runner.Latency;
+import com.faforever.loadtest.server.runner.LoadTest;
 import com.faforever.loadtest.server.runner.Statistics;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.beans.Observable;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.StackedAreaChart;
 import javafx.scene.chart.XYChart;
@@ -16,23 +26,47 @@ import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.Pane;
+import javafx.stage.FileChooser;
 import javafx.util.Duration;
 import javafx.util.converter.NumberStringConverter;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.MessageFormat;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
+@ConditionalOnProperty(prefix = "loadtest", name = "headless", havingValue = "false", matchIfMissing = true)
 @Component
 @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+@Slf4j
 public class MainController implements Controller<Pane> {
 
+  /** Number of samples of a recording shown at most. */
+  private static final int MAX_REPLAY_SAMPLES = 1000;
+  /** Number of samples kept per chart series, a day of samples taken every second. */
+  private static final int CHART_BUFFER_CAPACITY = 24 * 60 * 60;
+  /** Number of points shown at most per chart series, about one per few pixels of chart width. */
+  private static final int MAX_CHART_POINTS = 500;
 
   private static final NumberStringConverter INT_STRING_CONVERTER = new NumberStringConverter() {
     @Override
@@ -40,8 +74,14 @@ public class MainController implements Controller<Pane> {
       return String.valueOf(value.intValue());
     }
   };
-  private final LoadTestRunner loadTestRunner;
+  private final LoadTest loadTest;
   private final LoadTestProperties properties;
+  private final StatisticsRecorder statisticsRecorder;
+  private final PrometheusExporter prometheusExporter;
+  private final Map<ClientSimulator.State, TimeSeriesBuffer> clientStateBuffers;
+  private final Map<Exchange, TimeSeriesBuffer> latencyBuffers;
+  private final TimeSeriesBuffer incomingRateBuffer;
+  private final TimeSeriesBuffer outgoingRateBuffer;
 
   public Pane mainRoot;
   public Button startButton;
@@ -50,20 +90,41 @@ public class MainController implements Controller<Pane> {
   public Label receivedMessagesLabel;
   public StackedAreaChart<Number, Number> clientStatesChart;
   public LineChart<Number, Number> performanceChart;
+  public LineChart<Number, Number> latencyChart;
   public ComboBox<ThinkBehavior> thinkBehaviorBox;
   public TextField hostField;
   public TextField portField;
   public TextField numberOfSecondsField;
   public Label createdGamesLabel;
+  public Label usedHeapLabel;
   public Slider numberOfClientsSlider;
   public TextField numberOfClientsField;
+  public Button openRecordingButton;
+  public ComboBox<ChartTimeRange> timeRangeBox;
+  public TableView<MessageTraffic> messageTrafficTable;
 
+  private final ObservableList<MessageTraffic> messageTraffic;
+  private int latestSecond;
   private Timeline updateTimeline;
   private Timeline terminateTimeline;
 
-  public MainController(LoadTestRunner loadTestRunner, LoadTestProperties properties) {
-    this.loadTestRunner = loadTestRunner;
+  public MainController(LoadTest loadTest, LoadTestProperties properties, StatisticsRecorder statisticsRecorder, PrometheusExporter prometheusExporter) {
+    this.loadTest = loadTest;
     this.properties = properties;
+    this.statisticsRecorder = statisticsRecorder;
+    this.prometheusExporter = prometheusExporter;
+
+    clientStateBuffers = new EnumMap<>(ClientSimulator.State.class);
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      clientStateBuffers.put(state, new TimeSeriesBuffer(CHART_BUFFER_CAPACITY));
+    }
+    latencyBuffers = new EnumMap<>(Exchange.class);
+    for (Exchange exchange : Exchange.values()) {
+      latencyBuffers.put(exchange, new TimeSeriesBuffer(CHART_BUFFER_CAPACITY));
+    }
+    incomingRateBuffer = new TimeSeriesBuffer(CHART_BUFFER_CAPACITY);
+    outgoingRateBuffer = new TimeSeriesBuffer(CHART_BUFFER_CAPACITY);
+    messageTraffic = FXCollections.observableArrayList();
   }
 
   @Override
@@ -79,6 +140,7 @@ public class MainController implements Controller<Pane> {
     portField.disableProperty().bind(stopButton.visibleProperty());
     numberOfSecondsField.disableProperty().bind(stopButton.visibleProperty());
     thinkBehaviorBox.disableProperty().bind(stopButton.visibleProperty());
+    openRecordingButton.disableProperty().bind(stopButton.visibleProperty());
 
     stopButton.visibleProperty().bind(startButton.visibleProperty().not());
 
@@ -87,6 +149,9 @@ public class MainController implements Controller<Pane> {
 
     numberOfClientsField.textProperty().bindBidirectional(numberOfClientsSlider.valueProperty(), INT_STRING_CONVERTER);
     numberOfClientsSlider.setValue(properties.getNumberOfClients());
+    // The load profile decides the number of clients
+    numberOfClientsSlider.setDisable(!loadTest.getLoadProfile().isEmpty());
+    numberOfClientsField.setDisable(!loadTest.getLoadProfile().isEmpty());
 
     updateTimeline = new Timeline(
         new KeyFrame(Duration.ZERO, event -> update()),
@@ -100,68 +165,167 @@ public class MainController implements Controller<Pane> {
 
     thinkBehaviorBox.getItems().setAll(ThinkBehavior.values());
     thinkBehaviorBox.getSelectionModel().select(properties.getThinkBehavior());
+
+    timeRangeBox.getItems().setAll(ChartTimeRange.values());
+    timeRangeBox.setValue(ChartTimeRange.LAST_15_MINUTES);
+    timeRangeBox.valueProperty().addListener(observable -> renderCharts());
+
+    initializeMessageTrafficTable();
+    clearCharts();
+  }
+
+  /**
+   * Sets up the table of messages and bytes per direction and command, sorted by wire bytes per second by default. The
+   * sort order the user chooses is kept when the rows are replaced.
+   */
+  private void initializeMessageTrafficTable() {
+    messageTrafficTable.getColumns().add(column("Direction", MessageTraffic::getDirection, null));
+    messageTrafficTable.getColumns().add(column("Command", MessageTraffic::getCommand, null));
+    messageTrafficTable.getColumns().add(column("Messages/s", MessageTraffic::getMessagesRate, "%,.1f"));
+    TableColumn<MessageTraffic, Float> wireBytesRateColumn = column("Wire B/s", MessageTraffic::getWireBytesRate, "%,.0f");
+    messageTrafficTable.getColumns().add(wireBytesRateColumn);
+    messageTrafficTable.getColumns().add(column("Payload B/s", MessageTraffic::getPayloadBytesRate, "%,.0f"));
+    messageTrafficTable.getColumns().add(column("Messages", MessageTraffic::getMessages, "%,d"));
+    messageTrafficTable.getColumns().add(column("Wire bytes", MessageTraffic::getWireBytes, "%,d"));
+
+    SortedList<MessageTraffic> sortedMessageTraffic = new SortedList<>(messageTraffic);
+    sortedMessageTraffic.comparatorProperty().bind(messageTrafficTable.comparatorProperty());
+    messageTrafficTable.setItems(sortedMessageTraffic);
+    wireBytesRateColumn.setSortType(TableColumn.SortType.DESCENDING);
+    messageTrafficTable.getSortOrder().add(wireBytesRateColumn);
+  }
+
+  /**
+   * @param format the format of the values, or {@code null} to show them as they are
+   */
+  private static <T extends Comparable<T>> TableColumn<MessageTraffic, T> column(String title, Function<MessageTraffic, T> value, String format) {
+    TableColumn<MessageTraffic, T> column = new TableColumn<>(title);
+    column.setCellValueFactory(features -> new ReadOnlyObjectWrapper<>(value.apply(features.getValue())));
+    if (format != null) {
+      column.setCellFactory(tableColumn -> new TableCell<>() {
+        @Override
+        protected void updateItem(T item, boolean empty) {
+          super.updateItem(item, empty);
+          setText(empty || item == null ? null : String.format(format, item));
+        }
+      });
+      column.setStyle("-fx-alignment: CENTER-RIGHT;");
+    }
+    return column;
   }
 
   private void onNumberOfClientsChanged(Observable observable) {
-    loadTestRunner.setNumberOfClients((int) numberOfClientsSlider.getValue());
+    loadTest.setNumberOfClients((int) numberOfClientsSlider.getValue());
   }
 
   private void update() {
-    Statistics statistics = loadTestRunner.getStatistics();
+    Statistics statistics = loadTest.getStatistics();
+    statisticsRecorder.record(statistics);
+    prometheusExporter.publish(statistics);
+    show(statistics);
+  }
 
-    updateClientStateChart(statistics);
-    updatePerformanceChart(statistics);
+  private void show(Statistics statistics) {
+    addToCharts(statistics);
+    renderCharts();
 
     sentMessagesLabel.setText(MessageFormat.format("{0}", statistics.getSentMessages()));
     receivedMessagesLabel.setText(MessageFormat.format("{0}", statistics.getReceivedMessages()));
     createdGamesLabel.setText(MessageFormat.format("{0}", statistics.getCreatedGames()));
+    usedHeapLabel.setText(MessageFormat.format("{0}", statistics.getUsedHeapBytes() / (1024 * 1024)));
+    messageTraffic.setAll(statistics.getMessageTraffic());
   }
 
-  @SuppressWarnings("unchecked")
-  private void updatePerformanceChart(Statistics statistics) {
-    ObservableList<XYChart.Series<Number, Number>> chartData = performanceChart.getData();
+  /**
+   * Adds a sample to the buffers of the charts and updates the series names, without touching the chart data.
+   */
+  private void addToCharts(Statistics statistics) {
+    int elapsedSeconds = statistics.getElapsedMillis() / 1000;
+    latestSecond = elapsedSeconds;
 
-    if (chartData.isEmpty()) {
-      XYChart.Series<Number, Number> incomingMessageRateSeries = new XYChart.Series<>();
-      incomingMessageRateSeries.setName("Incoming");
+    Map<ClientSimulator.State, Integer> clientStates = statistics.getClientStates();
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      int count = clientStates.getOrDefault(state, 0);
+      clientStatesChart.getData().get(state.ordinal()).setName(String.format("%s (%d)", state, count));
+      clientStateBuffers.get(state).add(elapsedSeconds, count);
+    }
 
-      XYChart.Series<Number, Number> outgoingMessageRateSeries = new XYChart.Series<>();
-      outgoingMessageRateSeries.setName("Outgoing");
+    incomingRateBuffer.add(elapsedSeconds, statistics.getIncomingMessagesRate());
+    outgoingRateBuffer.add(elapsedSeconds, statistics.getOutgoingMessagesRate());
 
-      chartData.addAll(incomingMessageRateSeries, outgoingMessageRateSeries);
+    for (Exchange exchange : Exchange.values()) {
+      Latency total = statistics.getTotalLatencies().get(exchange);
+      latencyChart.getData().get(exchange.ordinal()).setName(String.format(
+          "%s (p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f)", exchange, total.getP50Millis(),
+          total.getP90Millis(), total.getP99Millis(), total.getP999Millis(), total.getMaxMillis()));
+
+      Latency latency = statistics.getLatencies().get(exchange);
+      if (latency.getCount() > 0) {
+        latencyBuffers.get(exchange).add(elapsedSeconds, latency.getP99Millis());
+      }
     }
+  }
 
-    int elapsedSeconds = statistics.getElapsedMillis() / 1000;
-    chartData.get(0).getData().add(new XYChart.Data<>(elapsedSeconds, statistics.getIncomingMessagesRate()));
-    chartData.get(1).getData().add(new XYChart.Data<>(elapsedSeconds, statistics.getOutgoingMessagesRate()));
+  /**
+   * Replaces the chart data with at most {@link #MAX_CHART_POINTS} points per series of the selected time range.
+   * Client states are averaged per bucket so that the stacked series stay aligned and add up; lines are downsampled
+   * with LTTB so that spikes remain visible.
+   */
+  private void renderCharts() {
+    int fromSecond = timeRangeBox.getValue().getFromSecond(latestSecond);
+
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      clientStatesChart.getData().get(state.ordinal()).getData()
+          .setAll(clientStateBuffers.get(state).bucketAverages(fromSecond, MAX_CHART_POINTS));
+    }
+
+    performanceChart.getData().get(0).getData()
+        .setAll(incomingRateBuffer.largestTriangleThreeBuckets(fromSecond, MAX_CHART_POINTS));
+    performanceChart.getData().get(1).getData()
+        .setAll(outgoingRateBuffer.largestTriangleThreeBuckets(fromSecond, MAX_CHART_POINTS));
+
+    for (Exchange exchange : Exchange.values()) {
+      latencyChart.getData().get(exchange.ordinal()).getData()
+          .setAll(latencyBuffers.get(exchange).largestTriangleThreeBuckets(fromSecond, MAX_CHART_POINTS));
+    }
   }
 
-  private void updateClientStateChart(Statistics statistics) {
-    synchronized (statistics.getClientStates()) {
-      Map<ClientSimulator.State, Integer> clientStates = statistics.getClientStates();
-      ObservableList<XYChart.Series<Number, Number>> chartData = clientStatesChart.getData();
-      for (ClientSimulator.State state : ClientSimulator.State.values()) {
-        chartData.get(state.ordinal()).setName(String.format("%s (%d)", state, clientStates.get(state)));
-        int elapsedSeconds = statistics.getElapsedMillis() / 1000;
-        ObservableList<XYChart.Data<Number, Number>> seriesData = chartData.get(state.ordinal()).getData();
-        XYChart.Data<Number, Number> data = new XYChart.Data<>(elapsedSeconds, clientStates.get(state), state);
-        seriesData.add(data);
-      }
+  private void clearCharts() {
+    latestSecond = 0;
+    messageTraffic.clear();
+    clientStateBuffers.values().forEach(TimeSeriesBuffer::clear);
+    latencyBuffers.values().forEach(TimeSeriesBuffer::clear);
+    incomingRateBuffer.clear();
+    outgoingRateBuffer.clear();
+
+    ObservableList<XYChart.Series<Number, Number>> clientStatesData = clientStatesChart.getData();
+    clientStatesData.clear();
+    for (ClientSimulator.State state : ClientSimulator.State.values()) {
+      XYChart.Series<Number, Number> series = new XYChart.Series<>();
+      series.setName(String.format("%s (0)", state));
+      clientStatesData.add(series);
+    }
+
+    XYChart.Series<Number, Number> incomingMessageRateSeries = new XYChart.Series<>();
+    incomingMessageRateSeries.setName("Incoming");
+    XYChart.Series<Number, Number> outgoingMessageRateSeries = new XYChart.Series<>();
+    outgoingMessageRateSeries.setName("Outgoing");
+    performanceChart.getData().setAll(List.of(incomingMessageRateSeries, outgoingMessageRateSeries));
+
+    ObservableList<XYChart.Series<Number, Number>> latencyData = latencyChart.getData();
+    latencyData.clear();
+    for (Exchange exchange : Exchange.values()) {
+      XYChart.Series<Number, Number> series = new XYChart.Series<>();
+      series.setName(exchange.toString());
+      latencyData.add(series);
     }
   }
 
   public void onStartButtonClicked() {
-    clientStatesChart.getData().clear();
-    ObservableList<XYChart.Series<Number, Number>> chartData = clientStatesChart.getData();
-    Arrays.stream(ClientSimulator.State.values())
-        .forEach(state -> {
-          XYChart.Series<Number, Number> series = new XYChart.Series<>();
-          series.setName(String.format("%s (0)", state));
-          chartData.add(series);
-        });
-
-    performanceChart.getData().clear();
-    loadTestRunner.start(
+    clearCharts();
+    statisticsRecorder.start();
+    prometheusExporter.reset();
+    loadTest.start(
         hostField.getText(),
         Integer.parseInt(portField.getText()),
         thinkBehaviorBox.getValue()
@@ -181,7 +345,48 @@ public class MainController implements Controller<Pane> {
   public void onStopButtonClicked() {
     Optional.ofNullable(terminateTimeline).ifPresent(Timeline::stop);
     Optional.ofNullable(updateTimeline).ifPresent(Timeline::stop);
-    Optional.ofNullable(loadTestRunner).ifPresent(LoadTestRunner::stop);
+    Optional.ofNullable(loadTest).ifPresent(LoadTest::stop);
+    statisticsRecorder.stop();
     startButton.setVisible(true);
   }
+
+  /**
+   * Shows a recorded run in the charts. The recording is read in the background and reduced to a bounded number of
+   * samples, so that even long runs don't create more chart data than the screen can show.
+   */
+  public void onOpenRecordingButtonClicked() {
+    FileChooser fileChooser = new FileChooser();
+    fileChooser.setTitle("Open recording");
+    fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Statistics recordings", "*.stats"));
+    Path recordingDirectory = Paths.get(properties.getRecordingDirectory());
+    if (Files.isDirectory(recordingDirectory)) {
+      fileChooser.setInitialDirectory(recordingDirectory.toFile());
+    }
+    File file = fileChooser.showOpenDialog(mainRoot.getScene().getWindow());
+    if (file == null) {
+      return;
+    }
+
+    clearCharts();
+    CompletableFuture.supplyAsync(() -> {
+      List<Statistics> samples = new ArrayList<>();
+      try {
+        StatisticsReader.read(file.toPath(), MAX_REPLAY_SAMPLES, samples::add);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return samples;
+    }).whenComplete((samples, throwable) -> Platform.runLater(() -> {
+      if (throwable != null) {
+        log.warn("Recording {} could not be read", file, throwable);
+        return;
+      }
+      if (samples.isEmpty()) {
+        return;
+      }
+      timeRangeBox.setValue(ChartTimeRange.ALL);
+      samples.subList(0, samples.size() - 1).forEach(this::addToCharts);
+      show(samples.get(samples.size() - 1));
+    }));
+  }
 }
@@ -0,0 +1,157 @@
+package com.faforever.loadtest.server.ui;
+
+import javafx.scene.chart.XYChart;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The points of a chart series in a ring buffer of fixed capacity, from which a bounded number of points is taken for
+ * display. This way, the cost of a chart depends on its width rather than on how long a test has been running.
+ * Points must be added in order of their x values.
+ */
+class TimeSeriesBuffer {
+
+  private final int[] xs;
+  private final float[] ys;
+  /** Index of the oldest point. */
+  private int head;
+  private int size;
+
+  TimeSeriesBuffer(int capacity) {
+    xs = new int[capacity];
+    ys = new float[capacity];
+  }
+
+  void add(int x, float y) {
+    int index = (head + size) % xs.length;
+    xs[index] = x;
+    ys[index] = y;
+    if (size < xs.length) {
+      size++;
+    } else {
+      head = (head + 1) % xs.length;
+    }
+  }
+
+  void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  int getX(int index) {
+    return xs[(head + index) % xs.length];
+  }
+
+  float getY(int index) {
+    return ys[(head + index) % ys.length];
+  }
+
+  /** Returns the index of the first point with an x value of at least {@code x}, or {@link #size()}. */
+  int indexOf(int x) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (getX(middle) < x) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns at most {@code maxPoints} points from {@code fromX} on, selected with the Largest-Triangle-Three-Buckets
+   * algorithm, which keeps the points that shape the line, e.g. spikes, rather than averaging them away.
+   */
+  List<XYChart.Data<Number, Number>> largestTriangleThreeBuckets(int fromX, int maxPoints) {
+    int start = indexOf(fromX);
+    int count = size - start;
+    if (count <= maxPoints || maxPoints < 3) {
+      return points(start, count);
+    }
+
+    List<XYChart.Data<Number, Number>> points = new ArrayList<>(maxPoints);
+    double bucketSize = (double) (count - 2) / (maxPoints - 2);
+    int selected = start;
+    points.add(point(selected));
+
+    for (int bucket = 0; bucket < maxPoints - 2; bucket++) {
+      int bucketStart = start + 1 + (int) (bucket * bucketSize);
+      int bucketEnd = start + 1 + (int) ((bucket + 1) * bucketSize);
+
+      // The average of the next bucket is the third point of the triangles
+      int nextStart = bucketEnd;
+      int nextEnd = Math.min(start + 1 + (int) ((bucket + 2) * bucketSize), size);
+      double averageX = 0;
+      double averageY = 0;
+      for (int i = nextStart; i < nextEnd; i++) {
+        averageX += getX(i);
+        averageY += getY(i);
+      }
+      int nextCount = Math.max(nextEnd - nextStart, 1);
+      averageX /= nextCount;
+      averageY /= nextCount;
+
+      double selectedX = getX(selected);
+      double selectedY = getY(selected);
+      double maxArea = -1;
+      int next = bucketStart;
+      for (int i = bucketStart; i < bucketEnd; i++) {
+        double area = Math.abs((selectedX - averageX) * (getY(i) - selectedY) - (selectedX - getX(i)) * (averageY - selectedY));
+        if (area > maxArea) {
+          maxArea = area;
+          next = i;
+        }
+      }
+      selected = next;
+      points.add(point(selected));
+    }
+
+    points.add(point(size - 1));
+    return points;
+  }
+
+  /**
+   * Returns at most {@code maxPoints} points from {@code fromX} on, each the average of a bucket of consecutive points
+   * at the x value of the bucket's last point. Buffers with points at the same x values yield points at the same x
+   * values, as needed by stacked charts.
+   */
+  List<XYChart.Data<Number, Number>> bucketAverages(int fromX, int maxPoints) {
+    int start = indexOf(fromX);
+    int count = size - start;
+    if (count <= maxPoints) {
+      return points(start, count);
+    }
+
+    List<XYChart.Data<Number, Number>> points = new ArrayList<>(maxPoints);
+    for (int bucket = 0; bucket < maxPoints; bucket++) {
+      int bucketStart = start + (int) ((long) bucket * count / maxPoints);
+      int bucketEnd = start + (int) ((long) (bucket + 1) * count / maxPoints);
+      double sum = 0;
+      for (int i = bucketStart; i < bucketEnd; i++) {
+        sum += getY(i);
+      }
+      points.add(new XYChart.Data<>(getX(bucketEnd - 1), sum / (bucketEnd - bucketStart)));
+    }
+    return points;
+  }
+
+  private List<XYChart.Data<Number, Number>> points(int start, int count) {
+    List<XYChart.Data<Number, Number>> points = new ArrayList<>(count);
+    for (int i = start; i < start + count; i++) {
+      points.add(point(i));
+    }
+    return points;
+  }
+
+  private XYChart.Data<Number, Number> point(int index) {
+    return new XYChart.Data<>(getX(index), getY(index));
+  }
+}
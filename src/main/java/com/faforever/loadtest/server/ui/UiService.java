@@ -2,10 +2,12 @@ package com.faforever.loadtest.server.ui;
 
 import javafx.fxml.FXMLLoader;
 import lombok.SneakyThrows;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+@ConditionalOnProperty(prefix = "loadtest", name = "headless", havingValue = "false", matchIfMissing = true)
 @Lazy
 @Service
 public class UiService {
@@ -0,0 +1,181 @@
+package com.faforever.loadtest.server.client;
+
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.scenario.ScenarioLoader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClientSimulatorTest {
+
+  private static final long TIMEOUT_MILLIS = 5_000;
+
+  private LoadTestProperties properties;
+  private ObjectMapper objectMapper;
+  private RecordingTimer timer;
+  private ConnectThrottle connectThrottle;
+
+  @Before
+  public void setUp() {
+    // Without heartbeats, only the client's own tasks are scheduled
+    properties = new LoadTestProperties()
+        .setScenario("multiplayer")
+        .setHeartbeatIntervalMillis(0);
+    objectMapper = new ObjectMapper();
+    timer = new RecordingTimer(properties);
+    connectThrottle = new ConnectThrottle(properties);
+  }
+
+  @After
+  public void tearDown() {
+    connectThrottle.shutdown();
+    timer.shutdown();
+  }
+
+  @Test
+  public void sameSeedDrawsSameScheduleWhateverChancesAreDrawn() throws Exception {
+    List<Long> schedule = playUntilHostLobby(0);
+
+    assertEquals(2, schedule.size());
+    assertEquals(schedule, playUntilHostLobby(0));
+    // Games announced to the idle client are joined by chance, which must not shift the think times
+    assertEquals(schedule, playUntilHostLobby(50));
+  }
+
+  /**
+   * Logs a client in, announces closed games to it while it's idle, then lets it host a game.
+   *
+   * @return the delays of the scheduled tasks, in order
+   */
+  private List<Long> playUntilHostLobby(int announcedGames) throws Exception {
+    timer.delays.clear();
+    timer.tasks.clear();
+    ClientSimulator client = newClient();
+    client.connect();
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (client.getState() != ClientSimulator.State.INITIATING_SESSION && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+
+    receive(client, "{\"command\": \"session\", \"session\": 1}");
+    receive(client, "{\"command\": \"welcome\", \"id\": 1}");
+    for (int i = 0; i < announcedGames; i++) {
+      receive(client, "{\"command\": \"game_info\", \"uid\": " + (100 + i) + ", \"state\": \"closed\"}");
+    }
+    // The timed transition of the idle state, which hosts a game
+    timer.tasks.get(0).run();
+    receive(client, "{\"command\": \"game_launch\", \"uid\": 7}");
+
+    assertEquals(ClientSimulator.State.GAME_LOBBY, client.getState());
+    client.stop();
+    return new ArrayList<>(timer.delays);
+  }
+
+  private ClientSimulator newClient() throws IOException {
+    ConnectionService connectionService = new ConnectionService(new FafLegacyTcpClient(), properties, new TrafficCounter()) {
+      @Override
+      public ServerConnection connect(InetSocketAddress serverAddress, int clientId, ServerConnection.Listener listener) {
+        return new DiscardingConnection();
+      }
+    };
+    return new ClientSimulator(connectionService, connectThrottle, new HeartbeatScheduler(properties, timer), timer,
+        objectMapper, new ClientMessages(objectMapper), ScenarioLoader.load(properties.getScenario(), objectMapper),
+        new LatencyRecorder(), properties)
+        .setUser(new User(1, "User #1", "1"))
+        .setServerAddress(InetSocketAddress.createUnresolved("localhost", 8001))
+        .setThinkBehavior(ThinkBehavior.HUMAN)
+        .setRandom(new SplittableRandom(42))
+        .setClientEventListener(new NoOpClientEventListener());
+  }
+
+  private static void receive(ClientSimulator client, String message) {
+    client.onServerMessage(CharBuffer.wrap(message.toCharArray()));
+  }
+
+  /** Records scheduled tasks instead of running them. */
+  private static final class RecordingTimer extends HashedWheelTimer {
+
+    private final List<Long> delays = new ArrayList<>();
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private RecordingTimer(LoadTestProperties properties) {
+      super(properties);
+    }
+
+    @Override
+    public synchronized Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+      delays.add(unit.toMillis(delay));
+      tasks.add(task);
+      return null;
+    }
+  }
+
+  private static final class DiscardingConnection implements ServerConnection {
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void write(CharSequence message) {
+    }
+
+    @Override
+    public void write(EncodedFrame frame) {
+    }
+
+    @Override
+    public void write(FrameTemplate template, int[] values) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static final class NoOpClientEventListener implements ClientSimulator.ClientEventListener {
+
+    @Override
+    public void onMessageReceived(String type) {
+    }
+
+    @Override
+    public void onMessageSent() {
+    }
+
+    @Override
+    public void onGameCreated() {
+    }
+
+    @Override
+    public void onClienStopped(ClientSimulator client) {
+    }
+
+    @Override
+    public void onStateChanged(ClientSimulator.State oldState, ClientSimulator.State state) {
+    }
+
+    @Override
+    public void onIdle(ClientSimulator client) {
+    }
+
+    @Override
+    public void onGameHostReturned(long arrivalNanos) {
+    }
+  }
+}
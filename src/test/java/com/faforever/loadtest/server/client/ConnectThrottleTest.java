@@ -0,0 +1,69 @@
+package com.faforever.loadtest.server.client;
+
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectThrottleTest {
+
+  private ConnectThrottle instance;
+
+  @Before
+  public void setUp() {
+    LoadTestProperties properties = new LoadTestProperties()
+        .setMaxConcurrentConnects(2)
+        .setReconnectInitialDelayMillis(1000)
+        .setReconnectMaxDelayMillis(10_000)
+        .setReconnectMaxAttempts(6);
+    instance = new ConnectThrottle(properties);
+  }
+
+  @After
+  public void tearDown() {
+    instance.shutdown();
+  }
+
+  @Test
+  public void reconnectDelayDoublesUpToMaximumAndGivesUp() {
+
+    assertEquals(500, instance.reconnectDelayMillis(1, 0.5));
+    assertEquals(1000, instance.reconnectDelayMillis(2, 0.5));
+    assertEquals(4000, instance.reconnectDelayMillis(4, 0.5));
+    assertEquals(5000, instance.reconnectDelayMillis(5, 0.5));
+    assertEquals(0, instance.reconnectDelayMillis(5, 0));
+    assertEquals(-1, instance.reconnectDelayMillis(6, 0.5));
+  }
+
+  @Test
+  public void connectsWaitForPermits() throws Exception {
+    CountDownLatch connecting = new CountDownLatch(2);
+    CountDownLatch accept = new CountDownLatch(1);
+    CountDownLatch thirdConnect = new CountDownLatch(1);
+    Runnable blockingConnect = () -> {
+      connecting.countDown();
+      try {
+        accept.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+
+    instance.connect(blockingConnect);
+    instance.connect(blockingConnect);
+    instance.connect(thirdConnect::countDown);
+
+    // The caller isn't blocked by connects in flight
+    assertTrue(connecting.await(5, TimeUnit.SECONDS));
+    assertFalse(thirdConnect.await(100, TimeUnit.MILLISECONDS));
+    accept.countDown();
+    assertTrue(thirdConnect.await(5, TimeUnit.SECONDS));
+  }
+}
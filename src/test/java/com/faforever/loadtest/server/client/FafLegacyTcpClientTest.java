@@ -0,0 +1,137 @@
+package com.faforever.loadtest.server.client;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FafLegacyTcpClientTest {
+
+  private FafLegacyTcpClient instance;
+
+  @Before
+  public void setUp() {
+    instance = new FafLegacyTcpClient();
+  }
+
+  @Test
+  public void encodeWritesSizesAndUtf16() throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    FrameEncoder encoder = instance.newEncoder(64, outputStream);
+
+    encoder.encode("Hi");
+    encoder.flush();
+
+    assertArrayEquals(
+        ByteBuffer.allocate(12).putInt(8).putInt(4).putChar('H').putChar('i').array(),
+        outputStream.toByteArray()
+    );
+  }
+
+  @Test
+  public void roundTripWithFragmentedInput() throws Exception {
+    StringBuilder longMessage = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      longMessage.append((char) ('a' + i % 26)).append('ä');
+    }
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    FrameEncoder encoder = instance.newEncoder(16, outputStream);
+    encoder.encode("PING");
+    encoder.encode(longMessage);
+    encoder.encode("");
+    encoder.encode("{\"command\": \"welcome\"}");
+    encoder.flush();
+
+    List<String> messages = new ArrayList<>();
+    FrameDecoder decoder = instance.newDecoder(new CharBufferPool());
+    byte[] bytes = outputStream.toByteArray();
+    // Odd chunk size to split headers as well as chars
+    for (int offset = 0; offset < bytes.length; offset += 7) {
+      decoder.decode(ByteBuffer.wrap(bytes, offset, Math.min(7, bytes.length - offset)), message -> messages.add(message.toString()));
+    }
+
+    assertEquals(4, messages.size());
+    assertEquals("PING", messages.get(0));
+    assertEquals(longMessage.toString(), messages.get(1));
+    assertEquals("", messages.get(2));
+    assertEquals("{\"command\": \"welcome\"}", messages.get(3));
+  }
+
+  @Test
+  public void trafficIsCountedPerDirectionAndCommand() throws Exception {
+    TrafficCounter trafficCounter = new TrafficCounter();
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    FrameEncoder encoder = instance.newEncoder(16, FrameEncoder.Sink.of(outputStream), trafficCounter);
+    encoder.encode("PING");
+    encoder.encode("{\"command\": \"game_info\", \"title\": \"A\"}");
+    encoder.encode("{\"title\": \"B\", \"command\":\"game_info\"}");
+    encoder.encode(EncodedFrame.of("{\"command\":\"hello\"}"));
+    encoder.flush();
+
+    FrameDecoder decoder = instance.newDecoder(new CharBufferPool(), trafficCounter);
+    decoder.decode(ByteBuffer.wrap(outputStream.toByteArray()), message -> { });
+
+    List<MessageTraffic> traffic = trafficCounter.snapshot();
+    assertEquals(6, traffic.size());
+    MessageTraffic gameInfo = traffic.get(1);
+    assertEquals(MessageTraffic.Direction.INBOUND, gameInfo.getDirection());
+    assertEquals("game_info", gameInfo.getCommand());
+    assertEquals(2, gameInfo.getMessages());
+    assertEquals((38 + 37) * 2, gameInfo.getPayloadBytes());
+    assertEquals((38 + 37) * 2 + 2 * 8, gameInfo.getWireBytes());
+    assertEquals("PING", traffic.get(0).getCommand());
+    assertEquals(MessageTraffic.Direction.OUTBOUND, traffic.get(3).getDirection());
+    assertEquals(outputStream.size(), traffic.stream()
+        .filter(t -> t.getDirection() == MessageTraffic.Direction.OUTBOUND)
+        .mapToLong(MessageTraffic::getWireBytes)
+        .sum());
+  }
+
+  @Test
+  public void encodeAndDecodeDoNotAllocate() throws Exception {
+    TrafficCounter trafficCounter = new TrafficCounter();
+    ByteBuffer wire = ByteBuffer.allocate(1024);
+    FrameEncoder encoder = instance.newEncoder(256, buffer -> wire.put(buffer), trafficCounter);
+    FrameDecoder decoder = instance.newDecoder(new CharBufferPool(), trafficCounter);
+    String message = "{\"command\": \"game_info\", \"title\": \"Test Game\"}";
+    int[] decodedChars = new int[1];
+    Consumer<CharBuffer> consumer = chars -> decodedChars[0] += chars.remaining();
+
+    ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().threadId();
+    long allocatedBytes = 0;
+    int messages = 100_000;
+    for (int round = 0; round < 2; round++) {
+      // The first round warms up the pool and the JIT
+      allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < messages; i++) {
+        encodeAndDecode(encoder, decoder, wire, message, consumer);
+      }
+      allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+    }
+
+    assertEquals(2L * messages * message.length(), decodedChars[0]);
+    assertTrue("Allocated " + allocatedBytes + " bytes", allocatedBytes / messages < 8);
+    assertEquals(2L * messages, trafficCounter.snapshot().get(0).getMessages());
+  }
+
+  private void encodeAndDecode(FrameEncoder encoder, FrameDecoder decoder, ByteBuffer wire, String message, Consumer<CharBuffer> consumer) throws IOException {
+    wire.clear();
+    encoder.encode(message);
+    encoder.flush();
+    wire.flip();
+    decoder.decode(wire, consumer);
+  }
+}
@@ -0,0 +1,61 @@
+package com.faforever.loadtest.server.client;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FrameTemplateTest {
+
+  @Test
+  public void encodeEqualsEncodingOfSubstitutedMessage() throws Exception {
+    FrameTemplate template = FrameTemplate.compile("{\"args\": [${playerId}, \"score ${score}\"]}");
+
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    FrameEncoder encoder = new FrameEncoder(64, FrameEncoder.Sink.of(actual));
+    template.encode(encoder, new int[]{12, 1});
+    encoder.flush();
+
+    assertArrayEquals(encode("{\"args\": [12, \"score 1\"]}"), actual.toByteArray());
+  }
+
+  @Test
+  public void encodeIntegersIgnoresSurplusValues() throws Exception {
+    FrameTemplate template = FrameTemplate.compile("{\"args\": [${playerId}, \"Army\", ${slot}]}");
+
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    FrameEncoder encoder = new FrameEncoder(64, FrameEncoder.Sink.of(actual));
+    template.encode(encoder, new int[]{12, 0, 7});
+    encoder.flush();
+
+    assertArrayEquals(encode("{\"args\": [12, \"Army\", 0]}"), actual.toByteArray());
+  }
+
+  @Test
+  public void encodedFrameEqualsEncodedMessage() throws Exception {
+    EncodedFrame frame = EncodedFrame.of("PONG");
+
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    FrameEncoder encoder = new FrameEncoder(0, FrameEncoder.Sink.of(actual));
+    encoder.encode(frame);
+    encoder.flush();
+
+    assertArrayEquals(encode("PONG"), actual.toByteArray());
+    assertEquals("PONG", frame.toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void encodeRejectsMissingValues() throws Exception {
+    FrameTemplate.compile("${a}${b}").encode(new FrameEncoder(64, buffer -> { }), new int[]{1});
+  }
+
+  private static byte[] encode(String message) throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    FrameEncoder encoder = new FrameEncoder(64, FrameEncoder.Sink.of(outputStream));
+    encoder.encode(message);
+    encoder.flush();
+    return outputStream.toByteArray();
+  }
+}
@@ -0,0 +1,68 @@
+package com.faforever.loadtest.server.client;
+
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelTimerTest {
+
+  private HashedWheelTimer instance;
+
+  @Before
+  public void setUp() {
+    LoadTestProperties properties = new LoadTestProperties();
+    properties.setTimerTickMillis(1);
+    properties.setTimerWheelSize(8);
+    instance = new HashedWheelTimer(properties);
+  }
+
+  @After
+  public void tearDown() {
+    instance.shutdown();
+  }
+
+  @Test
+  public void scheduleRunsTaskAfterDelay() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    long start = System.nanoTime();
+
+    instance.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+  }
+
+  @Test
+  public void scheduleBeyondOneRound() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+
+    instance.schedule(latch::countDown, 30, TimeUnit.MILLISECONDS);
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(0, instance.getMetrics().getPendingTimeouts());
+  }
+
+  @Test
+  public void cancelledTaskDoesNotRun() throws Exception {
+    AtomicBoolean cancelledRan = new AtomicBoolean();
+    CountDownLatch latch = new CountDownLatch(1);
+
+    HashedWheelTimer.Timeout timeout = instance.schedule(() -> cancelledRan.set(true), 20, TimeUnit.MILLISECONDS);
+    instance.schedule(latch::countDown, 40, TimeUnit.MILLISECONDS);
+
+    assertTrue(timeout.cancel());
+    assertFalse(timeout.cancel());
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertFalse(cancelledRan.get());
+    assertEquals(1, instance.getMetrics().getExpiredTimeouts());
+  }
+}
@@ -0,0 +1,222 @@
+package com.faforever.loadtest.server.client;
+
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.scenario.ScenarioLoader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HeartbeatSchedulerTest {
+
+  private static final long TIMEOUT_MILLIS = 5_000;
+
+  private LoadTestProperties properties;
+  private RecordingTimer timer;
+
+  @Before
+  public void setUp() {
+    properties = new LoadTestProperties();
+    timer = new RecordingTimer(properties);
+  }
+
+  @After
+  public void tearDown() {
+    timer.shutdown();
+  }
+
+  @Test
+  public void clientsPingInTheSlotOfTheirId() {
+    HeartbeatScheduler instance = new HeartbeatScheduler(properties.setHeartbeatIntervalMillis(300), timer);
+    List<ClientSimulator> clients = new ArrayList<>();
+    for (int id = 1; id <= 6; id++) {
+      ClientSimulator client = mock(ClientSimulator.class);
+      when(client.getId()).thenReturn(id);
+      instance.register(client);
+      clients.add(client);
+    }
+    instance.unregister(clients.get(5));
+
+    assertEquals(List.of(TimeUnit.MILLISECONDS.toNanos(100)), timer.delays);
+    timer.runNext();
+    verify(clients.get(2)).sendPing();
+    verify(clients.get(0), never()).sendPing();
+    verify(clients.get(5), never()).sendPing();
+
+    timer.runNext();
+    verify(clients.get(0)).sendPing();
+    verify(clients.get(3)).sendPing();
+    verify(clients.get(1), never()).sendPing();
+
+    timer.runNext();
+    timer.runNext();
+    verify(clients.get(1)).sendPing();
+    verify(clients.get(4)).sendPing();
+    verify(clients.get(2), times(2)).sendPing();
+  }
+
+  @Test
+  public void slotsAddUpToTheInterval() {
+    new HeartbeatScheduler(properties.setHeartbeatIntervalMillis(250), timer).register(client(1));
+    new HeartbeatScheduler(properties.setHeartbeatIntervalMillis(50), timer).register(client(1));
+    new HeartbeatScheduler(properties.setHeartbeatIntervalMillis(0), timer).register(client(1));
+
+    assertEquals(List.of(TimeUnit.MILLISECONDS.toNanos(125), TimeUnit.MILLISECONDS.toNanos(50)), timer.delays);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeIntervalIsRejected() {
+    new HeartbeatScheduler(properties.setHeartbeatIntervalMillis(-1), timer);
+  }
+
+  @Test
+  public void lateTicksCatchUp() throws Exception {
+    HeartbeatScheduler instance = new HeartbeatScheduler(properties.setHeartbeatIntervalMillis(1000), timer);
+    instance.register(client(1));
+    // The second and third slot are due by now
+    Thread.sleep(350);
+
+    timer.runNext();
+    timer.runNext();
+    timer.runNext();
+
+    assertEquals(0, (long) timer.delays.get(1));
+    assertEquals(0, (long) timer.delays.get(2));
+    assertTrue(timer.delays.get(3) <= TimeUnit.MILLISECONDS.toNanos(100));
+  }
+
+  @Test
+  public void missedPongsAreCountedAndDropTheConnection() throws Exception {
+    properties.setHeartbeatIntervalMillis(1000).setHeartbeatMaxMissedPongs(2);
+    HeartbeatScheduler instance = new HeartbeatScheduler(properties, timer);
+    ConnectThrottle connectThrottle = new ConnectThrottle(properties);
+    ClosableConnection connection = new ClosableConnection();
+    try {
+      ClientSimulator client = loggedInClient(instance, connectThrottle, connection);
+
+      client.sendPing();
+      client.onServerMessage(CharBuffer.wrap("PONG".toCharArray()));
+      client.sendPing();
+      assertEquals(0, instance.getMissedPongs());
+
+      client.sendPing();
+      assertEquals(1, instance.getMissedPongs());
+      assertFalse(connection.closed);
+
+      client.sendPing();
+      assertEquals(2, instance.getMissedPongs());
+      assertTrue(connection.closed);
+    } finally {
+      connectThrottle.shutdown();
+    }
+  }
+
+  private static ClientSimulator client(int id) {
+    ClientSimulator client = mock(ClientSimulator.class);
+    when(client.getId()).thenReturn(id);
+    return client;
+  }
+
+  private ClientSimulator loggedInClient(HeartbeatScheduler heartbeatScheduler, ConnectThrottle connectThrottle, ServerConnection connection) throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    ConnectionService connectionService = new ConnectionService(new FafLegacyTcpClient(), properties, new TrafficCounter()) {
+      @Override
+      public ServerConnection connect(InetSocketAddress serverAddress, int clientId, ServerConnection.Listener listener) {
+        return connection;
+      }
+    };
+    ClientSimulator client = new ClientSimulator(connectionService, connectThrottle, heartbeatScheduler, timer,
+        objectMapper, new ClientMessages(objectMapper), ScenarioLoader.load(properties.getScenario(), objectMapper),
+        new LatencyRecorder(), properties)
+        .setUser(new User(1, "User #1", "1"))
+        .setServerAddress(InetSocketAddress.createUnresolved("localhost", 8001))
+        .setThinkBehavior(ThinkBehavior.HUMAN)
+        .setRandom(new SplittableRandom(42))
+        .setClientEventListener(mock(ClientSimulator.ClientEventListener.class));
+
+    client.connect();
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (client.getState() != ClientSimulator.State.INITIATING_SESSION && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    client.onServerMessage(CharBuffer.wrap("{\"command\": \"session\", \"session\": 1}".toCharArray()));
+    client.onServerMessage(CharBuffer.wrap("{\"command\": \"welcome\", \"id\": 1}".toCharArray()));
+    assertEquals(ClientSimulator.State.IDLE, client.getState());
+    return client;
+  }
+
+  /** Records scheduled tasks instead of running them, and runs executed ones right away. */
+  private static final class RecordingTimer extends HashedWheelTimer {
+
+    private final List<Long> delays = new ArrayList<>();
+    private final List<Runnable> tasks = new ArrayList<>();
+    private int nextTask;
+
+    private RecordingTimer(LoadTestProperties properties) {
+      super(properties);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      task.run();
+    }
+
+    @Override
+    public synchronized Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+      delays.add(unit.toNanos(delay));
+      tasks.add(task);
+      return null;
+    }
+
+    /** Runs the scheduled task that is due next. */
+    private void runNext() {
+      tasks.get(nextTask++).run();
+    }
+  }
+
+  private static final class ClosableConnection implements ServerConnection {
+
+    private volatile boolean closed;
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void write(CharSequence message) {
+    }
+
+    @Override
+    public void write(EncodedFrame frame) {
+    }
+
+    @Override
+    public void write(FrameTemplate template, int[] values) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.faforever.loadtest.server.client;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyRecorderTest {
+
+  @Test
+  public void intervalHistogramsContainLatenciesSincePreviousCall() {
+    LatencyRecorder instance = new LatencyRecorder();
+    long startTime = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(20);
+
+    instance.record(Exchange.HELLO, startTime);
+    instance.record(Exchange.HELLO, startTime);
+    Map<Exchange, Histogram> histograms = instance.getIntervalHistograms();
+
+    assertEquals(2, histograms.get(Exchange.HELLO).getTotalCount());
+    assertEquals(0, histograms.get(Exchange.PING).getTotalCount());
+    assertTrue(histograms.get(Exchange.HELLO).getMinValue() >= TimeUnit.MILLISECONDS.toMicros(20));
+
+    assertEquals(0, instance.getIntervalHistograms().get(Exchange.HELLO).getTotalCount());
+  }
+
+  @Test
+  public void latenciesBeyondRangeAreClamped() {
+    LatencyRecorder instance = new LatencyRecorder();
+
+    instance.record(Exchange.PING, System.nanoTime() - TimeUnit.HOURS.toNanos(1));
+
+    assertEquals(1, instance.getIntervalHistograms().get(Exchange.PING).getTotalCount());
+  }
+}
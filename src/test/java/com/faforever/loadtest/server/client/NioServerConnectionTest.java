@@ -0,0 +1,125 @@
+package com.faforever.loadtest.server.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NioServerConnectionTest {
+
+  private static final int BUFFER_SIZE = 1024;
+
+  private FafLegacyTcpClient tcpClient;
+  private NioEventLoop eventLoop;
+  private ServerSocket serverSocket;
+  private Socket serverSide;
+  private NioServerConnection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    tcpClient = new FafLegacyTcpClient();
+    eventLoop = new NioEventLoop("test-event-loop");
+    serverSocket = new ServerSocket();
+    serverSocket.setReceiveBufferSize(4096);
+    serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (connection != null) {
+      connection.close();
+    }
+    if (serverSide != null) {
+      serverSide.close();
+    }
+    serverSocket.close();
+    eventLoop.stop();
+  }
+
+  @Test
+  public void queuedWritesAreGatheredInOrderOnceWritable() throws Exception {
+    TrafficCounter trafficCounter = new TrafficCounter();
+    connect(FlushMode.PER_MESSAGE, trafficCounter);
+    List<String> sent = new ArrayList<>();
+    // Far more than the socket buffers hold, so that the server, which doesn't read yet, makes most of them queue up
+    for (int i = 0; i < 1000; i++) {
+      String message = i + ":" + "x".repeat(600);
+      sent.add(message);
+      connection.write(message);
+    }
+
+    assertEquals(sent, receive(sent.size()));
+    // Every message takes two writes unless it's queued, and up to 64 queued buffers take a single one
+    assertTrue("Socket writes: " + trafficCounter.getSocketWrites(), trafficCounter.getSocketWrites() < sent.size());
+  }
+
+  @Test
+  public void batchedMessagesShareSocketWrites() throws Exception {
+    assertEquals(100, socketWritesOf(FlushMode.PER_MESSAGE, 100));
+    connection.close();
+    serverSide.close();
+
+    assertTrue(socketWritesOf(FlushMode.BATCHED, 100) <= 3);
+  }
+
+  /** Writes that many pings and flushes once, like a client handling a timer task, then returns the socket writes. */
+  private long socketWritesOf(FlushMode flushMode, int messages) throws Exception {
+    TrafficCounter trafficCounter = new TrafficCounter();
+    connect(flushMode, trafficCounter);
+    for (int i = 0; i < messages; i++) {
+      connection.write("PING");
+    }
+    connection.flush();
+    assertEquals(messages, receive(messages).size());
+    return trafficCounter.getSocketWrites();
+  }
+
+  private void connect(FlushMode flushMode, TrafficCounter trafficCounter) throws IOException {
+    SocketChannel channel = SocketChannel.open();
+    channel.setOption(StandardSocketOptions.SO_SNDBUF, 4096);
+    channel.connect(serverSocket.getLocalSocketAddress());
+    serverSide = serverSocket.accept();
+    serverSide.setSoTimeout(5000);
+    connection = new NioServerConnection(tcpClient, channel, eventLoop, BUFFER_SIZE, flushMode, trafficCounter,
+        new ServerConnection.Listener() {
+          @Override
+          public void onMessage(CharBuffer message) {
+          }
+
+          @Override
+          public void onConnectionLost(IOException e) {
+          }
+        });
+    connection.start();
+  }
+
+  private List<String> receive(int messages) throws IOException {
+    List<String> received = new ArrayList<>();
+    FrameDecoder decoder = tcpClient.newDecoder(new CharBufferPool());
+    InputStream inputStream = serverSide.getInputStream();
+    byte[] bytes = new byte[8192];
+    while (received.size() < messages) {
+      int count = inputStream.read(bytes);
+      if (count < 0) {
+        break;
+      }
+      decoder.decode(ByteBuffer.wrap(bytes, 0, count), message -> received.add(message.toString()));
+    }
+    return received;
+  }
+}
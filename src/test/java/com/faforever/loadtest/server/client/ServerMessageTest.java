@@ -0,0 +1,82 @@
+package com.faforever.loadtest.server.client;
+
+import com.faforever.loadtest.server.scenario.Scenario;
+import com.faforever.loadtest.server.scenario.ScenarioLoader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.CharBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ServerMessageTest {
+
+  private ServerMessage instance;
+
+  @Before
+  public void setUp() {
+    instance = new ServerMessage(new ObjectMapper());
+  }
+
+  @Test
+  public void readSkipsNestedValues() throws Exception {
+    instance.read(message("{\"games\": [{\"command\": \"nested\", \"target\": \"nested\"}], \"target\": \"game\", \"command\": \"HostGame\"}"));
+
+    assertEquals("HostGame", instance.getCommand());
+    assertEquals("game", instance.getTarget());
+  }
+
+  @Test
+  public void targetDefaultsToClient() throws Exception {
+    instance.read(message("{\"command\": \"game_info\", \"uid\": 5}"));
+
+    assertEquals("game_info", instance.getCommand());
+    assertEquals("client", instance.getTarget());
+  }
+
+  @Test
+  public void readResetsPreviousMessage() throws Exception {
+    instance.read(message("{\"command\": \"HostGame\", \"target\": \"game\"}"));
+    instance.read(message("{\"uid\": 5}"));
+
+    assertNull(instance.getCommand());
+    assertEquals("client", instance.getTarget());
+  }
+
+  @Test
+  public void matchesConstantsAndCapturesGame() throws Exception {
+    Scenario scenario = ScenarioLoader.load("multiplayer", new ObjectMapper());
+    Scenario.Transition join = scenario.getInitialState().getTransition(scenario.indexOf("game_info"));
+    CharBuffer buffer = CharBuffer.allocate(128);
+    buffer.put("xx{\"command\": \"game_info\", \"teams\": {\"state\": \"closed\"}, \"state\": \"open\", \"uid\": 7}").flip().position(2);
+    instance.read(buffer);
+
+    assertTrue(instance.matches(join, variable -> 0));
+    assertEquals(7, instance.getGame());
+
+    instance.read(message("{\"command\": \"game_info\", \"state\": \"opening\", \"uid\": 8}"));
+    assertFalse(instance.matches(join, variable -> 0));
+    instance.read(message("{\"command\": \"game_info\", \"state\": \"open\"}"));
+    assertFalse(instance.matches(join, variable -> 0));
+  }
+
+  @Test
+  public void matchesVariables() throws Exception {
+    Scenario scenario = ScenarioLoader.load("multiplayer", new ObjectMapper());
+    Scenario.Transition started = scenario.getInitialState().getTransition(scenario.indexOf("game_info")).getTarget()
+        .getTransition(scenario.indexOf("game_launch")).getTarget()
+        .getTransition(scenario.indexOf("game_info"));
+    instance.read(message("{\"command\": \"game_info\", \"uid\": 7, \"state\": \"playing\"}"));
+
+    assertTrue(instance.matches(started, variable -> 7));
+    assertFalse(instance.matches(started, variable -> 8));
+  }
+
+  private static CharBuffer message(String message) {
+    return CharBuffer.wrap(message.toCharArray());
+  }
+}
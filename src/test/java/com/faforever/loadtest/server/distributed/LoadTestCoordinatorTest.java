@@ -0,0 +1,188 @@
+package com.faforever.loadtest.server.distributed;
+
+import com.faforever.loadtest.server.client.ClientService;
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.ConnectThrottle;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.FafLegacyTcpClient;
+import com.faforever.loadtest.server.client.HashedWheelTimer;
+import com.faforever.loadtest.server.client.HeartbeatScheduler;
+import com.faforever.loadtest.server.client.LatencyRecorder;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import com.faforever.loadtest.server.client.ThinkBehavior;
+import com.faforever.loadtest.server.client.TrafficCounter;
+import com.faforever.loadtest.server.config.LoadStage;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.runner.Latency;
+import com.faforever.loadtest.server.runner.LoadTestRunner;
+import com.faforever.loadtest.server.runner.Statistics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LoadTestCoordinatorTest {
+
+  private static final long TIMEOUT_MILLIS = 5_000;
+
+  private FafLegacyTcpClient tcpClient;
+  private ObjectMapper objectMapper;
+  private LoadTestCoordinator instance;
+  private LoadTestRunner firstRunner;
+  private LoadTestRunner secondRunner;
+  private Thread firstAgent;
+  private Thread secondAgent;
+
+  @Before
+  public void setUp() throws Exception {
+    tcpClient = new FafLegacyTcpClient();
+    objectMapper = new ObjectMapper();
+
+    LoadTestProperties coordinatorProperties = new LoadTestProperties().setCoordinatorPort(0).setAgentUserIds(1000);
+    instance = new LoadTestCoordinator(tcpClient, objectMapper, coordinatorProperties);
+    instance.listen();
+
+    LoadTestProperties agentProperties = new LoadTestProperties().setCoordinatorPort(instance.getPort());
+    firstRunner = mockRunner(10, 100);
+    secondRunner = mockRunner(20, 300);
+
+    firstAgent = startAgent(new LoadAgent(firstRunner, tcpClient, objectMapper, agentProperties));
+    verify(firstRunner, timeout(TIMEOUT_MILLIS)).setUserIdOffset(0);
+    secondAgent = startAgent(new LoadAgent(secondRunner, tcpClient, objectMapper, agentProperties));
+    verify(secondRunner, timeout(TIMEOUT_MILLIS)).setUserIdOffset(1000);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    instance.close();
+    firstAgent.join(TIMEOUT_MILLIS);
+    secondAgent.join(TIMEOUT_MILLIS);
+  }
+
+  @Test
+  public void agentsShareClientsAndStatisticsAreMerged() throws Exception {
+    instance.setNumberOfClients(101);
+    instance.start("localhost", 8001, ThinkBehavior.HUMAN);
+
+    verify(firstRunner, timeout(TIMEOUT_MILLIS)).setNumberOfClients(51);
+    verify(secondRunner, timeout(TIMEOUT_MILLIS)).setNumberOfClients(50);
+    verify(firstRunner, timeout(TIMEOUT_MILLIS)).start("localhost", 8001, ThinkBehavior.HUMAN);
+    verify(secondRunner, timeout(TIMEOUT_MILLIS)).start("localhost", 8001, ThinkBehavior.HUMAN);
+
+    Statistics statistics = awaitStatisticsOfBothAgents();
+    assertEquals(30, statistics.getCreatedGames());
+    assertEquals(101, statistics.getTargetClients());
+    assertEquals(30, (int) statistics.getClientStates().get(ClientSimulator.State.IDLE));
+    assertEquals(30, (int) statistics.getReceivedMessagesByType().get("game_launch"));
+    assertEquals(3000, statistics.getMessageTraffic().get(0).getPayloadBytes());
+
+    Latency latency = statistics.getTotalLatencies().get(Exchange.PING);
+    assertTrue(latency.getCount() >= 2);
+    assertEquals(0.3f, latency.getMaxMillis(), 0.01f);
+
+    instance.stop();
+    verify(firstRunner, timeout(TIMEOUT_MILLIS)).stop();
+    verify(secondRunner, timeout(TIMEOUT_MILLIS)).stop();
+  }
+
+  @Test
+  public void agentWithStagesFollowsTheTarget() throws Exception {
+    LoadTestProperties agentProperties = new LoadTestProperties()
+        .setRole(Role.AGENT)
+        .setCoordinatorPort(instance.getPort())
+        .setStages(List.of(new LoadStage().setShape(LoadStage.Shape.STEP).setDurationSeconds(60).setClients(50)));
+    ClientService clientService = mock(ClientService.class);
+    when(clientService.createClientSimulator(anyInt(), any(), any(), any(), any())).thenReturn(mock(ClientSimulator.class));
+    HashedWheelTimer timer = new HashedWheelTimer(agentProperties);
+    ConnectThrottle connectThrottle = new ConnectThrottle(agentProperties);
+    try {
+      LoadTestRunner runner = new LoadTestRunner(clientService, timer, new LatencyRecorder(), new TrafficCounter(),
+          connectThrottle, new HeartbeatScheduler(agentProperties, timer), agentProperties);
+      assertTrue(runner.getLoadProfile().isEmpty());
+
+      instance.setNumberOfClients(6);
+      instance.start("localhost", 8001, ThinkBehavior.HUMAN);
+      verify(firstRunner, timeout(TIMEOUT_MILLIS)).setNumberOfClients(3);
+
+      startAgent(new LoadAgent(runner, tcpClient, objectMapper, agentProperties));
+      verify(firstRunner, timeout(TIMEOUT_MILLIS)).setNumberOfClients(2);
+      verify(clientService, timeout(TIMEOUT_MILLIS).times(2)).createClientSimulator(anyInt(), any(), any(), any(), any());
+      Thread.sleep(300);
+      verify(clientService, times(2)).createClientSimulator(anyInt(), any(), any(), any(), any());
+    } finally {
+      instance.close();
+      connectThrottle.shutdown();
+      timer.shutdown();
+    }
+  }
+
+  private Statistics awaitStatisticsOfBothAgents() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    Statistics statistics;
+    do {
+      Thread.sleep(100);
+      statistics = instance.getStatistics();
+    } while (statistics.getCreatedGames() < 30 && System.currentTimeMillis() < deadline);
+    return statistics;
+  }
+
+  private static Thread startAgent(LoadAgent agent) {
+    Thread thread = new Thread(() -> {
+      try {
+        agent.run();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * @param clients number of games and idle clients
+   * @param pingMicros latency of the only ping recorded
+   */
+  private static LoadTestRunner mockRunner(int clients, long pingMicros) {
+    Map<ClientSimulator.State, Integer> clientStates = new EnumMap<>(ClientSimulator.State.class);
+    clientStates.put(ClientSimulator.State.IDLE, clients);
+    Map<Exchange, Histogram> intervalHistograms = new EnumMap<>(Exchange.class);
+    Histogram histogram = new Histogram(3);
+    histogram.recordValue(pingMicros);
+    intervalHistograms.put(Exchange.PING, histogram);
+
+    MessageTraffic gameLaunches = new MessageTraffic()
+        .setDirection(MessageTraffic.Direction.INBOUND)
+        .setCommand("game_launch")
+        .setMessages(clients)
+        .setPayloadBytes(clients * 100L);
+
+    LoadTestRunner runner = mock(LoadTestRunner.class);
+    when(runner.getStatistics()).thenReturn(Statistics.builder()
+        .elapsedMillis(1000)
+        .createdGames(clients)
+        .clientStates(clientStates)
+        .latencies(Map.of())
+        .totalLatencies(Map.of())
+        .targetClients(clients)
+        .messageTraffic(List.of(gameLaunches))
+        .latencyHistograms(intervalHistograms)
+        .build());
+    return runner;
+  }
+}
@@ -0,0 +1,98 @@
+package com.faforever.loadtest.server.metrics;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.faforever.loadtest.server.runner.Statistics;
+import org.HdrHistogram.Histogram;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrometheusExporterTest {
+
+  private PrometheusExporter instance;
+
+  @Before
+  public void setUp() throws Exception {
+    instance = new PrometheusExporter(new LoadTestProperties().setMetricsEnabled(true).setMetricsPort(0));
+    instance.start();
+  }
+
+  @After
+  public void tearDown() {
+    instance.close();
+  }
+
+  @Test
+  public void scrapeReturnsLatestStatisticsWithAccumulatedLatencies() throws Exception {
+    instance.publish(statistics(1000, 10, 3_000));
+    instance.publish(statistics(2000, 12, 40_000));
+
+    HttpResponse<String> response = HttpClient.newHttpClient().send(
+        HttpRequest.newBuilder(URI.create("http://localhost:" + instance.getPort() + "/metrics")).build(),
+        HttpResponse.BodyHandlers.ofString());
+
+    assertEquals(200, response.statusCode());
+    assertEquals(PrometheusExporter.CONTENT_TYPE, response.headers().firstValue("Content-Type").orElse(null));
+    String body = response.body();
+    assertTrue(body, body.contains("# TYPE faf_loadtest_clients gauge\n"));
+    assertTrue(body, body.contains("faf_loadtest_clients{state=\"IDLE\"} 12\n"));
+    assertTrue(body, body.contains("faf_loadtest_games_created_total 12\n"));
+    assertTrue(body, body.contains("faf_loadtest_socket_writes_total 36\n"));
+    assertTrue(body, body.contains("faf_loadtest_command_wire_bytes_total{direction=\"inbound\",command=\"game_info\"} 1080\n"));
+    assertTrue(body, body.contains("faf_loadtest_latency_seconds_bucket{exchange=\"ping\",le=\"0.005\"} 1\n"));
+    assertTrue(body, body.contains("faf_loadtest_latency_seconds_bucket{exchange=\"ping\",le=\"0.05\"} 2\n"));
+    assertTrue(body, body.contains("faf_loadtest_latency_seconds_bucket{exchange=\"ping\",le=\"+Inf\"} 2\n"));
+    assertTrue(body, body.contains("faf_loadtest_latency_seconds_count{exchange=\"ping\"} 2\n"));
+  }
+
+  @Test
+  public void resetForgetsPreviousRun() {
+    instance.publish(statistics(1000, 10, 3_000));
+    instance.reset();
+    instance.publish(statistics(1000, 10, 0));
+
+    String body = new String(instance.getBody());
+    assertTrue(body, body.contains("faf_loadtest_latency_seconds_count{exchange=\"ping\"} 0\n"));
+  }
+
+  private static Statistics statistics(int elapsedMillis, int clients, long pingMicros) {
+    Map<ClientSimulator.State, Integer> clientStates = new EnumMap<>(ClientSimulator.State.class);
+    clientStates.put(ClientSimulator.State.IDLE, clients);
+    Map<Exchange, Histogram> histograms = new EnumMap<>(Exchange.class);
+    Histogram histogram = new Histogram(3);
+    if (pingMicros > 0) {
+      histogram.recordValue(pingMicros);
+    }
+    histograms.put(Exchange.PING, histogram);
+    MessageTraffic gameInfo = new MessageTraffic()
+        .setDirection(MessageTraffic.Direction.INBOUND)
+        .setCommand("game_info")
+        .setMessages(clients)
+        .setPayloadBytes(clients * 82L);
+    return Statistics.builder()
+        .elapsedMillis(elapsedMillis)
+        .createdGames(clients)
+        .clientStates(clientStates)
+        .latencies(Map.of())
+        .totalLatencies(Map.of())
+        .targetClients(clients)
+        .messageTraffic(List.of(gameInfo))
+        .socketWrites(clients * 3L)
+        .latencyHistograms(histograms)
+        .build();
+  }
+}
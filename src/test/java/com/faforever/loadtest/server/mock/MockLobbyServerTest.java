@@ -0,0 +1,142 @@
+package com.faforever.loadtest.server.mock;
+
+import com.faforever.loadtest.server.client.CharBufferPool;
+import com.faforever.loadtest.server.client.FafLegacyTcpClient;
+import com.faforever.loadtest.server.client.FrameDecoder;
+import com.faforever.loadtest.server.client.FrameEncoder;
+import com.faforever.loadtest.server.config.LoadTestProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MockLobbyServerTest {
+
+  private MockLobbyServer instance;
+  private FafLegacyTcpClient tcpClient;
+  private int port;
+  private TestClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    LoadTestProperties properties = new LoadTestProperties();
+    try (ServerSocket serverSocket = new ServerSocket(0)) {
+      properties.setServerPort(serverSocket.getLocalPort());
+    }
+    port = properties.getServerPort();
+    tcpClient = new FafLegacyTcpClient();
+    instance = new MockLobbyServer(properties, tcpClient, new ObjectMapper());
+    instance.start();
+
+    client = new TestClient();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.socket.close();
+    instance.stop();
+  }
+
+  @Test
+  public void answersClientRequests() throws Exception {
+    FrameEncoder encoder = client.encoder;
+    encoder.encode("{\"command\": \"ask_session\", \"version\": \"1.0.0\"}");
+    encoder.encode("{\"command\": \"hello\", \"login\": \"User #1\"}");
+    encoder.encode("{\"command\": \"game_host\", \"title\": \"Test Game 1\"}");
+    encoder.encode("{\"command\": \"GameState\", \"args\": [\"Idle\"], \"target\": \"game\"}");
+    encoder.encode("{\"command\": \"GameOption\", \"args\": [\"Slots\", 12], \"target\": \"game\"}");
+    encoder.encode("{\"command\": \"ping\"}");
+    encoder.encode("PING");
+    encoder.flush();
+
+    List<String> messages = client.receive(7);
+    // Broadcast by another task of the event loop, so it may come before any response after game_launch
+    assertTrue(messages.remove(
+        "{\"command\":\"game_info\",\"visibility\":\"public\",\"uid\":1,\"title\":\"Test Game 1\",\"state\":\"open\","
+            + "\"featured_mod\":\"faf\",\"map_file_path\":\"maps/12 The Pass.zip\",\"host\":\"User #1\",\"num_players\":1,"
+            + "\"max_players\":12}"));
+
+    assertEquals(List.of(
+        "{\"command\":\"session\",\"session\":1}",
+        "{\"command\":\"welcome\",\"id\":1}",
+        "{\"command\":\"game_launch\",\"mod\":\"faf\",\"uid\":1,\"args\":[\"/numgames\",\"1\"]}",
+        "{\"command\":\"HostGame\",\"target\":\"game\",\"args\":[\"12 The Pass\"]}",
+        "PONG",
+        "PONG"
+    ), messages);
+  }
+
+  @Test
+  public void joiningGameIsBroadcast() throws Exception {
+    client.encoder.encode("{\"command\": \"hello\", \"login\": \"User #1\"}");
+    client.encoder.encode("{\"command\": \"game_host\", \"title\": \"Test Game 1\"}");
+    client.encoder.encode("{\"command\": \"GameOption\", \"args\": [\"Slots\", 2], \"target\": \"game\"}");
+    client.encoder.flush();
+    client.receive(3);
+
+    TestClient joiner = new TestClient();
+    try (Socket ignored = joiner.socket) {
+      joiner.encoder.encode("{\"command\": \"hello\", \"login\": \"User #2\"}");
+      joiner.encoder.encode("{\"command\": \"game_join\", \"uid\": 1}");
+      joiner.encoder.flush();
+
+      List<String> joinerMessages = joiner.receive(3);
+      assertTrue(joinerMessages.toString(), joinerMessages.contains("{\"command\":\"game_launch\",\"mod\":\"faf\",\"uid\":1,\"args\":[\"/numgames\",\"1\"]}"));
+      String hostMessage = client.receive(1).get(0);
+      assertTrue(hostMessage, hostMessage.contains("\"uid\":1,") && hostMessage.contains("\"num_players\":2,"));
+
+      client.encoder.encode("{\"command\": \"GameState\", \"args\": [\"Launching\"], \"target\": \"game\"}");
+      client.encoder.flush();
+      String launched = joiner.receive(1).get(0);
+      assertTrue(launched, launched.contains("\"state\":\"playing\""));
+
+      joiner.encoder.encode("{\"command\": \"game_join\", \"uid\": 1}");
+      joiner.encoder.flush();
+      assertEquals(List.of("{\"command\":\"notice\",\"style\":\"info\",\"text\":\"The game can't be joined.\"}"),
+          joiner.receive(1));
+    }
+  }
+
+  private class TestClient {
+    private final Socket socket;
+    private final FrameEncoder encoder;
+    private final FrameDecoder decoder;
+    private final InputStream inputStream;
+    /** Messages decoded beyond the ones asked for. */
+    private final List<String> buffered;
+
+    private TestClient() throws Exception {
+      socket = new Socket(InetAddress.getLoopbackAddress(), port);
+      socket.setSoTimeout(5_000);
+      encoder = tcpClient.newEncoder(1024, socket.getOutputStream());
+      decoder = tcpClient.newDecoder(new CharBufferPool());
+      inputStream = socket.getInputStream();
+      buffered = new ArrayList<>();
+    }
+
+    private List<String> receive(int count) throws Exception {
+      byte[] bytes = new byte[1024];
+      while (buffered.size() < count) {
+        int read = inputStream.read(bytes);
+        if (read < 0) {
+          break;
+        }
+        decoder.decode(ByteBuffer.wrap(bytes, 0, read), message -> buffered.add(message.toString()));
+      }
+      List<String> messages = new ArrayList<>(buffered.subList(0, Math.min(count, buffered.size())));
+      buffered.subList(0, messages.size()).clear();
+      return messages;
+    }
+  }
+}
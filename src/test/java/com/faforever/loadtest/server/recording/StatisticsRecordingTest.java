@@ -0,0 +1,136 @@
+package com.faforever.loadtest.server.recording;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.faforever.loadtest.server.client.MessageTraffic;
+import com.faforever.loadtest.server.runner.Latency;
+import com.faforever.loadtest.server.runner.Statistics;
+import org.HdrHistogram.Histogram;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StatisticsRecordingTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void readReturnsWrittenSamples() throws Exception {
+    Path file = temporaryFolder.getRoot().toPath().resolve("run.stats");
+    try (StatisticsWriter writer = new StatisticsWriter(file)) {
+      writer.write(statistics(1000, 10, "ramp", Map.of("welcome", 10), 2_000));
+      writer.write(statistics(2000, 5, "ramp", Map.of("welcome", 15, "game_launch", 3), 4_000));
+      writer.write(statistics(3000, 20, null, Map.of("welcome", 15, "game_launch", 4), 0));
+    }
+
+    try (StatisticsReader reader = new StatisticsReader(file)) {
+      Statistics first = reader.next();
+      assertEquals(1000, first.getElapsedMillis());
+      assertEquals(10, (int) first.getClientStates().get(ClientSimulator.State.IDLE));
+      assertEquals(0, (int) first.getClientStates().get(ClientSimulator.State.PLAYING));
+      assertEquals("ramp", first.getStage());
+      assertEquals(2f, first.getLatencies().get(Exchange.PING).getP99Millis(), 0.01f);
+
+      Statistics second = reader.next();
+      assertEquals(2000, second.getElapsedMillis());
+      assertEquals(5, (int) second.getClientStates().get(ClientSimulator.State.IDLE));
+      assertEquals(-1, second.getAllocatedBytes());
+      assertEquals(12.5f, second.getIncomingMessagesRate(), 0);
+      assertEquals(200, second.getSocketWrites());
+      assertEquals(20f, second.getSocketWritesRate(), 0);
+      assertEquals(2, second.getReconnectAttempts());
+      assertEquals("ramp", second.getStage());
+      assertEquals(Map.of("welcome", 15, "game_launch", 3), second.getReceivedMessagesByType());
+      MessageTraffic welcome = second.getMessageTraffic().get(1);
+      assertEquals("welcome", welcome.getCommand());
+      assertEquals(1500, welcome.getPayloadBytes());
+      assertEquals(5f, welcome.getMessagesRate(), 0.01f);
+      assertEquals(540f, welcome.getWireBytesRate(), 0.01f);
+
+      Statistics third = reader.next();
+      assertNull(third.getStage());
+      assertEquals(4, (int) third.getReceivedMessagesByType().get("game_launch"));
+      assertEquals(Latency.NONE, third.getLatencies().get(Exchange.PING));
+      assertEquals(2, third.getTotalLatencies().get(Exchange.PING).getCount());
+
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void truncatedSampleIsIgnored() throws Exception {
+    Path file = temporaryFolder.getRoot().toPath().resolve("run.stats");
+    try (StatisticsWriter writer = new StatisticsWriter(file)) {
+      writer.write(statistics(1000, 10, null, Map.of(), 2_000));
+      writer.write(statistics(2000, 10, null, Map.of(), 2_000));
+    }
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+    assertEquals(1, StatisticsReader.count(file));
+  }
+
+  @Test
+  public void downsampledLatenciesIncludeSkippedSamples() throws Exception {
+    Path file = temporaryFolder.getRoot().toPath().resolve("run.stats");
+    try (StatisticsWriter writer = new StatisticsWriter(file)) {
+      for (int i = 1; i <= 10; i++) {
+        writer.write(statistics(i * 1000, i, null, Map.of(), i == 3 ? 9_000 : 1_000));
+      }
+    }
+
+    List<Statistics> samples = new ArrayList<>();
+    StatisticsReader.read(file, 5, samples::add);
+
+    assertEquals(5, samples.size());
+    assertEquals(4000, samples.get(1).getElapsedMillis());
+    assertEquals(2, samples.get(1).getLatencies().get(Exchange.PING).getCount());
+    assertEquals(9f, samples.get(1).getLatencies().get(Exchange.PING).getMaxMillis(), 0.01f);
+  }
+
+  private static Statistics statistics(int elapsedMillis, int idleClients, String stage, Map<String, Integer> messagesByType, long pingMicros) {
+    Map<ClientSimulator.State, Integer> clientStates = new EnumMap<>(ClientSimulator.State.class);
+    clientStates.put(ClientSimulator.State.IDLE, idleClients);
+    Map<Exchange, Histogram> histograms = new EnumMap<>(Exchange.class);
+    Histogram histogram = new Histogram(3);
+    if (pingMicros > 0) {
+      histogram.recordValue(pingMicros);
+    }
+    histograms.put(Exchange.PING, histogram);
+    List<MessageTraffic> messageTraffic = new ArrayList<>();
+    new TreeMap<>(messagesByType).forEach((command, count) -> messageTraffic.add(new MessageTraffic()
+        .setDirection(MessageTraffic.Direction.INBOUND)
+        .setCommand(command)
+        .setMessages(count)
+        .setPayloadBytes(count * 100L)));
+    return Statistics.builder()
+        .elapsedMillis(elapsedMillis)
+        .clientStates(clientStates)
+        .incomingMessagesRate(elapsedMillis / 160f)
+        .usedHeapBytes(1 << 20)
+        .allocatedBytes(elapsedMillis == 2000 ? -1 : 0)
+        .latencies(Map.of())
+        .totalLatencies(Map.of())
+        .stage(stage)
+        .targetClients(idleClients)
+        .messageTraffic(messageTraffic)
+        .socketWrites(elapsedMillis / 10)
+        .socketWritesRate(elapsedMillis / 100f)
+        .reconnectAttempts(elapsedMillis / 1000)
+        .latencyHistograms(histograms)
+        .build();
+  }
+}
@@ -0,0 +1,66 @@
+package com.faforever.loadtest.server.runner;
+
+import com.faforever.loadtest.server.client.ArrivalDistribution;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArrivalProcessTest {
+
+  @Test
+  public void constantArrivalsAreScheduledIndependentlyOfConsumer() throws Exception {
+    List<Long> arrivals = new ArrayList<>();
+    CountDownLatch latch = new CountDownLatch(20);
+    ArrivalProcess instance = new ArrivalProcess("test-arrivals", 1000, ArrivalDistribution.CONSTANT,
+        new SplittableRandom(1), arrivalNanos -> {
+      arrivals.add(arrivalNanos);
+      if (arrivals.size() == 1) {
+        // A slow consumer must not delay the schedule
+        sleep(10);
+      }
+      latch.countDown();
+    });
+
+    instance.start();
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    instance.stop();
+
+    for (int i = 1; i < 20; i++) {
+      assertEquals(TimeUnit.MILLISECONDS.toNanos(1), arrivals.get(i) - arrivals.get(i - 1));
+    }
+  }
+
+  @Test
+  public void poissonArrivalsHaveConfiguredRate() throws Exception {
+    CountDownLatch latch = new CountDownLatch(200);
+    long[] lastArrival = new long[1];
+    ArrivalProcess instance = new ArrivalProcess("test-arrivals", 2000, ArrivalDistribution.POISSON,
+        new SplittableRandom(1), arrivalNanos -> {
+      lastArrival[0] = arrivalNanos;
+      latch.countDown();
+    });
+
+    long startNanos = System.nanoTime();
+    instance.start();
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    instance.stop();
+
+    double meanIntervalMillis = (lastArrival[0] - startNanos) / 1_000_000d / 200;
+    assertTrue("Mean interval was " + meanIntervalMillis, meanIntervalMillis > 0.3 && meanIntervalMillis < 1.5);
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
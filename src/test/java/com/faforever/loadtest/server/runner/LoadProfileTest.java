@@ -0,0 +1,60 @@
+package com.faforever.loadtest.server.runner;
+
+import com.faforever.loadtest.server.config.LoadStage;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LoadProfileTest {
+
+  @Test
+  public void followsStagesAndHoldsFinalLevel() {
+    LoadProfile instance = new LoadProfile(List.of(
+        stage(LoadStage.Shape.RAMP, 10, 100),
+        stage(LoadStage.Shape.STEP, 10, 200),
+        stage(LoadStage.Shape.SPIKE, 5, 1000),
+        stage(LoadStage.Shape.RAMP, 10, 0)
+    ), 0);
+
+    assertEquals(35_000, instance.getDurationMillis());
+    assertEquals(0, instance.getTargetClients(0));
+    assertEquals(50, instance.getTargetClients(5_000));
+    assertEquals("1-ramp", instance.getStageName(5_000));
+    assertEquals(200, instance.getTargetClients(10_000));
+    assertEquals("2-step", instance.getStageName(19_999));
+    assertEquals(1000, instance.getTargetClients(20_000));
+    // The spike is over, the ramp starts from the level before it
+    assertEquals(200, instance.getTargetClients(25_000));
+    assertEquals(100, instance.getTargetClients(30_000));
+    assertEquals(0, instance.getTargetClients(60_000));
+    assertNull(instance.getStageName(35_000));
+  }
+
+  @Test
+  public void sineSwingsBetweenPreviousLevelAndClients() {
+    LoadStage sine = stage(LoadStage.Shape.SINE, 20, 300);
+    sine.setPeriodSeconds(10);
+    LoadProfile instance = new LoadProfile(List.of(stage(LoadStage.Shape.STEP, 1, 100), sine), 0);
+
+    assertEquals(100, instance.getTargetClients(1_000));
+    assertEquals(300, instance.getTargetClients(6_000));
+    assertEquals(100, instance.getTargetClients(11_000));
+    assertEquals(100, instance.getTargetClients(21_000));
+  }
+
+  @Test
+  public void emptyProfile() {
+    LoadProfile instance = new LoadProfile(List.of(), 0);
+
+    assertTrue(instance.isEmpty());
+    assertNull(instance.getStageName(0));
+  }
+
+  private static LoadStage stage(LoadStage.Shape shape, int durationSeconds, int clients) {
+    return new LoadStage().setShape(shape).setDurationSeconds(durationSeconds).setClients(clients);
+  }
+}
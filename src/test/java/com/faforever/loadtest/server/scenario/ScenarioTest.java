@@ -0,0 +1,98 @@
+package com.faforever.loadtest.server.scenario;
+
+import com.faforever.loadtest.server.client.ClientSimulator;
+import com.faforever.loadtest.server.client.Exchange;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScenarioTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  public void defaultScenarioDispatchesCommandsPerState() throws Exception {
+    Scenario scenario = ScenarioLoader.load("default", objectMapper);
+
+    Scenario.State idle = scenario.getInitialState();
+    assertEquals(ClientSimulator.State.IDLE, idle.getClientState());
+    assertTrue(idle.isOpenModelArrival());
+
+    Scenario.Action hostGame = idle.getAfter().getActions()[0];
+    assertEquals(Exchange.GAME_HOST, hostGame.getExchange());
+    assertArrayEquals(new Scenario.Variable[]{Scenario.Variable.USER_ID}, hostGame.getVariables());
+
+    Scenario.State creatingGame = idle.getAfter().getTarget();
+    Scenario.Transition gameLaunch = creatingGame.getTransition(scenario.indexOf("game_launch"));
+    assertNotNull(gameLaunch);
+    assertTrue(gameLaunch.isCountsGame());
+    assertNull(creatingGame.getTransition(scenario.indexOf("HostGame")));
+    assertNotNull(gameLaunch.getTarget().getTransition(scenario.indexOf("HostGame")));
+    assertEquals(-1, scenario.indexOf("game_info"));
+  }
+
+  @Test
+  public void messagesAreResolvedAtCompileTime() throws Exception {
+    Scenario scenario = ScenarioLoader.load("default", objectMapper);
+    Scenario.State hosting = scenario.getInitialState().getAfter().getTarget()
+        .getTransition(scenario.indexOf("game_launch")).getTarget()
+        .getTransition(scenario.indexOf("HostGame")).getTarget();
+
+    Scenario.Action[] gameOptions = hosting.getOnEnter()[0].getActions();
+    assertEquals(24, gameOptions.length);
+    assertEquals("{\"command\":\"GameOption\",\"args\":[\"Slots\",12],\"target\":\"game\"}", gameOptions[23].getFrame().toString());
+
+    Scenario.Action[] playerActions = hosting.getAfter().getActions()[0].getActions();
+    assertEquals("{\"command\":\"PlayerOption\",\"args\":[${player},\"Color\",${player}],\"target\":\"game\"}",
+        playerActions[1].getTemplate().toString());
+    assertArrayEquals(new Scenario.Variable[]{Scenario.Variable.PLAYER, Scenario.Variable.PLAYER}, playerActions[1].getVariables());
+    assertEquals(ScenarioDefinition.Each.SLOT, playerActions[4].getEach());
+  }
+
+  @Test
+  public void conditionsAreResolvedAndAlternativesChained() throws Exception {
+    Scenario scenario = ScenarioLoader.load("multiplayer", objectMapper);
+    int gameInfo = scenario.indexOf("game_info");
+
+    Scenario.Transition join = scenario.getInitialState().getTransition(gameInfo);
+    assertEquals("uid", join.getGameField());
+    assertTrue(join.getChance() < 1);
+    Scenario.Action joinGame = join.getActions()[0];
+    assertEquals(Exchange.GAME_JOIN, joinGame.getExchange());
+    assertEquals("{\"command\":\"game_join\",\"uid\":${game},\"password\":null}", joinGame.getTemplate().toString());
+
+    Scenario.Transition launch = join.getTarget().getTransition(scenario.indexOf("game_launch"));
+    Scenario.Transition started = launch.getTarget().getTransition(gameInfo);
+    assertEquals("playing", started.getTarget().getName());
+    assertEquals(Scenario.Variable.GAME, started.getConditions()[0].getVariable());
+    assertEquals("playing", started.getConditions()[1].getValue());
+    assertEquals("closed", started.getAlternative().getConditions()[1].getValue());
+    assertNull(started.getAlternative().getAlternative());
+
+    Scenario.Transition full = scenario.getInitialState().getAfter().getTarget()
+        .getTransition(scenario.indexOf("game_launch")).getTarget()
+        .getTransition(gameInfo);
+    assertEquals("num_players", full.getConditions()[1].getField());
+    assertEquals("12", full.getConditions()[1].getValue());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void unknownPlaceholderIsRejected() {
+    ScenarioDefinition definition = new ScenarioDefinition()
+        .setInitialState("idle")
+        .setMessages(Map.of("chat", objectMapper.createObjectNode().put("command", "chat").put("text", "{{text}}")))
+        .setStates(Map.of("idle", new ScenarioDefinition.StateDefinition()
+            .setClientState(ClientSimulator.State.IDLE)
+            .setOnEnter(List.of(new ScenarioDefinition.ActionDefinition().setSend("chat")))));
+
+    Scenario.compile(definition, objectMapper);
+  }
+}
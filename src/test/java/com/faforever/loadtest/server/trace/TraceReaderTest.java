@@ -0,0 +1,75 @@
+package com.faforever.loadtest.server.trace;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TraceReaderTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void readReturnsWrittenRecordsAcrossWindows() throws Exception {
+    Path file = writeTrace();
+
+    // Smaller than some records, so the window has to slide and grow
+    try (TraceReader reader = new TraceReader(file, 32)) {
+      assertRecord(reader, 1, TraceEvent.OPENED, "");
+      assertRecord(reader, 1, TraceEvent.CLIENT_MESSAGE, "{\"command\": \"ask_session\"}");
+      assertRecord(reader, 2, TraceEvent.OPENED, "");
+      assertRecord(reader, 1, TraceEvent.SERVER_MESSAGE, "{\"command\": \"session\", \"session\": 1234}");
+      assertRecord(reader, 2, TraceEvent.CLIENT_MESSAGE, "PING");
+      assertRecord(reader, 1, TraceEvent.CLOSED, "");
+      assertFalse(reader.next());
+    }
+  }
+
+  @Test
+  public void truncatedRecordEndsTrace() throws Exception {
+    Path file = writeTrace();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      // Cuts off the end of the last message, leaving only CLOSED
+      channel.truncate(channel.size() - TraceFormat.RECORD_HEADER_SIZE - 1);
+    }
+
+    try (TraceReader reader = new TraceReader(file, 32)) {
+      int records = 0;
+      while (reader.next()) {
+        records++;
+      }
+      assertEquals(4, records);
+    }
+  }
+
+  private Path writeTrace() throws IOException {
+    Path file = temporaryFolder.getRoot().toPath().resolve("session.trace");
+    try (TraceWriter writer = new TraceWriter(file)) {
+      writer.opened(1);
+      writer.message(1, TraceEvent.CLIENT_MESSAGE, "{\"command\": \"ask_session\"}");
+      writer.opened(2);
+      writer.message(1, TraceEvent.SERVER_MESSAGE, "{\"command\": \"session\", \"session\": 1234}");
+      writer.message(2, TraceEvent.CLIENT_MESSAGE, "PING");
+      writer.closed(1);
+    }
+    return file;
+  }
+
+  private static void assertRecord(TraceReader reader, int session, TraceEvent event, String message) throws IOException {
+    long previousTimestamp = reader.getTimestampMicros();
+    assertTrue(reader.next());
+    assertEquals(session, reader.getSession());
+    assertEquals(event, reader.getEvent());
+    assertEquals(message, reader.getMessage().toString());
+    assertTrue(reader.getTimestampMicros() >= previousTimestamp);
+  }
+}
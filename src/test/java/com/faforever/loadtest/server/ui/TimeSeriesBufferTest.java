@@ -0,0 +1,55 @@
+package com.faforever.loadtest.server.ui;
+
+import javafx.scene.chart.XYChart;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimeSeriesBufferTest {
+
+  @Test
+  public void oldestPointsAreOverwrittenWhenFull() {
+    TimeSeriesBuffer instance = new TimeSeriesBuffer(10);
+    for (int second = 0; second < 25; second++) {
+      instance.add(second, second);
+    }
+
+    assertEquals(10, instance.size());
+    assertEquals(15, instance.getX(0));
+    assertEquals(24, instance.getX(9));
+    assertEquals(5, instance.indexOf(20));
+  }
+
+  @Test
+  public void largestTriangleThreeBucketsKeepsEndsAndSpikes() {
+    TimeSeriesBuffer instance = new TimeSeriesBuffer(10_000);
+    for (int second = 0; second < 10_000; second++) {
+      instance.add(second, second == 4321 ? 1000 : 1);
+    }
+
+    List<XYChart.Data<Number, Number>> points = instance.largestTriangleThreeBuckets(Integer.MIN_VALUE, 100);
+
+    assertEquals(100, points.size());
+    assertEquals(0, points.get(0).getXValue().intValue());
+    assertEquals(9_999, points.get(99).getXValue().intValue());
+    assertTrue(points.stream().anyMatch(point -> point.getYValue().floatValue() == 1000));
+  }
+
+  @Test
+  public void bucketAveragesAreAlignedAndOnlyCoverTheRange() {
+    TimeSeriesBuffer instance = new TimeSeriesBuffer(1000);
+    for (int second = 0; second < 1000; second++) {
+      instance.add(second, second % 2 == 0 ? 10 : 20);
+    }
+
+    List<XYChart.Data<Number, Number>> points = instance.bucketAverages(600, 100);
+
+    assertEquals(100, points.size());
+    assertEquals(603, points.get(0).getXValue().intValue());
+    assertEquals(999, points.get(99).getXValue().intValue());
+    points.forEach(point -> assertEquals(15, point.getYValue().floatValue(), 0.001f));
+  }
+}